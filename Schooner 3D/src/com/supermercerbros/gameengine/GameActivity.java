@@ -20,6 +20,7 @@ import android.annotation.SuppressLint;
 import android.app.Activity;
 import android.graphics.Color;
 import android.graphics.Point;
+import android.opengl.GLSurfaceView;
 import android.os.Bundle;
 import android.util.Log;
 import android.view.Display;
@@ -79,6 +80,7 @@ public abstract class GameActivity extends Activity {
 		engine = new Engine(pipe, cam);
 
 		gameView = new GameView(this);
+		gameView.setDataPipe(pipe);
 	}
 
 	/**
@@ -134,6 +136,16 @@ public abstract class GameActivity extends Activity {
 		}
 		Log.d(TAG, "GameActivity Start!");
 		gameView.setRenderer(renderer);
+		if (Schooner3D.renderOnDemand) {
+			// Draw only when the Engine has produced a frame
+			gameView.setRenderMode(GLSurfaceView.RENDERMODE_WHEN_DIRTY);
+			pipe.setRenderRequester(new Runnable() {
+				@Override
+				public void run() {
+					gameView.requestRender();
+				}
+			});
+		}
 		setContentView(gameView);
 		engine.start();
 	}
@@ -149,6 +161,9 @@ public abstract class GameActivity extends Activity {
 	 */
 	protected void setClipDistances(float near, float far) {
 		renderer = new GameRenderer(pipe, near, far);
+		if (Schooner3D.lateLatchCamera) {
+			renderer.setLateLatchCamera(cam);
+		}
 	}
 	
 	public GameRenderer getRenderer() {
@@ -186,6 +201,7 @@ public abstract class GameActivity extends Activity {
 	protected void resumeGame() {
 		// Resume the Engine
 		engine.resumeLooping();
+		pipe.requestFrame();
 		if (gameView != null) {
 			// Resume the GameView if it exists
 			gameView.onResume();
@@ -19,6 +19,7 @@ import android.content.Context;
 import android.opengl.GLSurfaceView;
 import android.view.MotionEvent;
 
+import com.supermercerbros.gameengine.engine.DataPipe;
 import com.supermercerbros.gameengine.hud.GameHud;
 
 /**
@@ -27,6 +28,7 @@ import com.supermercerbros.gameengine.hud.GameHud;
 class GameView extends GLSurfaceView {
 	private static final String TAG = "GameView";
 	private GameHud hud;
+	private DataPipe pipe;
 
 	/**
 	 * @see GLSurfaceView#GLSurfaceView(Context)
@@ -43,9 +45,20 @@ class GameView extends GLSurfaceView {
 	void setHud(GameHud hud) {
 		this.hud = hud;
 	}
+	
+	/**
+	 * Sets the DataPipe used to wake the Engine when the screen is touched.
+	 * @param pipe
+	 */
+	void setDataPipe(DataPipe pipe) {
+		this.pipe = pipe;
+	}
 
 	@Override
 	public boolean onTouchEvent(MotionEvent event) {
+		if (pipe != null) {
+			pipe.requestFrame();
+		}
 		if (hud == null) {
 			return false;
 		} else {
@@ -16,6 +16,9 @@
 
 package com.supermercerbros.gameengine;
 
+import com.supermercerbros.gameengine.armature.AnimationLod;
+import com.supermercerbros.gameengine.armature.BoneFormat;
+
 public class Schooner3D {
 	/**
 	 * The default maximum number of objects.
@@ -44,9 +47,29 @@ public class Schooner3D {
 	public static final float[] DEFAULT_BACKGROUND_COLOR = 
 		{ 0.0f, 0.0f, 0.0f, 1.0f };
 	/**
-	 * The default maximum number of light.
+	 * The default maximum number of point and spot lights affecting one
+	 * object.
 	 */
 	public static final int DEFAULT_MAX_LIGHTS = 10;
+	/**
+	 * The default time budget for compiling shaders, in milliseconds per frame.
+	 */
+	public static final int DEFAULT_SHADER_COMPILE_BUDGET = 8;
+	/**
+	 * The default number of texture bytes to upload per frame.
+	 */
+	public static final int DEFAULT_TEXTURE_UPLOAD_BUDGET = 512 * 1024;
+	/**
+	 * The default GPU memory budget for textures, in bytes.
+	 */
+	public static final int DEFAULT_TEXTURE_MEMORY_BUDGET = 32 * 1024 * 1024;
+	/**
+	 * The default maximum number of bones per skinned draw. GLES 2.0 only
+	 * guarantees 128 vertex uniform vectors; 20 bone matrices use 80 of them,
+	 * the camera, model and directional light use 10, and the default 10
+	 * local lights use 30 (3 per light).
+	 */
+	public static final int DEFAULT_MAX_BONES = 20;
 	
 	/**
 	 * The render backgroundColor color.
@@ -64,4 +87,127 @@ public class Schooner3D {
 	 * The maximum number of objects to allow.
 	 */
 	public static int maxObjects = DEFAULT_MAX_OBJECTS;
+	/**
+	 * The time the renderer may spend compiling queued shader programs each
+	 * frame, in milliseconds. Set this to zero to compile every queued program
+	 * at once (i.e. behind a loading screen).
+	 */
+	public static int shaderCompileBudget = DEFAULT_SHADER_COMPILE_BUDGET;
+	/**
+	 * The number of texture bytes the renderer may upload each frame. Set this
+	 * to zero to upload every decoded texture at once.
+	 */
+	public static int textureUploadBudget = DEFAULT_TEXTURE_UPLOAD_BUDGET;
+	/**
+	 * The number of background threads used to decode textures. This must be
+	 * set before the first texture is requested.
+	 */
+	public static int textureDecodeThreads = 1;
+	/**
+	 * The GPU memory textures may use, in bytes. When it is exceeded, the
+	 * least-recently-used textures are unloaded (and reloaded when they are
+	 * next used). Set this to zero to keep textures loaded indefinitely.
+	 */
+	public static int textureMemoryBudget = DEFAULT_TEXTURE_MEMORY_BUDGET;
+	/**
+	 * The maximum number of point and spot lights that can affect one object.
+	 * Each object is lit by the ones that affect it most. This must be set
+	 * before any Materials are created.
+	 */
+	public static int maxLights = DEFAULT_MAX_LIGHTS;
+	/**
+	 * If true, the Engine stops producing frames (and the renderer stops
+	 * drawing them) while nothing in the scene is moving, until the scene is
+	 * changed or the user touches the screen. This must be set before the
+	 * GameActivity is started.
+	 * 
+	 * @see com.supermercerbros.gameengine.engine.Engine#requestFrame()
+	 */
+	public static boolean renderOnDemand = false;
+	/**
+	 * If true, the renderer samples the Camera just before drawing each frame
+	 * rather than using the view matrix the Engine computed, reducing camera
+	 * latency by a frame. This must be set before
+	 * {@link GameActivity#setClipDistances(float, float)} is called.
+	 */
+	public static boolean lateLatchCamera = false;
+	/**
+	 * The maximum number of bones one skinned draw may use. Skinned meshes
+	 * whose Skeleton has more bones are split into several sub-meshes by
+	 * {@link com.supermercerbros.gameengine.parsers.GameFactory#bakeGameObjects()}.
+	 * If this many bones (in {@link #boneFormat}) and the uniforms of
+	 * {@link #maxLights} local lights don't fit in 128 vertex uniform
+	 * vectors, fewer bones are used.
+	 */
+	public static int maxBones = DEFAULT_MAX_BONES;
+	/**
+	 * The format bone transforms are uploaded to the skinning shaders in.
+	 * {@link BoneFormat#MATRIX_4X3} and {@link BoneFormat#DUAL_QUATERNION}
+	 * use 3 and 2 uniform vectors per bone instead of 4, so
+	 * {@link #maxBones} can be raised accordingly. This must be set before
+	 * any BonedObjects are created.
+	 */
+	public static BoneFormat boneFormat = BoneFormat.MATRIX_4X4;
+	/**
+	 * The number of worker threads the Engine thread splits CPU work (CPU
+	 * skinning and Skeleton posing) across. This must be set before the first
+	 * BonedObject is drawn.
+	 * 
+	 * @see com.supermercerbros.gameengine.util.WorkerPool
+	 */
+	public static int workerThreads = Math.max(0, Runtime.getRuntime()
+			.availableProcessors() - 1);
+	/**
+	 * The number of worker threads used for CPU skinning, in addition to the
+	 * Engine thread. At most {@link #workerThreads} are used.
+	 */
+	public static int skinningThreads = Math.max(0, Runtime.getRuntime()
+			.availableProcessors() - 1);
+	/**
+	 * The number of samples per exported frame to bake animation curves at
+	 * when Actions and Movements are loaded, or 0 to keep the Bezier curves.
+	 * Baked curves are cheaper to evaluate but use more memory and lose
+	 * detail between samples.
+	 * 
+	 * @see com.supermercerbros.gameengine.armature.Action#bake(int, int)
+	 * @see com.supermercerbros.gameengine.math.BakedCurve
+	 */
+	public static int animationBakeRate = 0;
+	/**
+	 * If true, BonedObjects playing the same Action at the same point share
+	 * one evaluation of the pose each frame.
+	 * 
+	 * @see com.supermercerbros.gameengine.armature.PoseCache
+	 */
+	public static boolean poseCache = true;
+	/**
+	 * The time step, in milliseconds, that Actions are snapped to when their
+	 * poses are shared through the pose cache. Larger values let objects that
+	 * are nearly in step share poses, at the cost of choppier animation. 0
+	 * only shares exactly matching poses.
+	 */
+	public static int poseCacheQuantum = 0;
+	/**
+	 * The animation level-of-detail policy given to new BonedObjects, or null
+	 * to update every BonedObject's Skeleton every frame. BonedObjects that
+	 * are invisible or off-screen are not updated under any policy.
+	 */
+	public static AnimationLod animationLod = null;
+	/**
+	 * The number of bits (16 or 8) per coordinate that the keyframes of
+	 * MeshAnimations are stored in, as offsets from each animation's first
+	 * keyframe, or 0 to store them as floats. This must be set before any
+	 * MeshAnimations are created.
+	 * 
+	 * @see com.supermercerbros.gameengine.animation.Keyframe#compress(com.supermercerbros.gameengine.animation.Keyframe, int)
+	 */
+	public static int meshKeyframeBits = 16;
+	/**
+	 * The number of worker threads that pose Skeletons, in addition to the
+	 * Engine thread. At most {@link #workerThreads} are used.
+	 * 
+	 * @see com.supermercerbros.gameengine.armature.SkeletonEvaluator
+	 */
+	public static int animationThreads = Math.max(0, Runtime.getRuntime()
+			.availableProcessors() - 1);
 }
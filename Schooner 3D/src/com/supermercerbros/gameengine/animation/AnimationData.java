@@ -47,6 +47,12 @@ public class AnimationData implements Pausable {
 	 */
 	float[] initialState;
 
+	/**
+	 * Contains the initial morph state of the animated object, if the
+	 * Animation is played on the GPU.
+	 */
+	float[] initialMorphState;
+
 	/**
 	 * @param callTime
 	 *            The time at which the animated object begins to move towards
@@ -72,6 +78,15 @@ public class AnimationData implements Pausable {
 		this.initialState = initialState.clone();
 	}
 
+	/**
+	 * @param initialMorphState
+	 *            The morph state of the animated object's initial frame (see
+	 *            {@link com.supermercerbros.gameengine.objects.AnimatedMeshObject#morphState}).
+	 */
+	public synchronized void setInitialMorphState(float[] initialMorphState) {
+		this.initialMorphState = initialMorphState.clone();
+	}
+
 	/**
 	 * @param loop
 	 *            The number of times the animation should loop.
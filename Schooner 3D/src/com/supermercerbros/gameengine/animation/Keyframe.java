@@ -16,25 +16,198 @@
 
 package com.supermercerbros.gameengine.animation;
 
+/**
+ * One frame of a {@link MeshAnimation}: the positions of every vertex. A
+ * Keyframe can be compressed to store each coordinate as a 16- or 8-bit
+ * offset from another Keyframe (usually the first of the animation), with a
+ * separate range for each axis. Compressed Keyframes are decoded while they
+ * are interpolated, so they are never expanded in memory.
+ */
 public class Keyframe {
+	private static final float STEPS_16 = 65535;
+	private static final float STEPS_8 = 255;
+	
+	/**
+	 * The vertex coordinates, or null if this Keyframe is compressed.
+	 */
 	float[] verts;
 	private final int size;
 	
+	// Compression
+	private final float[] base;
+	private final char[] deltas16;
+	private final byte[] deltas8;
+	private final float[] mins, scales;
+	
 	public Keyframe(float[] verts){
 		this.verts = verts;
 		size = verts.length;
+		base = null;
+		deltas16 = null;
+		deltas8 = null;
+		mins = null;
+		scales = null;
+	}
+	
+	private Keyframe(float[] verts, float[] base, int bits) {
+		this.size = verts.length;
+		this.base = base;
+		this.mins = new float[3];
+		this.scales = new float[3];
+		
+		// Find the range of the offsets on each axis
+		final float[] maxs = new float[3];
+		for (int axis = 0; axis < 3; axis++) {
+			mins[axis] = Float.POSITIVE_INFINITY;
+			maxs[axis] = Float.NEGATIVE_INFINITY;
+		}
+		for (int i = 0; i < size; i++) {
+			final float delta = verts[i] - base[i];
+			final int axis = i % 3;
+			mins[axis] = Math.min(mins[axis], delta);
+			maxs[axis] = Math.max(maxs[axis], delta);
+		}
+		final float steps = bits == 8 ? STEPS_8 : STEPS_16;
+		for (int axis = 0; axis < 3; axis++) {
+			if (size == 0) {
+				mins[axis] = 0;
+			} else {
+				scales[axis] = (maxs[axis] - mins[axis]) / steps;
+			}
+		}
+		
+		if (bits == 8) {
+			deltas8 = new byte[size];
+			deltas16 = null;
+		} else {
+			deltas16 = new char[size];
+			deltas8 = null;
+		}
+		for (int i = 0; i < size; i++) {
+			final int axis = i % 3;
+			final float scale = scales[axis];
+			final int q = scale == 0 ? 0 : Math.round((verts[i] - base[i]
+					- mins[axis]) / scale);
+			if (deltas8 != null) {
+				deltas8[i] = (byte) q;
+			} else {
+				deltas16[i] = (char) q;
+			}
+		}
+	}
+	
+	/**
+	 * Returns a compressed copy of this Keyframe, which stores each
+	 * coordinate as a quantized offset from <code>base</code>. The error of
+	 * each coordinate is at most half of 1/65535 (or 1/255) of the range of
+	 * the offsets on its axis.
+	 * 
+	 * @param base
+	 *            The uncompressed Keyframe to store the offsets from. It must
+	 *            not be modified afterwards.
+	 * @param bits
+	 *            The number of bits per coordinate: 16 or 8.
+	 * @return The compressed Keyframe.
+	 */
+	public Keyframe compress(Keyframe base, int bits) {
+		if (bits != 16 && bits != 8) {
+			throw new IllegalArgumentException("bits must be 16 or 8");
+		} else if (verts == null || base.verts == null) {
+			throw new IllegalStateException("Keyframe is already compressed");
+		} else if (base.size != size) {
+			throw new IllegalArgumentException(
+					"Cannot compress a Keyframe against one of a different size.");
+		}
+		return new Keyframe(verts, base.verts, bits);
+	}
+	
+	/**
+	 * @return true if this Keyframe stores quantized offsets rather than
+	 *         coordinates.
+	 */
+	public boolean isCompressed() {
+		return verts == null;
+	}
+
+	/**
+	 * @return A new array containing the vertex coordinates of this
+	 *         Keyframe.
+	 */
+	public float[] getVerts() {
+		final float[] copy = new float[size];
+		decodeTo(copy);
+		return copy;
 	}
 
 	public int count() {
 		return size / 3;
 	}
 	
-	void loadTo(float[] array) {
+	public void loadTo(float[] array) {
 		if (array.length != size){
 			throw new IllegalArgumentException("Cannot copy Keyframe to a vert array of a different size.");
 		}
-		System.arraycopy(this.verts, 0, array, 0, size);
-		
+		decodeTo(array);
+	}
+	
+	/**
+	 * Writes the vertex coordinates of this Keyframe to <code>out</code>.
+	 */
+	void decodeTo(float[] out) {
+		if (verts != null) {
+			System.arraycopy(verts, 0, out, 0, size);
+			return;
+		}
+		final float[] base = this.base;
+		final float minX = mins[0], minY = mins[1], minZ = mins[2];
+		final float scaleX = scales[0], scaleY = scales[1], scaleZ = scales[2];
+		if (deltas16 != null) {
+			final char[] deltas = deltas16;
+			for (int i = 0; i < size; i += 3) {
+				out[i    ] = base[i    ] + minX + deltas[i    ] * scaleX;
+				out[i + 1] = base[i + 1] + minY + deltas[i + 1] * scaleY;
+				out[i + 2] = base[i + 2] + minZ + deltas[i + 2] * scaleZ;
+			}
+		} else {
+			final byte[] deltas = deltas8;
+			for (int i = 0; i < size; i += 3) {
+				out[i    ] = base[i    ] + minX + (deltas[i    ] & 0xFF) * scaleX;
+				out[i + 1] = base[i + 1] + minY + (deltas[i + 1] & 0xFF) * scaleY;
+				out[i + 2] = base[i + 2] + minZ + (deltas[i + 2] & 0xFF) * scaleZ;
+			}
+		}
+	}
+	
+	/**
+	 * Moves the vertex coordinates in <code>out</code> towards this Keyframe
+	 * by <code>f</code>.
+	 */
+	void blendTo(float[] out, float f) {
+		if (verts != null) {
+			final float[] verts = this.verts;
+			for (int i = 0; i < size; i++) {
+				out[i] += (verts[i] - out[i]) * f;
+			}
+			return;
+		}
+		final float[] base = this.base;
+		final float minX = mins[0], minY = mins[1], minZ = mins[2];
+		final float scaleX = scales[0], scaleY = scales[1], scaleZ = scales[2];
+		if (deltas16 != null) {
+			final char[] deltas = deltas16;
+			for (int i = 0; i < size; i += 3) {
+				out[i    ] += (base[i    ] + minX + deltas[i    ] * scaleX - out[i    ]) * f;
+				out[i + 1] += (base[i + 1] + minY + deltas[i + 1] * scaleY - out[i + 1]) * f;
+				out[i + 2] += (base[i + 2] + minZ + deltas[i + 2] * scaleZ - out[i + 2]) * f;
+			}
+		} else {
+			final byte[] deltas = deltas8;
+			for (int i = 0; i < size; i += 3) {
+				out[i    ] += (base[i    ] + minX + (deltas[i    ] & 0xFF) * scaleX - out[i    ]) * f;
+				out[i + 1] += (base[i + 1] + minY + (deltas[i + 1] & 0xFF) * scaleY - out[i + 1]) * f;
+				out[i + 2] += (base[i + 2] + minZ + (deltas[i + 2] & 0xFF) * scaleZ - out[i + 2]) * f;
+			}
+		}
 	}
 
 }
@@ -18,6 +18,7 @@ package com.supermercerbros.gameengine.animation;
 
 import java.util.List;
 
+import com.supermercerbros.gameengine.Schooner3D;
 import com.supermercerbros.gameengine.objects.AnimatedMeshObject;
 import com.supermercerbros.gameengine.util.IPO;
 import android.util.Log;
@@ -32,7 +33,7 @@ public class MeshAnimation {
 	 * Contains the unique identifier for this Animation
 	 */
 	public final String id; 
-	private final List<Keyframe> keyframes;
+	private final Keyframe[] keyframes;
 	private final int numOfKeyframes;
 	private float[] times;
 
@@ -53,7 +54,18 @@ public class MeshAnimation {
 		}
 
 		this.numOfKeyframes = keyframes.size();
-		this.keyframes = keyframes;
+		this.keyframes = new Keyframe[numOfKeyframes];
+		
+		// Store every keyframe after the first as offsets from it
+		final int bits = Schooner3D.meshKeyframeBits;
+		final Keyframe base = keyframes.get(0);
+		int i = 0;
+		for (Keyframe keyframe : keyframes) {
+			if (i > 0 && bits > 0 && !keyframe.isCompressed()) {
+				keyframe = keyframe.compress(base, bits);
+			}
+			this.keyframes[i++] = keyframe;
+		}
 	}
 
 	public void getFrame(long frameTime, AnimationData data,
@@ -64,40 +76,122 @@ public class MeshAnimation {
 		Log.d(TAG, framePoint + " = (" + (frameTime - data.startTime) + ") / " + data.duration);
 
 		if (framePoint < 0.0) {
-			framePoint = (frameTime - data.callTime)
+			framePoint = ((float) (frameTime - data.callTime))
 					/ (data.startTime - data.callTime);
-			IPO.mesh(object.verts, data.initialState, keyframes.get(0).verts,
+			IPO.mesh(object.verts, data.initialState, keyframes[0].verts,
 					framePoint);
 
 		} else if (framePoint >= data.loop && data.loop > 0) {
-			keyframes.get(numOfKeyframes - 1).loadTo(object.verts);
+			keyframes[numOfKeyframes - 1].loadTo(object.verts);
 			object.clearAnimation();
 
 		} else {
 			framePoint %= 1.0;
-			int nextKey, lastKey = times.length - 1;
-			
-			while (framePoint < times[lastKey]) {
-				lastKey--;
-			}
-			
-			if (lastKey < times.length - 1) {
-				nextKey = lastKey + 1;
-				framePoint = (framePoint - times[lastKey])
-						/ (times[nextKey] - times[lastKey]);
+			final int lastKey = findKey(framePoint);
+			final int nextKey = lastKey < times.length - 1 ? lastKey + 1 : 0;
+
+			keyframes[lastKey].decodeTo(object.verts);
+			keyframes[nextKey].blendTo(object.verts,
+					(float) keyPoint(framePoint, lastKey));
+		}
+
+	}
+	
+	/**
+	 * Like {@link #getFrame(long, AnimationData, AnimatedMeshObject)}, but
+	 * writes the morph state (see {@link MorphVertexModifier}) to
+	 * <code>object.morphState</code> instead of interpolating the vertices.
+	 * Target <code>i</code> is keyframe <code>i + 1</code>, relative to the
+	 * first keyframe (see {@link #getMorphTargetCount()}).
+	 */
+	public void getMorphFrame(long frameTime, AnimationData data,
+			AnimatedMeshObject object) {
+		final float[] state = object.morphState;
+		double framePoint = ((float) (frameTime - data.startTime)) / (float) data.duration;
+
+		if (framePoint < 0.0) {
+			// The first keyframe is the base mesh, so fade the targets out
+			final float f = Math.max(0.0f, ((float) (frameTime - data.callTime))
+					/ (data.startTime - data.callTime));
+			final float[] initial = data.initialMorphState;
+			if (initial != null) {
+				state[0] = initial[0] * (1 - f);
+				state[1] = initial[1] * (1 - f);
+				state[2] = initial[2];
+				state[3] = initial[3];
 			} else {
-				nextKey = 0;
-				framePoint = (framePoint - times[lastKey])
-						/ (1 + times[0] - times[lastKey]);
+				setKeyWeights(state, 0, 0, 0.0f);
 			}
 
-			IPO.mesh(object.verts, keyframes.get(lastKey).verts, keyframes
-					.get(nextKey).verts, framePoint);
-		}
+		} else if (framePoint >= data.loop && data.loop > 0) {
+			setKeyWeights(state, numOfKeyframes - 1, 0, 0.0f);
+			object.clearAnimation();
 
+		} else {
+			framePoint %= 1.0;
+			final int lastKey = findKey(framePoint);
+			final int nextKey = lastKey < times.length - 1 ? lastKey + 1 : 0;
+			setKeyWeights(state, lastKey, nextKey,
+					(float) keyPoint(framePoint, lastKey));
+		}
+	}
+	
+	/**
+	 * @return The index of the last keyframe at or before the given point.
+	 */
+	private int findKey(double framePoint) {
+		int lastKey = times.length - 1;
+		while (lastKey > 0 && framePoint < times[lastKey]) {
+			lastKey--;
+		}
+		return lastKey;
+	}
+	
+	/**
+	 * @return The position of the given point between
+	 *         <code>lastKey</code> and the keyframe after it, from 0 to 1.
+	 */
+	private double keyPoint(double framePoint, int lastKey) {
+		if (lastKey < times.length - 1) {
+			return (framePoint - times[lastKey])
+					/ (times[lastKey + 1] - times[lastKey]);
+		} else {
+			return (framePoint - times[lastKey])
+					/ (1 + times[0] - times[lastKey]);
+		}
+	}
+	
+	/**
+	 * Writes the morph state that blends from <code>lastKey</code> to
+	 * <code>nextKey</code>. The first keyframe has no target, so its weight
+	 * is always 0.
+	 */
+	private static void setKeyWeights(float[] state, int lastKey,
+			int nextKey, float f) {
+		state[0] = lastKey > 0 ? 1 - f : 0.0f;
+		state[1] = nextKey > 0 ? f : 0.0f;
+		state[2] = Math.max(lastKey - 1, 0);
+		state[3] = Math.max(nextKey - 1, 0);
+	}
+	
+	/**
+	 * @return The number of morph targets needed to play this animation on
+	 *         the GPU: one for each keyframe after the first.
+	 */
+	public int getMorphTargetCount() {
+		return numOfKeyframes - 1;
+	}
+	
+	/**
+	 * @param index
+	 *            The index of the keyframe.
+	 * @return The keyframe at the given index.
+	 */
+	public Keyframe getKeyframe(int index) {
+		return keyframes[index];
 	}
 
 	public int getCount() {
-		return keyframes.get(0).count();
+		return keyframes[0].count();
 	}
 }
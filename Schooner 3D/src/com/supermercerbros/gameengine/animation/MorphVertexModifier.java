@@ -0,0 +1,154 @@
+/*
+ * Copyright 2013 Dan Mercer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.supermercerbros.gameengine.animation;
+
+import com.supermercerbros.gameengine.engine.shaders.Material;
+import com.supermercerbros.gameengine.engine.shaders.Program;
+import com.supermercerbros.gameengine.engine.shaders.VertexModifier;
+import com.supermercerbros.gameengine.objects.AnimatedMeshObject;
+import com.supermercerbros.gameengine.objects.GameObject;
+
+/**
+ * Plays a {@link MeshAnimation} in the GPU. Each keyframe's offsets from the
+ * base mesh (the first keyframe) are stored in the VBO once, as a morph
+ * target. Per draw, two vertex attributes are pointed at the targets of the
+ * keyframes on either side of the current time, and their weights are
+ * uploaded as one <code>vec4</code> in <code>u_matrices</code>: (weight A,
+ * weight B, target A, target B). Playing the animation never touches the
+ * vertices, and any number of keyframes uses the same two attributes.
+ * <p>
+ * If the Material's shader uses normals, the normals are morphed the same
+ * way.
+ */
+public class MorphVertexModifier extends VertexModifier {
+	private static final String A_MORPH = "a_morph";
+	private static final String A_MORPH_NORMAL = "a_morphNormal";
+
+	/**
+	 * The number of floats per object in <code>u_matrices</code>.
+	 */
+	public static final int STATE_SIZE = 4;
+
+	private final int targetCount;
+	private boolean morphNormals = false;
+
+	// Attribute locations, for the last Program attached: the positions of
+	// targets A and B, then their normals
+	private Program program;
+	private final int[] a_morphs = new int[4];
+
+	/**
+	 * @param targetCount
+	 *            The number of morph targets (keyframes after the first).
+	 *            Every object using the Material must have this many.
+	 */
+	public MorphVertexModifier(int targetCount) {
+		if (targetCount < 1) {
+			throw new IllegalArgumentException("targetCount must be at least 1");
+		}
+		this.targetCount = targetCount;
+	}
+
+	@Override
+	public void onLoadObject(Material mtl, GameObject object, float[] vbo) {
+		final AnimatedMeshObject animated = (AnimatedMeshObject) object;
+		final int count = object.info.count;
+		for (int i = 0; i < targetCount; i++) {
+			mtl.loadArrayToVbo(animated.morphPositions[i], vbo, 3, count);
+		}
+		if (morphNormals) {
+			for (int i = 0; i < targetCount; i++) {
+				mtl.loadArrayToVbo(animated.morphNormals[i], vbo, 3, count);
+			}
+		}
+	}
+
+	@Override
+	public void onAttachAttribs(Material mtl, Program program) {
+		onAttachAttribs(mtl, program, null);
+	}
+
+	@Override
+	public void onAttachAttribs(Material mtl, Program program,
+			float[] matrices) {
+		// The morph attributes aren't bound to fixed locations, so they can
+		// differ between the Material's local light variants
+		if (program != this.program) {
+			a_morphs[0] = program.getAttribLocation(A_MORPH + 0);
+			a_morphs[1] = program.getAttribLocation(A_MORPH + 1);
+			if (morphNormals) {
+				a_morphs[2] = program.getAttribLocation(A_MORPH_NORMAL + 0);
+				a_morphs[3] = program.getAttribLocation(A_MORPH_NORMAL + 1);
+			}
+			this.program = program;
+		}
+
+		int targetA = 0, targetB = 0;
+		if (matrices != null && matrices.length >= 16 + STATE_SIZE) {
+			targetA = (int) matrices[18];
+			targetB = (int) matrices[19];
+		}
+		mtl.attachAttribAt(a_morphs[0], 3, targetA * 3);
+		mtl.attachAttribAt(a_morphs[1], 3, targetB * 3);
+		if (morphNormals) {
+			final int normals = targetCount * 3;
+			mtl.attachAttribAt(a_morphs[2], 3, normals + targetA * 3);
+			mtl.attachAttribAt(a_morphs[3], 3, normals + targetB * 3);
+		}
+		mtl.skipAttribs(getStride());
+	}
+
+	@Override
+	public void getVars(StringBuilder sb) {
+		morphNormals = containsNormalAttrib(sb);
+
+		sb.append("uniform vec4 u_matrices[1];\n");
+		for (int i = 0; i < 2; i++) {
+			sb.append("attribute vec3 ").append(A_MORPH).append(i).append(";\n");
+			if (morphNormals) {
+				sb.append("attribute vec3 ").append(A_MORPH_NORMAL).append(i)
+						.append(";\n");
+			}
+		}
+	}
+
+	@Override
+	public void getCode(StringBuilder sb) {
+		sb.append("vec3 mod_pos = a_pos.xyz + u_matrices[0].x * ")
+				.append(A_MORPH).append("0 + u_matrices[0].y * ")
+				.append(A_MORPH).append("1;\n");
+		if (morphNormals) {
+			sb.append("vec3 mod_normal = normalize(a_normal + u_matrices[0].x * ")
+					.append(A_MORPH_NORMAL).append("0 + u_matrices[0].y * ")
+					.append(A_MORPH_NORMAL).append("1);\n");
+		}
+	}
+
+	@Override
+	public void getMethods(StringBuilder sb) {
+		// No methods for this modifier
+	}
+
+	@Override
+	public int getStride() {
+		return targetCount * (morphNormals ? 6 : 3);
+	}
+
+	@Override
+	public boolean usesPackedMatrices() {
+		return true;
+	}
+}
@@ -16,86 +16,141 @@
 
 package com.supermercerbros.gameengine.armature;
 
-import java.util.Iterator;
-
 import android.util.SparseArray;
 
+import com.supermercerbros.gameengine.math.BezierCurve;
 import com.supermercerbros.gameengine.math.Curve;
+import com.supermercerbros.gameengine.math.Quaternion;
 import com.supermercerbros.gameengine.motion.Movement;
 
 public class Action {
 	private final SparseArray<Curve> boneCurves;
+	private final BakedRotations baked;
 	public final Movement movement;
 	
 	public Action(Movement movement, SparseArray<Curve> curves) {
+		this(movement, curves, null);
+	}
+	
+	private Action(Movement movement, SparseArray<Curve> curves,
+			BakedRotations baked) {
+		if (baked == null) {
+			// Keep each bone's keyframes in one hemisphere so that the curves
+			// can be interpolated componentwise and normalized
+			for (int i = 0; i < curves.size(); i++) {
+				final int key = curves.keyAt(i);
+				if (key % 4 == 0) {
+					BezierCurve.alignQuaternion(curves.get(key),
+							curves.get(key + 1), curves.get(key + 2),
+							curves.get(key + 3));
+				}
+			}
+		}
 		this.boneCurves = curves;
+		this.baked = baked;
 		this.movement = movement;
 	}
+	
+	/**
+	 * Creates a copy of this Action whose bone rotations are resampled at
+	 * evenly spaced points and quantized, for cheaper playback through an
+	 * {@link ActionBlender}. The Movement is shared with this Action.
+	 * 
+	 * @param boneCount
+	 *            The number of bones in the Skeleton this Action animates.
+	 * @param sampleCount
+	 *            The number of samples to take, including both ends. Must be
+	 *            at least 2.
+	 * @return The baked Action.
+	 */
+	public Action bake(int boneCount, int sampleCount) {
+		return new Action(movement, boneCurves, new BakedRotations(boneCurves,
+				boneCount, sampleCount));
+	}
 
-	public void update(ActionData data, Skeleton skeleton, long time) {		
-		if (time < data.startTime) {
-			// Interpolating to the action
-			final float framePoint = (time - data.callTime) / (data.startTime - data.callTime);
-			final Iterator<Bone> iter = skeleton.bones.iterator();
-			for (int i = 0; iter.hasNext(); i++) {
-				final int offset = i*4;
-				final Bone bone = iter.next();
-				
-				final float sw = data.callState.boneStates[offset    ];
-				final float sx = data.callState.boneStates[offset + 1];
-				final float sy = data.callState.boneStates[offset + 2];
-				final float sz = data.callState.boneStates[offset + 3];
-				
-				final float fw, fx, fy, fz;
-				Curve wCurve = boneCurves.get(offset    );
-				if (wCurve != null) {
-					Curve xCurve = boneCurves.get(offset + 1);
-					Curve yCurve = boneCurves.get(offset + 2);
-					Curve zCurve = boneCurves.get(offset + 3);
-					fw = wCurve.getStartValue();
-					fx = xCurve.getStartValue();
-					fy = yCurve.getStartValue();
-					fz = zCurve.getStartValue();
-				} else {
-					fw = 1.0f;
-					fx = 0.0f;
-					fy = 0.0f;
-					fz = 0.0f;
-				}
-				final float w = sw + (fw - sw) * framePoint;
-				final float x = sx + (fx - sx) * framePoint;
-				final float y = sy + (fy - sy) * framePoint;
-				final float z = sz + (fz - sz) * framePoint;
-				bone.setRotation(w, x, y, z);
+	/**
+	 * Writes the rotation of every bone animated by this Action at the given
+	 * point to <code>pose</code>. Bones without curves are left unchanged.
+	 * 
+	 * @param framePoint
+	 *            The elapsed fraction of the Action, from 0 to 1.
+	 * @param pose
+	 *            The rotations (w, x, y, z) of the bones, by bone index.
+	 * @param depths
+	 *            The depth of each bone in the Skeleton.
+	 * @param maxDepth
+	 *            Bones deeper than this are skipped.
+	 */
+	void sample(float framePoint, float[] pose, int[] depths, int maxDepth) {
+		if (baked != null) {
+			baked.sample(framePoint, pose, depths, maxDepth);
+			return;
+		}
+		final SparseArray<Curve> boneCurves = this.boneCurves;
+		for (int offset = 0; offset < pose.length; offset += 4) {
+			if (depths[offset / 4] > maxDepth) {
+				continue;
 			}
-		} else {
-			// Interpolating in the action
-			final float framePoint = ((float) (time - data.startTime)) / data.duration;
-			
-			//TODO: do this more better-er. See MeshAnimation, line 74-ish
-			if (framePoint > 1.0f) {
-				return; // Don't animate.
+			final Curve wCurve = boneCurves.get(offset);
+			if (wCurve != null) {
+				Quaternion.normalize(wCurve.getInterpolation(framePoint),
+						boneCurves.get(offset + 1).getInterpolation(framePoint),
+						boneCurves.get(offset + 2).getInterpolation(framePoint),
+						boneCurves.get(offset + 3).getInterpolation(framePoint),
+						pose, offset);
 			}
-			
-			final Iterator<Bone> iter = skeleton.bones.iterator();
-			for (int i = 0; iter.hasNext(); i++) {
-				final int offset = i*4;
-				final Bone bone = iter.next();
-				
-				Curve wCurve = boneCurves.get(offset    );
-				if (wCurve != null) {
-					Curve xCurve = boneCurves.get(offset + 1);
-					Curve yCurve = boneCurves.get(offset + 2);
-					Curve zCurve = boneCurves.get(offset + 3);
-					
-					final float w = wCurve.getInterpolation(framePoint);
-					final float x = xCurve.getInterpolation(framePoint);
-					final float y = yCurve.getInterpolation(framePoint);
-					final float z = zCurve.getInterpolation(framePoint);
-					bone.setRotation(w, x, y, z);
-				} 
+		}
+	}
+	
+	/**
+	 * Writes the rotation of every bone at the given point relative to its
+	 * rotation at the start of this Action, for use as an additive layer.
+	 * Bones without curves get the identity rotation.
+	 * 
+	 * @param framePoint
+	 *            The elapsed fraction of the Action, from 0 to 1.
+	 * @param delta
+	 *            The array to write the relative rotations (w, x, y, z) to, by
+	 *            bone index.
+	 * @param depths
+	 *            The depth of each bone in the Skeleton.
+	 * @param maxDepth
+	 *            Bones deeper than this are skipped.
+	 */
+	void sampleDelta(float framePoint, float[] delta, int[] depths,
+			int maxDepth) {
+		if (baked != null) {
+			baked.sampleDelta(framePoint, delta, depths, maxDepth);
+			return;
+		}
+		final SparseArray<Curve> boneCurves = this.boneCurves;
+		for (int offset = 0; offset < delta.length; offset += 4) {
+			if (depths[offset / 4] > maxDepth) {
+				continue;
 			}
+			final Curve wCurve = boneCurves.get(offset);
+			if (wCurve == null) {
+				delta[offset] = 1;
+				delta[offset + 1] = 0;
+				delta[offset + 2] = 0;
+				delta[offset + 3] = 0;
+				continue;
+			}
+			final Curve xCurve = boneCurves.get(offset + 1);
+			final Curve yCurve = boneCurves.get(offset + 2);
+			final Curve zCurve = boneCurves.get(offset + 3);
+			
+			// delta = q(framePoint) * conjugate(q(0))
+			final float w = wCurve.getInterpolation(framePoint);
+			final float x = xCurve.getInterpolation(framePoint);
+			final float y = yCurve.getInterpolation(framePoint);
+			final float z = zCurve.getInterpolation(framePoint);
+			final float sw = wCurve.getStartValue(), sx = -xCurve.getStartValue();
+			final float sy = -yCurve.getStartValue(), sz = -zCurve.getStartValue();
+			Quaternion.normalize(w * sw - x * sx - y * sy - z * sz,
+					w * sx + x * sw + y * sz - z * sy,
+					w * sy - x * sz + y * sw + z * sx,
+					w * sz + x * sy - y * sx + z * sw, delta, offset);
 		}
-		
 	}
 }
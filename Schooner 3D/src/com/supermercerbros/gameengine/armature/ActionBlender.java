@@ -0,0 +1,375 @@
+/*
+ * Copyright 2013 Dan Mercer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.supermercerbros.gameengine.armature;
+
+import com.supermercerbros.gameengine.Schooner3D;
+import com.supermercerbros.gameengine.engine.Time;
+import com.supermercerbros.gameengine.engine.Time.Pausable;
+import com.supermercerbros.gameengine.math.Quaternion;
+
+/**
+ * Blends a stack of {@link Action} layers into a Skeleton's pose. Layers are
+ * applied in order, starting from the rest pose. Each layer has a weight, an
+ * optional {@link BoneMask}, and can either override the layers below it or
+ * add its rotation (relative to the Action's first frame) on top of them.
+ * Starting an Action on a layer that is already playing one crossfades
+ * between the two. Crossfades and partial weights slerp each bone along the
+ * shorter arc.
+ * <p>
+ * The pose is evaluated in a single pass into the Skeleton's rotations, and
+ * nothing is allocated per frame. When only one Action is playing, the pose
+ * is shared through the {@link PoseCache} with other Skeletons playing it at
+ * the same point.
+ */
+public class ActionBlender implements Pausable {
+	private static final float[] IDENTITY = { 1, 0, 0, 0 };
+
+	private static class Layer {
+		Action action;
+		long start, duration;
+
+		// The Action being faded out
+		Action previous;
+		long previousStart, previousDuration;
+		long fadeStart, fadeTime;
+
+		float weightFrom = 1, weightTo = 1;
+		long weightStart, weightTime;
+
+		boolean additive;
+		BoneMask mask;
+
+		float getWeight(long time) {
+			if (weightTime <= 0 || time >= weightStart + weightTime) {
+				return weightTo;
+			} else if (time <= weightStart) {
+				return weightFrom;
+			}
+			final float f = (float) (time - weightStart) / weightTime;
+			return weightFrom + (weightTo - weightFrom) * f;
+		}
+
+		boolean isFading(long time) {
+			return fadeTime > 0 && time < fadeStart + fadeTime;
+		}
+	}
+
+	final Skeleton skeleton;
+	private final Layer[] layers;
+	private final float[] sample, fadeSample;
+	private boolean dirty = true;
+
+	/**
+	 * Creates a new ActionBlender.
+	 *
+	 * @param skeleton
+	 *            The Skeleton to pose.
+	 * @param layerCount
+	 *            The number of layers.
+	 */
+	public ActionBlender(Skeleton skeleton, int layerCount) {
+		this.skeleton = skeleton;
+		this.layers = new Layer[layerCount];
+		for (int i = 0; i < layerCount; i++) {
+			layers[i] = new Layer();
+		}
+		this.sample = new float[skeleton.rotations.length];
+		this.fadeSample = new float[skeleton.rotations.length];
+		Time.INSTANCE.addPausable(this);
+	}
+
+	/**
+	 * Starts an Action on a layer. If the layer is already playing an Action,
+	 * it is faded out over <code>fadeTime</code> while the new Action fades
+	 * in.
+	 *
+	 * @param layer
+	 *            The index of the layer.
+	 * @param action
+	 *            The Action to start, or null to fade the layer out.
+	 * @param time
+	 *            The current time, in milliseconds.
+	 * @param duration
+	 *            The duration of the Action, in milliseconds.
+	 * @param fadeTime
+	 *            The duration of the crossfade, in milliseconds. If this is 0,
+	 *            the new Action replaces the old one immediately.
+	 */
+	public synchronized void play(int layer, Action action, long time,
+			long duration, long fadeTime) {
+		final Layer l = layers[layer];
+		if (fadeTime > 0) {
+			l.previous = l.action;
+			l.previousStart = l.start;
+			l.previousDuration = l.duration;
+		} else {
+			l.previous = null;
+		}
+		l.fadeStart = time;
+		l.fadeTime = fadeTime;
+		l.action = action;
+		l.start = time;
+		l.duration = duration;
+		dirty = true;
+	}
+
+	/**
+	 * Changes the weight of a layer.
+	 *
+	 * @param layer
+	 *            The index of the layer.
+	 * @param weight
+	 *            The new weight, from 0 to 1. Layers start with a weight of 1.
+	 * @param time
+	 *            The current time, in milliseconds.
+	 * @param fadeTime
+	 *            The time to take to reach the new weight, in milliseconds.
+	 */
+	public synchronized void setWeight(int layer, float weight, long time,
+			long fadeTime) {
+		final Layer l = layers[layer];
+		l.weightFrom = l.getWeight(time);
+		l.weightTo = weight;
+		l.weightStart = time;
+		l.weightTime = fadeTime;
+		dirty = true;
+	}
+
+	/**
+	 * Sets whether a layer is additive. An additive layer applies each bone's
+	 * rotation relative to the first frame of its Action on top of the layers
+	 * below it, rather than replacing them.
+	 *
+	 * @param layer
+	 *            The index of the layer.
+	 * @param additive
+	 *            true if the layer should be additive.
+	 */
+	public synchronized void setAdditive(int layer, boolean additive) {
+		layers[layer].additive = additive;
+		dirty = true;
+	}
+
+	/**
+	 * Limits the bones that a layer affects.
+	 *
+	 * @param layer
+	 *            The index of the layer.
+	 * @param mask
+	 *            The BoneMask to apply, or null to affect every bone.
+	 */
+	public synchronized void setMask(int layer, BoneMask mask) {
+		layers[layer].mask = mask;
+		dirty = true;
+	}
+
+	/**
+	 * @param time
+	 *            The current time, in milliseconds.
+	 * @return true if any layer's Action is playing or any layer is fading.
+	 */
+	public synchronized boolean isAnimating(long time) {
+		for (Layer l : layers) {
+			if ((l.action != null && time <= l.start + l.duration)
+					|| l.isFading(time)
+					|| (l.weightTime > 0 && time < l.weightStart + l.weightTime)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Evaluates the layers and writes the resulting pose to the Skeleton.
+	 * Does nothing if the pose cannot have changed since the last call.
+	 *
+	 * @param time
+	 *            The current time, in milliseconds.
+	 */
+	public void update(long time) {
+		update(time, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Evaluates the layers for the bones no deeper than
+	 * <code>maxDepth</code> in the Skeleton's hierarchy, and writes the
+	 * resulting pose to the Skeleton. Deeper bones keep their last rotation.
+	 * Does nothing if the pose cannot have changed since the last call.
+	 *
+	 * @param time
+	 *            The current time, in milliseconds.
+	 * @param maxDepth
+	 *            The depth of the deepest bones to evaluate (root bones have
+	 *            a depth of 0).
+	 */
+	public synchronized void update(long time, int maxDepth) {
+		if (!dirty && !isAnimating(time)) {
+			return;
+		}
+		// A partial pose has to be completed later, even if nothing moves
+		dirty = isAnimating(time) || maxDepth < Integer.MAX_VALUE;
+
+		int activeLayers = 0;
+		Layer active = null;
+		for (Layer l : layers) {
+			if (l.action != null || (l.previous != null && l.isFading(time))) {
+				activeLayers++;
+				active = l;
+			}
+		}
+		if (activeLayers == 0) {
+			// Leave the Skeleton to whoever else is posing it
+			return;
+		}
+
+		if (activeLayers == 1 && Schooner3D.poseCache && isSimple(active, time)
+				&& skeleton.getId() != null && maxDepth == Integer.MAX_VALUE) {
+			// Quantize the elapsed time so that nearby objects share poses
+			long elapsed = Math.max(0, Math.min(time - active.start,
+					active.duration));
+			final int quantum = Schooner3D.poseCacheQuantum;
+			if (quantum > 1) {
+				elapsed -= elapsed % quantum;
+			}
+			final PoseCache cache = PoseCache.INSTANCE;
+			if (!cache.fetch(skeleton, active.action, active.duration,
+					elapsed, time)) {
+				evaluate(active.start + elapsed, maxDepth);
+				cache.store(skeleton, active.action, active.duration, elapsed,
+						time);
+			}
+			return;
+		}
+		evaluate(time, maxDepth);
+	}
+
+	/**
+	 * @return true if the given layer plays a single Action over the whole
+	 *         Skeleton at full weight, so that its pose depends only on the
+	 *         Action and the elapsed time.
+	 */
+	private static boolean isSimple(Layer l, long time) {
+		return l.action != null && !l.isFading(time) && !l.additive
+				&& l.mask == null && l.weightTo >= 1
+				&& time >= l.weightStart + l.weightTime;
+	}
+
+	private void evaluate(long time, int maxDepth) {
+		final float[] pose = skeleton.rotations;
+		final int[] depths = skeleton.depths;
+		for (int offset = 0; offset < pose.length; offset += 4) {
+			if (depths[offset / 4] <= maxDepth) {
+				System.arraycopy(IDENTITY, 0, pose, offset, 4);
+			}
+		}
+
+		for (Layer l : layers) {
+			final boolean fading = l.isFading(time);
+			if (l.action == null && (l.previous == null || !fading)) {
+				continue;
+			}
+			final float weight = l.getWeight(time);
+			if (weight <= 0) {
+				continue;
+			}
+
+			sample(l.action, l.start, l.duration, l.additive, pose, sample,
+					time, depths, maxDepth);
+			if (fading) {
+				sample(l.previous, l.previousStart, l.previousDuration,
+						l.additive, pose, fadeSample, time, depths, maxDepth);
+				final float f = Math.max(0, (float) (time - l.fadeStart)
+						/ l.fadeTime);
+				for (int offset = 0; offset < sample.length; offset += 4) {
+					if (depths[offset / 4] > maxDepth) {
+						continue;
+					}
+					Quaternion.slerp(fadeSample, offset, sample, offset, f,
+							sample, offset);
+				}
+			}
+
+			final float[] mask = l.mask != null ? l.mask.weights : null;
+			for (int offset = 0; offset < pose.length; offset += 4) {
+				final float boneWeight = mask != null ? weight
+						* mask[offset / 4] : weight;
+				if (boneWeight <= 0 || depths[offset / 4] > maxDepth) {
+					continue;
+				}
+				if (l.additive) {
+					if (boneWeight < 1) {
+						Quaternion.slerp(IDENTITY, 0, sample, offset,
+								boneWeight, sample, offset);
+					}
+					Quaternion.multiply(sample, offset, pose, offset, pose,
+							offset);
+				} else if (boneWeight >= 1) {
+					System.arraycopy(sample, offset, pose, offset, 4);
+				} else {
+					Quaternion.slerp(pose, offset, sample, offset, boneWeight,
+							pose, offset);
+				}
+			}
+		}
+		skeleton.invalidate();
+	}
+
+	/**
+	 * Samples an Action into <code>out</code>. For override layers, bones
+	 * that the Action does not animate keep their rotation from
+	 * <code>pose</code>; for additive layers, they get the identity.
+	 */
+	private static void sample(Action action, long start, long duration,
+			boolean additive, float[] pose, float[] out, long time,
+			int[] depths, int maxDepth) {
+		if (additive) {
+			if (action != null) {
+				action.sampleDelta(framePoint(time, start, duration), out,
+						depths, maxDepth);
+			} else {
+				for (int offset = 0; offset < out.length; offset += 4) {
+					System.arraycopy(IDENTITY, 0, out, offset, 4);
+				}
+			}
+		} else {
+			System.arraycopy(pose, 0, out, 0, pose.length);
+			if (action != null) {
+				action.sample(framePoint(time, start, duration), out, depths,
+						maxDepth);
+			}
+		}
+	}
+
+	private static float framePoint(long time, long start, long duration) {
+		if (duration <= 0 || time >= start + duration) {
+			return 1.0f;
+		}
+		if (time <= start) {
+			return 0.0f;
+		}
+		return (float) (time - start) / duration;
+	}
+
+	@Override
+	public synchronized void onResume(long millis) {
+		for (Layer l : layers) {
+			l.start += millis;
+			l.previousStart += millis;
+			l.fadeStart += millis;
+			l.weightStart += millis;
+		}
+	}
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright 2013 Dan Mercer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.supermercerbros.gameengine.armature;
+
+/**
+ * An animation level-of-detail policy. Each level applies to objects at
+ * least a given size on screen, and sets how often their Skeleton is updated
+ * and how deep into its hierarchy. Between updates, the last pose is reused.
+ * Objects that are off-screen or invisible are not updated at all.
+ * <p>
+ * Levels must be added from largest to smallest, e.g.
+ *
+ * <pre>
+ * new AnimationLod().addLevel(0.2f, 1, Integer.MAX_VALUE)
+ * 		.addLevel(0.05f, 2, Integer.MAX_VALUE).addLevel(0, 4, 2);
+ * </pre>
+ *
+ * Objects smaller than the last level are updated as that level.
+ */
+public class AnimationLod {
+	private static final int MAX_LEVELS = 8;
+
+	private final float[] sizes = new float[MAX_LEVELS];
+	private final int[] intervals = new int[MAX_LEVELS];
+	private final int[] depths = new int[MAX_LEVELS];
+	private int levelCount = 0;
+
+	/**
+	 * Adds a level to this policy.
+	 *
+	 * @param minScreenSize
+	 *            The smallest size on screen that this level applies to, as a
+	 *            fraction of the viewport height.
+	 * @param updateInterval
+	 *            The number of frames between updates (1 updates every frame).
+	 * @param maxDepth
+	 *            The depth of the deepest bones to update (root bones have a
+	 *            depth of 0), or {@link Integer#MAX_VALUE} to update every
+	 *            bone.
+	 * @return This AnimationLod, for chaining.
+	 */
+	public AnimationLod addLevel(float minScreenSize, int updateInterval,
+			int maxDepth) {
+		if (levelCount == MAX_LEVELS) {
+			throw new IllegalStateException("Too many levels");
+		} else if (updateInterval < 1) {
+			throw new IllegalArgumentException("updateInterval < 1");
+		} else if (levelCount > 0 && minScreenSize > sizes[levelCount - 1]) {
+			throw new IllegalArgumentException(
+					"Levels must be added from largest to smallest");
+		}
+		sizes[levelCount] = minScreenSize;
+		intervals[levelCount] = updateInterval;
+		depths[levelCount] = maxDepth;
+		levelCount++;
+		return this;
+	}
+
+	/**
+	 * @param screenSize
+	 *            The size of an object on screen, as a fraction of the
+	 *            viewport height.
+	 * @return The index of the level that applies to the object.
+	 */
+	public int getLevel(float screenSize) {
+		for (int i = 0; i < levelCount - 1; i++) {
+			if (screenSize >= sizes[i]) {
+				return i;
+			}
+		}
+		return levelCount - 1;
+	}
+
+	/**
+	 * @param level
+	 *            The index of a level.
+	 * @return The number of frames between updates at the given level.
+	 */
+	public int getUpdateInterval(int level) {
+		return level < 0 ? 1 : intervals[level];
+	}
+
+	/**
+	 * @param level
+	 *            The index of a level.
+	 * @return The depth of the deepest bones updated at the given level.
+	 */
+	public int getMaxDepth(int level) {
+		return level < 0 ? Integer.MAX_VALUE : depths[level];
+	}
+}
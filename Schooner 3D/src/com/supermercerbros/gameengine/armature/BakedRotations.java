@@ -0,0 +1,220 @@
+/*
+ * Copyright 2013 Dan Mercer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.supermercerbros.gameengine.armature;
+
+import android.util.SparseArray;
+
+import com.supermercerbros.gameengine.math.Curve;
+import com.supermercerbros.gameengine.math.Quaternion;
+
+/**
+ * The bone rotations of an {@link Action}, resampled at evenly spaced points
+ * and stored with the "smallest three" encoding: the largest component of
+ * each unit quaternion is dropped (it can be recomputed from the others) and
+ * the other three are quantized to 15 bits each, using 6 bytes per bone per
+ * sample. The samples of all bones at one point are stored together.
+ * <p>
+ * Sampling uses no shared scratch space, so one Action can be sampled from
+ * several threads at once.
+ */
+class BakedRotations {
+	private static final float SQRT_2 = (float) Math.sqrt(2);
+	private static final float STEPS = 32767;
+
+	private final short[] samples;
+	private final boolean[] animated;
+	private final int boneCount;
+	private final int lastSample;
+	private final float[] start; // The decoded first sample, for deltas
+
+	/**
+	 * @param curves
+	 *            The Action's bone curves, 4 per bone.
+	 * @param boneCount
+	 *            The number of bones in the Skeleton.
+	 * @param sampleCount
+	 *            The number of samples to take, including both ends. Must be
+	 *            at least 2.
+	 */
+	BakedRotations(SparseArray<Curve> curves, int boneCount, int sampleCount) {
+		if (sampleCount < 2) {
+			throw new IllegalArgumentException("sampleCount < 2");
+		}
+		this.boneCount = boneCount;
+		this.lastSample = sampleCount - 1;
+		this.animated = new boolean[boneCount];
+		this.samples = new short[sampleCount * boneCount * 3];
+		this.start = new float[boneCount * 4];
+
+		final float[] q = new float[4];
+		for (int bone = 0; bone < boneCount; bone++) {
+			final Curve wCurve = curves.get(bone * 4);
+			if (wCurve == null) {
+				continue;
+			}
+			animated[bone] = true;
+			final Curve xCurve = curves.get(bone * 4 + 1);
+			final Curve yCurve = curves.get(bone * 4 + 2);
+			final Curve zCurve = curves.get(bone * 4 + 3);
+			for (int i = 0; i < sampleCount; i++) {
+				final float x = (float) i / lastSample;
+				Quaternion.normalize(wCurve.getInterpolation(x),
+						xCurve.getInterpolation(x), yCurve.getInterpolation(x),
+						zCurve.getInterpolation(x), q, 0);
+				encode(q, samples, (i * boneCount + bone) * 3);
+			}
+			decode(samples, bone * 3, start, bone * 4);
+		}
+	}
+
+	/**
+	 * Writes the rotation of every animated bone no deeper than
+	 * <code>maxDepth</code> at the given point to <code>pose</code>. Bones
+	 * without curves are left unchanged.
+	 */
+	void sample(float framePoint, float[] pose, int[] depths, int maxDepth) {
+		final int i;
+		final float f;
+		if (framePoint >= 1) {
+			i = lastSample - 1;
+			f = 1;
+		} else if (framePoint <= 0) {
+			i = 0;
+			f = 0;
+		} else {
+			final float position = framePoint * lastSample;
+			i = Math.min((int) position, lastSample - 1);
+			f = position - i;
+		}
+
+		final int base0 = i * boneCount * 3, base1 = base0 + boneCount * 3;
+		for (int bone = 0; bone < boneCount; bone++) {
+			if (!animated[bone] || depths[bone] > maxDepth) {
+				continue;
+			}
+			decode(samples, base0 + bone * 3, pose, bone * 4);
+			if (f > 0) {
+				blend(samples, base1 + bone * 3, f, pose, bone * 4);
+			}
+		}
+	}
+
+	/**
+	 * Writes the rotation of every bone at the given point relative to its
+	 * rotation at the first sample. Bones without curves get the identity.
+	 * Bones deeper than <code>maxDepth</code> are skipped.
+	 */
+	void sampleDelta(float framePoint, float[] delta, int[] depths,
+			int maxDepth) {
+		for (int bone = 0; bone < boneCount; bone++) {
+			if (depths[bone] > maxDepth) {
+				continue;
+			}
+			final int offset = bone * 4;
+			delta[offset] = 1;
+			delta[offset + 1] = 0;
+			delta[offset + 2] = 0;
+			delta[offset + 3] = 0;
+		}
+		sample(framePoint, delta, depths, maxDepth);
+		final float[] start = this.start;
+		for (int bone = 0; bone < boneCount; bone++) {
+			if (!animated[bone] || depths[bone] > maxDepth) {
+				continue;
+			}
+			// delta = q * conjugate(start)
+			final int offset = bone * 4;
+			final float w = delta[offset], x = delta[offset + 1];
+			final float y = delta[offset + 2], z = delta[offset + 3];
+			final float sw = start[offset], sx = -start[offset + 1];
+			final float sy = -start[offset + 2], sz = -start[offset + 3];
+			delta[offset] = w * sw - x * sx - y * sy - z * sz;
+			delta[offset + 1] = w * sx + x * sw + y * sz - z * sy;
+			delta[offset + 2] = w * sy - x * sz + y * sw + z * sx;
+			delta[offset + 3] = w * sz + x * sy - y * sx + z * sw;
+		}
+	}
+
+	/**
+	 * Encodes a unit quaternion (w, x, y, z) as three shorts. The index of the
+	 * dropped component is stored in the top bits of the first two shorts.
+	 */
+	private static void encode(float[] q, short[] out, int offset) {
+		int largest = 0;
+		for (int i = 1; i < 4; i++) {
+			if (Math.abs(q[i]) > Math.abs(q[largest])) {
+				largest = i;
+			}
+		}
+		// q and -q are the same rotation, so make the dropped component
+		// positive
+		final float sign = q[largest] < 0 ? -1 : 1;
+		int j = 0;
+		for (int i = 0; i < 4; i++) {
+			if (i == largest) {
+				continue;
+			}
+			final float c = Math.max(-1, Math.min(1, q[i] * sign * SQRT_2));
+			int bits = Math.round((c + 1) * 0.5f * STEPS);
+			if (j < 2 && (largest & (1 << j)) != 0) {
+				bits |= 0x8000;
+			}
+			out[offset + j++] = (short) bits;
+		}
+	}
+
+	/**
+	 * Decodes a quaternion and nlerps from <code>q</code> towards it by
+	 * <code>f</code>, in place.
+	 */
+	private static void blend(short[] in, int offset, float f, float[] q,
+			int qOffset) {
+		final int s0 = in[offset], s1 = in[offset + 1], s2 = in[offset + 2];
+		final int largest = ((s0 >> 15) & 1) | (((s1 >> 15) & 1) << 1);
+		final float a = ((s0 & 0x7FFF) / STEPS * 2 - 1) / SQRT_2;
+		final float b = ((s1 & 0x7FFF) / STEPS * 2 - 1) / SQRT_2;
+		final float c = ((s2 & 0x7FFF) / STEPS * 2 - 1) / SQRT_2;
+		final float d = (float) Math.sqrt(Math.max(0, 1 - a * a - b * b - c * c));
+		float w = largest == 0 ? d : a;
+		float x = largest == 1 ? d : (largest == 0 ? a : b);
+		float y = largest == 2 ? d : (largest == 3 ? c : b);
+		float z = largest == 3 ? d : c;
+
+		final float qw = q[qOffset], qx = q[qOffset + 1];
+		final float qy = q[qOffset + 2], qz = q[qOffset + 3];
+		if (qw * w + qx * x + qy * y + qz * z < 0) {
+			w = -w;
+			x = -x;
+			y = -y;
+			z = -z;
+		}
+		Quaternion.normalize(qw + (w - qw) * f, qx + (x - qx) * f,
+				qy + (y - qy) * f, qz + (z - qz) * f, q, qOffset);
+	}
+
+	private static void decode(short[] in, int offset, float[] q, int qOffset) {
+		final int s0 = in[offset], s1 = in[offset + 1], s2 = in[offset + 2];
+		final int largest = ((s0 >> 15) & 1) | (((s1 >> 15) & 1) << 1);
+		final float a = ((s0 & 0x7FFF) / STEPS * 2 - 1) / SQRT_2;
+		final float b = ((s1 & 0x7FFF) / STEPS * 2 - 1) / SQRT_2;
+		final float c = ((s2 & 0x7FFF) / STEPS * 2 - 1) / SQRT_2;
+		final float d = (float) Math.sqrt(Math.max(0, 1 - a * a - b * b - c * c));
+		q[qOffset] = largest == 0 ? d : a;
+		q[qOffset + 1] = largest == 1 ? d : (largest == 0 ? a : b);
+		q[qOffset + 2] = largest == 2 ? d : (largest == 3 ? c : b);
+		q[qOffset + 3] = largest == 3 ? d : c;
+	}
+}
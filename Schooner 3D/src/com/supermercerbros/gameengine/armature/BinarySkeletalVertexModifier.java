@@ -34,6 +34,9 @@ public class BinarySkeletalVertexModifier extends VertexModifier {
 	private static final String VARS = 
 			"uniform mat4 u_matrices[%d];\n" +
 			"attribute float a_index;\n";
+	private static final String VARS_PACKED = 
+			"uniform vec4 u_matrices[%d];\n" +
+			"attribute float a_index;\n";
 	
 	// CODE SNIPPETS
 	private static final String POS_CODE = 
@@ -44,7 +47,19 @@ public class BinarySkeletalVertexModifier extends VertexModifier {
 			"vec3 mod_normal = (u_matrices[int(a_index)] * a_normal4).xyz;\n";
 	
 	
+	private static final String POS_CODE_4X3 = 
+			"vec4 a_pos4 = vec4(a_pos.xyz, 1.0);\n" +
+			"int m_row = int(a_index) * 3;\n" +
+			"vec3 mod_pos = vec3(dot(u_matrices[m_row], a_pos4), dot(u_matrices[m_row + 1], a_pos4), dot(u_matrices[m_row + 2], a_pos4));\n";
+	private static final String NORMAL_CODE_4X3 = 
+			"vec4 a_normal4 = vec4(a_normal.xyz, 0.0);\n" +
+			"vec3 mod_normal = vec3(dot(u_matrices[m_row], a_normal4), dot(u_matrices[m_row + 1], a_normal4), dot(u_matrices[m_row + 2], a_normal4));\n";
+	private static final String DQ_CODE = 
+			"vec4 m_real = u_matrices[int(a_index) * 2];\n" +
+			"vec4 m_dual = u_matrices[int(a_index) * 2 + 1];\n";
+	
 	private final int boneCount;
+	private final BoneFormat format;
 	
 	private int a_index = -1;
 	
@@ -52,7 +67,20 @@ public class BinarySkeletalVertexModifier extends VertexModifier {
 	 * Constructs a new BinarySkeletalVertexModifier
 	 */
 	public BinarySkeletalVertexModifier(int boneCount) {
+		this(boneCount, BoneFormat.MATRIX_4X4);
+	}
+	
+	/**
+	 * Constructs a new BinarySkeletalVertexModifier
+	 * 
+	 * @param boneCount
+	 *            The number of bones.
+	 * @param format
+	 *            The BoneFormat the bones are uploaded in.
+	 */
+	public BinarySkeletalVertexModifier(int boneCount, BoneFormat format) {
 		this.boneCount = boneCount;
+		this.format = format;
 	}
 	
 	@Override
@@ -73,14 +101,37 @@ public class BinarySkeletalVertexModifier extends VertexModifier {
 	
 	@Override
 	public void getVars(StringBuilder sb) {
-		sb.append(String.format(Locale.US, VARS, boneCount));
+		if (format == BoneFormat.MATRIX_4X4) {
+			sb.append(String.format(Locale.US, VARS, boneCount));
+		} else {
+			sb.append(String.format(Locale.US, VARS_PACKED, boneCount
+					* format.vectorsPerBone()));
+		}
 	}
 	
 	@Override
 	public void getCode(StringBuilder sb) {
-		sb.append(POS_CODE);
-		if (containsNormalAttrib(sb)) {
-			sb.append(NORMAL_CODE);
+		final boolean normal = containsNormalAttrib(sb);
+		switch (format) {
+		case MATRIX_4X4:
+			sb.append(POS_CODE);
+			if (normal) {
+				sb.append(NORMAL_CODE);
+			}
+			break;
+		case MATRIX_4X3:
+			sb.append(POS_CODE_4X3);
+			if (normal) {
+				sb.append(NORMAL_CODE_4X3);
+			}
+			break;
+		case DUAL_QUATERNION:
+			sb.append(DQ_CODE);
+			sb.append(SkeletalVertexModifier.DQ_POS);
+			if (normal) {
+				sb.append(SkeletalVertexModifier.DQ_NORMAL);
+			}
+			break;
 		}
 	}
 	
@@ -94,4 +145,9 @@ public class BinarySkeletalVertexModifier extends VertexModifier {
 		return 1;
 	}
 	
+	@Override
+	public boolean usesPackedMatrices() {
+		return format != BoneFormat.MATRIX_4X4;
+	}
+	
 }
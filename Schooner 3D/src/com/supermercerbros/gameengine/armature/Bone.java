@@ -23,9 +23,14 @@ import com.supermercerbros.gameengine.math.MatrixUtils;
 
 public class Bone {
 	public final byte index;
-	private final LinkedList<Bone> children;
-	private final float locX, locY, locZ;
-	private float w = 1, x = 0, y = 0, z = 0;
+	final LinkedList<Bone> children;
+	final float locX, locY, locZ;
+	
+	// The rotation is stored in the Skeleton's flat rotation array once the
+	// Bone belongs to a Skeleton (see attach()).
+	private float[] rotation = { 1, 0, 0, 0 };
+	private int rotationOffset = 0;
+	private Skeleton skeleton;
 	
 	/**
 	 * Creates a new Bone
@@ -56,10 +61,7 @@ public class Bone {
 	 * @param array
 	 */
 	void getRotation(float[] array) {
-		array[index * 4] = w;
-		array[index * 4 + 1] = x;
-		array[index * 4 + 2] = y;
-		array[index * 4 + 3] = z;
+		System.arraycopy(rotation, rotationOffset, array, index * 4, 4);
 	}
 
 	/**
@@ -75,10 +77,32 @@ public class Bone {
 	 *            The z-component of the quaternion.
 	 */
 	void setRotation(float w, float x, float y, float z) {
-		this.w = w;
-		this.x = x;
-		this.y = y;
-		this.z = z;
+		final float[] rotation = this.rotation;
+		final int offset = rotationOffset;
+		rotation[offset] = w;
+		rotation[offset + 1] = x;
+		rotation[offset + 2] = y;
+		rotation[offset + 3] = z;
+		if (skeleton != null) {
+			skeleton.invalidate();
+		}
+	}
+	
+	/**
+	 * Moves this Bone's rotation into the given Skeleton's array of bone
+	 * rotations, at <code>index * 4</code>. Called by the Skeleton that owns
+	 * this Bone.
+	 * 
+	 * @param skeleton
+	 *            The Skeleton that owns this Bone.
+	 */
+	void attach(Skeleton skeleton) {
+		final float[] rotations = skeleton.rotations;
+		final int offset = (index & 0xFF) * 4;
+		System.arraycopy(rotation, rotationOffset, rotations, offset, 4);
+		this.rotation = rotations;
+		this.rotationOffset = offset;
+		this.skeleton = skeleton;
 	}
 
 	public void writeMatrix(float[] matrixArray, int offset, int parentIndex) {
@@ -97,7 +121,9 @@ public class Bone {
 		// animation work correctly. I think Blender uses a different axis
 		// system for rotating bones with quaternions. 
 		// TODO: Move this hack to export.py
-		MatrixUtils.rotateQuaternionM(matrixArray, boneOffset, w, -x, z, y);
+		final int r = rotationOffset;
+		MatrixUtils.rotateQuaternionM(matrixArray, boneOffset, rotation[r],
+				-rotation[r + 1], rotation[r + 3], rotation[r + 2]);
 		MatrixUtils.translateM(matrixArray, boneOffset, -locX, -locY, -locZ);
 
 		if (children != null) {
@@ -0,0 +1,140 @@
+/*
+ * Copyright 2013 Dan Mercer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.supermercerbros.gameengine.armature;
+
+/**
+ * The ways bone transforms can be stored and uploaded to the skinning
+ * shaders. Bones only rotate and translate, so the last row of a bone matrix
+ * is always (0, 0, 0, 1) and does not need to be uploaded, and the whole
+ * transform can be stored as a unit dual quaternion.
+ */
+public enum BoneFormat {
+	/**
+	 * A full 4x4 matrix per bone, uploaded as a <code>mat4</code>.
+	 */
+	MATRIX_4X4(16) {
+		@Override
+		void pack(float[] m, int mOffset, float[] out, int offset) {
+			System.arraycopy(m, mOffset, out, offset, 16);
+		}
+	},
+	/**
+	 * The first three rows of each bone matrix, uploaded as three
+	 * <code>vec4</code>s. This is 25% smaller than {@link #MATRIX_4X4} and
+	 * exact.
+	 */
+	MATRIX_4X3(12) {
+		@Override
+		void pack(float[] m, int mOffset, float[] out, int offset) {
+			for (int row = 0; row < 3; row++) {
+				out[offset + row * 4] = m[mOffset + row];
+				out[offset + row * 4 + 1] = m[mOffset + 4 + row];
+				out[offset + row * 4 + 2] = m[mOffset + 8 + row];
+				out[offset + row * 4 + 3] = m[mOffset + 12 + row];
+			}
+		}
+	},
+	/**
+	 * A unit dual quaternion per bone, uploaded as two <code>vec4</code>s (the
+	 * real part, then the dual part, each stored as x, y, z, w). This is half
+	 * the size of {@link #MATRIX_4X4}, and blending dual quaternions also
+	 * avoids the "candy-wrapper" collapse of blended matrices. Any scale in
+	 * the bone matrices is lost.
+	 */
+	DUAL_QUATERNION(8) {
+		@Override
+		void pack(float[] m, int mOffset, float[] out, int offset) {
+			// Rotation quaternion from the upper 3x3 (m is column-major)
+			final float r00 = m[mOffset], r10 = m[mOffset + 1], r20 = m[mOffset + 2];
+			final float r01 = m[mOffset + 4], r11 = m[mOffset + 5], r21 = m[mOffset + 6];
+			final float r02 = m[mOffset + 8], r12 = m[mOffset + 9], r22 = m[mOffset + 10];
+			final float trace = r00 + r11 + r22;
+			float qw, qx, qy, qz;
+			if (trace > 0) {
+				final float s = (float) Math.sqrt(trace + 1.0) * 2;
+				qw = 0.25f * s;
+				qx = (r21 - r12) / s;
+				qy = (r02 - r20) / s;
+				qz = (r10 - r01) / s;
+			} else if (r00 > r11 && r00 > r22) {
+				final float s = (float) Math.sqrt(1.0 + r00 - r11 - r22) * 2;
+				qw = (r21 - r12) / s;
+				qx = 0.25f * s;
+				qy = (r01 + r10) / s;
+				qz = (r02 + r20) / s;
+			} else if (r11 > r22) {
+				final float s = (float) Math.sqrt(1.0 + r11 - r00 - r22) * 2;
+				qw = (r02 - r20) / s;
+				qx = (r01 + r10) / s;
+				qy = 0.25f * s;
+				qz = (r12 + r21) / s;
+			} else {
+				final float s = (float) Math.sqrt(1.0 + r22 - r00 - r11) * 2;
+				qw = (r10 - r01) / s;
+				qx = (r02 + r20) / s;
+				qy = (r12 + r21) / s;
+				qz = 0.25f * s;
+			}
+			final float length = (float) Math.sqrt(qw * qw + qx * qx + qy * qy
+					+ qz * qz);
+			qw /= length;
+			qx /= length;
+			qy /= length;
+			qz /= length;
+
+			// Dual part: 0.5 * (t, 0) * q
+			final float tx = m[mOffset + 12], ty = m[mOffset + 13], tz = m[mOffset + 14];
+			out[offset] = qx;
+			out[offset + 1] = qy;
+			out[offset + 2] = qz;
+			out[offset + 3] = qw;
+			out[offset + 4] = 0.5f * (qw * tx + ty * qz - tz * qy);
+			out[offset + 5] = 0.5f * (qw * ty + tz * qx - tx * qz);
+			out[offset + 6] = 0.5f * (qw * tz + tx * qy - ty * qx);
+			out[offset + 7] = -0.5f * (tx * qx + ty * qy + tz * qz);
+		}
+	};
+
+	/**
+	 * The number of floats used to store each bone.
+	 */
+	public final int floatsPerBone;
+
+	private BoneFormat(int floatsPerBone) {
+		this.floatsPerBone = floatsPerBone;
+	}
+
+	/**
+	 * @return The number of <code>vec4</code> uniforms used by each bone.
+	 */
+	public int vectorsPerBone() {
+		return floatsPerBone / 4;
+	}
+
+	/**
+	 * Converts a 4x4 bone matrix to this format.
+	 *
+	 * @param m
+	 *            The array containing the column-major bone matrix.
+	 * @param mOffset
+	 *            The offset of the matrix in <code>m</code>.
+	 * @param out
+	 *            The array to write the packed bone to.
+	 * @param offset
+	 *            The offset into <code>out</code> to write at.
+	 */
+	abstract void pack(float[] m, int mOffset, float[] out, int offset);
+}
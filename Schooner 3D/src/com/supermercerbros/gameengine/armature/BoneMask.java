@@ -0,0 +1,69 @@
+/*
+ * Copyright 2013 Dan Mercer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.supermercerbros.gameengine.armature;
+
+/**
+ * A per-bone weight that limits which bones of a Skeleton an
+ * {@link ActionBlender} layer affects, e.g. so that an upper-body Action can
+ * play over a walk cycle. A new BoneMask affects no bones.
+ */
+public class BoneMask {
+	private final Skeleton skeleton;
+	final float[] weights;
+
+	/**
+	 * Creates a new BoneMask that affects no bones of the given Skeleton.
+	 *
+	 * @param skeleton
+	 *            The Skeleton that the mask is for.
+	 */
+	public BoneMask(Skeleton skeleton) {
+		this.skeleton = skeleton;
+		this.weights = new float[skeleton.boneCount()];
+	}
+
+	/**
+	 * Sets the weight of a single bone.
+	 *
+	 * @param bone
+	 *            The index of the bone.
+	 * @param weight
+	 *            The weight, from 0 (unaffected) to 1 (fully affected).
+	 * @return This BoneMask, for chaining.
+	 */
+	public BoneMask set(int bone, float weight) {
+		weights[bone] = weight;
+		return this;
+	}
+
+	/**
+	 * Sets the weight of a bone and all of its descendants.
+	 *
+	 * @param bone
+	 *            The index of the bone at the root of the branch.
+	 * @param weight
+	 *            The weight, from 0 (unaffected) to 1 (fully affected).
+	 * @return This BoneMask, for chaining.
+	 */
+	public BoneMask setBranch(int bone, float weight) {
+		for (int i = 0; i < weights.length; i++) {
+			if (skeleton.isInBranch(i, bone)) {
+				weights[i] = weight;
+			}
+		}
+		return this;
+	}
+}
@@ -0,0 +1,169 @@
+/*
+ * Copyright 2013 Dan Mercer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.supermercerbros.gameengine.armature;
+
+import com.supermercerbros.gameengine.Schooner3D;
+import com.supermercerbros.gameengine.util.WorkerPool;
+
+/**
+ * This singleton class skins vertices on the CPU. Large meshes are split into
+ * contiguous ranges of vertices that are skinned in parallel by worker
+ * threads from the {@link WorkerPool} and the calling thread. Nothing is
+ * allocated per call.
+ */
+public enum CpuSkinner {
+	INSTANCE;
+
+	/**
+	 * Meshes with fewer vertices than this are skinned on the calling thread
+	 * only, since waking the workers would cost more than it saves.
+	 */
+	private static final int MIN_PARALLEL_VERTS = 512;
+
+	private final WorkerPool.Task skinTask = new WorkerPool.Task() {
+		@Override
+		public void run(int part) {
+			skinPart(part);
+		}
+	};
+
+	// The current job. Written by skin() before it is run.
+	private int parts;
+	private float[] bones;
+	private float[] srcVerts, srcNormals;
+	private byte[] indices;
+	private float[] weights;
+	private int bonesPerVertex;
+	private float[] outVerts, outNormals;
+	private int vertCount;
+
+	/**
+	 * Skins the given vertices. Must only be called from one thread at a time
+	 * (the Engine thread).
+	 *
+	 * @param bones
+	 *            The bone matrices (column-major 4x4), indexed by the values
+	 *            in <code>indices</code>.
+	 * @param srcVerts
+	 *            The bind-pose vertex positions (xyz).
+	 * @param srcNormals
+	 *            The bind-pose vertex normals, or null to skip normals.
+	 * @param indices
+	 *            The bone indices, <code>bonesPerVertex</code> per vertex.
+	 * @param weights
+	 *            The bone weights, <code>bonesPerVertex</code> per vertex, or
+	 *            null if every vertex is weighted entirely to one bone.
+	 * @param bonesPerVertex
+	 *            The number of bones per vertex (1 if <code>weights</code> is
+	 *            null).
+	 * @param outVerts
+	 *            The array to write the skinned positions to.
+	 * @param outNormals
+	 *            The array to write the skinned normals to (ignored if
+	 *            <code>srcNormals</code> is null).
+	 */
+	public synchronized void skin(float[] bones, float[] srcVerts,
+			float[] srcNormals, byte[] indices, float[] weights,
+			int bonesPerVertex, float[] outVerts, float[] outNormals) {
+		final int count = srcVerts.length / 3;
+		this.bones = bones;
+		this.srcVerts = srcVerts;
+		this.srcNormals = srcNormals;
+		this.indices = indices;
+		this.weights = weights;
+		this.bonesPerVertex = bonesPerVertex;
+		this.outVerts = outVerts;
+		this.outNormals = outNormals;
+		this.vertCount = count;
+
+		final WorkerPool pool = WorkerPool.INSTANCE;
+		final int helpers = count < MIN_PARALLEL_VERTS ? 0 : Math.min(
+				Schooner3D.skinningThreads, pool.size());
+		parts = Math.max(helpers, 0) + 1;
+		pool.run(skinTask, helpers);
+	}
+
+	private void skinPart(int part) {
+		final int count = vertCount;
+		final int start = count * part / parts;
+		final int end = count * (part + 1) / parts;
+		skinRange(bones, srcVerts, srcNormals, indices, weights,
+				bonesPerVertex, outVerts, outNormals, start, end);
+	}
+
+	/**
+	 * Skins the vertices in the range <code>[start, end)</code>. Skinned
+	 * positions and normals are divided by the sum of their weights, like the
+	 * skinning shaders.
+	 */
+	static void skinRange(float[] bones, float[] srcVerts, float[] srcNormals,
+			byte[] indices, float[] weights, int bonesPerVertex,
+			float[] outVerts, float[] outNormals, int start, int end) {
+		for (int vert = start; vert < end; vert++) {
+			final int v = vert * 3;
+			final float px = srcVerts[v], py = srcVerts[v + 1], pz = srcVerts[v + 2];
+			final float nx, ny, nz;
+			if (srcNormals != null) {
+				nx = srcNormals[v];
+				ny = srcNormals[v + 1];
+				nz = srcNormals[v + 2];
+			} else {
+				nx = ny = nz = 0;
+			}
+
+			float x = 0, y = 0, z = 0, outNx = 0, outNy = 0, outNz = 0;
+			float weightSum = 0;
+			for (int j = 0; j < bonesPerVertex; j++) {
+				final int i = vert * bonesPerVertex + j;
+				final float w = weights != null ? weights[i] : 1.0f;
+				if (w == 0) {
+					continue;
+				}
+				final int m = (indices[i] & 0xFF) * 16;
+				x += (bones[m] * px + bones[m + 4] * py + bones[m + 8] * pz + bones[m + 12]) * w;
+				y += (bones[m + 1] * px + bones[m + 5] * py + bones[m + 9] * pz + bones[m + 13]) * w;
+				z += (bones[m + 2] * px + bones[m + 6] * py + bones[m + 10] * pz + bones[m + 14]) * w;
+				if (srcNormals != null) {
+					outNx += (bones[m] * nx + bones[m + 4] * ny + bones[m + 8] * nz) * w;
+					outNy += (bones[m + 1] * nx + bones[m + 5] * ny + bones[m + 9] * nz) * w;
+					outNz += (bones[m + 2] * nx + bones[m + 6] * ny + bones[m + 10] * nz) * w;
+				}
+				weightSum += w;
+			}
+
+			if (weightSum == 0) {
+				// Unweighted vertex; leave it in its bind pose
+				outVerts[v] = px;
+				outVerts[v + 1] = py;
+				outVerts[v + 2] = pz;
+				if (srcNormals != null) {
+					outNormals[v] = nx;
+					outNormals[v + 1] = ny;
+					outNormals[v + 2] = nz;
+				}
+				continue;
+			}
+			outVerts[v] = x / weightSum;
+			outVerts[v + 1] = y / weightSum;
+			outVerts[v + 2] = z / weightSum;
+			if (srcNormals != null) {
+				outNormals[v] = outNx / weightSum;
+				outNormals[v + 1] = outNy / weightSum;
+				outNormals[v + 2] = outNz / weightSum;
+			}
+		}
+	}
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright 2013 Dan Mercer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.supermercerbros.gameengine.armature;
+
+/**
+ * This singleton class shares evaluated poses between Skeletons within a
+ * frame. Poses are keyed by the Skeleton's id, the {@link Action}, the
+ * Action's duration and the time elapsed in it, so a crowd of objects playing
+ * the same Action in step is evaluated (and its bone matrices computed) only
+ * once per frame. Entries from earlier frames are simply overwritten.
+ * <p>
+ * This class is thread-safe, so Skeletons can be posed in parallel by the
+ * {@link SkeletonEvaluator}.
+ */
+public enum PoseCache {
+	INSTANCE;
+
+	/**
+	 * The number of poses that can be cached per frame. Must be a power of 2.
+	 */
+	private static final int SIZE = 64;
+
+	/**
+	 * The number of slots searched for a pose before giving up.
+	 */
+	private static final int PROBES = 4;
+
+	private static class Entry {
+		long frame = Long.MIN_VALUE;
+		String skeletonId;
+		Action action;
+		long duration, elapsed;
+		float[] rotations;
+		float[] matrices;
+	}
+
+	private final Entry[] entries;
+
+	// Stats
+	private int hits = 0, misses = 0;
+
+	private PoseCache() {
+		entries = new Entry[SIZE];
+		for (int i = 0; i < SIZE; i++) {
+			entries[i] = new Entry();
+		}
+	}
+
+	/**
+	 * Copies a pose evaluated earlier in this frame into the given Skeleton.
+	 *
+	 * @return true if the pose was found.
+	 */
+	synchronized boolean fetch(Skeleton skeleton, Action action, long duration,
+			long elapsed, long frame) {
+		final String id = skeleton.getId();
+		final int hash = hash(id, action, elapsed);
+		for (int i = 0; i < PROBES; i++) {
+			final Entry entry = entries[(hash + i) & (SIZE - 1)];
+			if (entry.frame == frame && entry.action == action
+					&& entry.duration == duration && entry.elapsed == elapsed
+					&& entry.skeletonId.equals(id)
+					&& entry.rotations.length == skeleton.rotations.length) {
+				skeleton.setPose(entry.rotations, entry.matrices);
+				hits++;
+				return true;
+			}
+		}
+		misses++;
+		return false;
+	}
+
+	/**
+	 * Stores the current pose of the given Skeleton, if there is room.
+	 */
+	void store(Skeleton skeleton, Action action, long duration, long elapsed,
+			long frame) {
+		// Compute the matrices outside the lock, so that Skeletons posed in
+		// parallel don't wait for each other
+		final float[] rotations = skeleton.rotations;
+		final float[] matrices = skeleton.getMatrices();
+		final String id = skeleton.getId();
+		final int hash = hash(id, action, elapsed);
+		synchronized (this) {
+			for (int i = 0; i < PROBES; i++) {
+				final Entry entry = entries[(hash + i) & (SIZE - 1)];
+				if (entry.frame == frame) {
+					continue;
+				}
+				if (entry.rotations == null
+						|| entry.rotations.length != rotations.length) {
+					entry.rotations = new float[rotations.length];
+					entry.matrices = new float[matrices.length];
+				}
+				System.arraycopy(rotations, 0, entry.rotations, 0,
+						rotations.length);
+				System.arraycopy(matrices, 0, entry.matrices, 0,
+						matrices.length);
+				entry.frame = frame;
+				entry.skeletonId = id;
+				entry.action = action;
+				entry.duration = duration;
+				entry.elapsed = elapsed;
+				return;
+			}
+		}
+	}
+
+	private static int hash(String id, Action action, long elapsed) {
+		int hash = id.hashCode() * 31 + System.identityHashCode(action);
+		hash = hash * 31 + (int) (elapsed ^ (elapsed >>> 32));
+		return hash ^ (hash >>> 16);
+	}
+
+	/**
+	 * @return The number of poses found in the cache so far.
+	 */
+	public synchronized int getHitCount() {
+		return hits;
+	}
+
+	/**
+	 * @return The number of poses not found in the cache so far.
+	 */
+	public synchronized int getMissCount() {
+		return misses;
+	}
+}
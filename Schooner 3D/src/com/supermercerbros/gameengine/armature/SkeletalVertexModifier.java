@@ -39,14 +39,52 @@ public class SkeletalVertexModifier extends VertexModifier {
 			"  weight_sum += weight;\n" +
 			"}\n";
 	
+	private static final String METHOD_BONE_TRANSFORM_4X3 =
+			"vec3 bone_transform(in int index, in vec4 v) {\n" +
+			"  int i = index * 3;\n" +
+			"  return vec3(dot(u_matrices[i], v), dot(u_matrices[i + 1], v), dot(u_matrices[i + 2], v));\n" +
+			"}\n";
+	private static final String METHOD_SKIN_POS_4X3 =
+			"void skin_pos(in vec4 inPos, in float weight, in int index, inout vec3 outPos, inout float weight_sum) {\n" +
+			"  outPos += bone_transform(index, inPos) * weight;\n" +
+			"  weight_sum += weight;\n" +
+			"}\n";
+	private static final String METHOD_SKIN_NORMAL_4X3 =
+			"void skin_normal(in vec4 inNormal, in float weight, in int index, inout vec3 outNormal, inout float weight_sum) {\n" +
+			"  outNormal += bone_transform(index, inNormal) * weight;\n" +
+			"  weight_sum += weight;\n" +
+			"}\n";
+	static final String METHOD_SKIN_DQ =
+			"void skin_dq(in float weight, in int index, inout vec4 real, inout vec4 dual) {\n" +
+			"  vec4 r = u_matrices[index * 2];\n" +
+			"  if (dot(r, real) < 0.0) {\n" + // Keep to one hemisphere
+			"    weight = -weight;\n" +
+			"  }\n" +
+			"  real += r * weight;\n" +
+			"  dual += u_matrices[index * 2 + 1] * weight;\n" +
+			"}\n";
+	
 	// METHOD CALLS
 	private static final String SKIN_POS = "skin_pos(a_pos4, m_weight, m_index, mod_pos, m_weight_sum);\n";
 	private static final String SKIN_NORMAL = "skin_normal(a_normal4, m_weight, m_index, mod_normal, m_weight_sum);\n";
+	private static final String SKIN_DQ = "skin_dq(m_weight, m_index, m_real, m_dual);\n";
+	
+	// DUAL QUATERNION TRANSFORMS
+	static final String DQ_POS =
+			"vec3 mod_pos = a_pos.xyz + 2.0 * cross(m_real.xyz, cross(m_real.xyz, a_pos.xyz) + m_real.w * a_pos.xyz)\n" +
+			"    + 2.0 * (m_real.w * m_dual.xyz - m_dual.w * m_real.xyz + cross(m_real.xyz, m_dual.xyz));\n";
+	static final String DQ_NORMAL =
+			"vec3 mod_normal = a_normal + 2.0 * cross(m_real.xyz, cross(m_real.xyz, a_normal) + m_real.w * a_normal);\n";
 	
 	// VARIABLES
 	private static final String VARS = 
 			"uniform mat4 u_matrices[%d];\n" +
 			
+			"attribute vec4 a_indices;\n" +
+			"attribute vec4 a_weights;\n";
+	private static final String VARS_PACKED = 
+			"uniform vec4 u_matrices[%d];\n" +
+			
 			"attribute vec4 a_indices;\n" +
 			"attribute vec4 a_weights;\n";
 	
@@ -55,13 +93,28 @@ public class SkeletalVertexModifier extends VertexModifier {
 	
 	private final int bonesPerVertex;
 	private final int boneCount;
+	private final BoneFormat format;
 	
 	private int a_weights = -2;
 	private int a_indices;
 	
 	public SkeletalVertexModifier(int bonesPerVertex, int boneCount) {
+		this(bonesPerVertex, boneCount, BoneFormat.MATRIX_4X4);
+	}
+	
+	/**
+	 * @param bonesPerVertex
+	 *            The number of bone weights per vertex.
+	 * @param boneCount
+	 *            The number of bones.
+	 * @param format
+	 *            The BoneFormat the bones are uploaded in.
+	 */
+	public SkeletalVertexModifier(int bonesPerVertex, int boneCount,
+			BoneFormat format) {
 		this.boneCount = boneCount;
 		this.bonesPerVertex = bonesPerVertex;
+		this.format = format;
 	}
 	
 	@Override
@@ -83,12 +136,21 @@ public class SkeletalVertexModifier extends VertexModifier {
 
 	@Override
 	public void getVars(StringBuilder sb) {
-		sb.append(String.format(Locale.US, VARS, boneCount));
+		if (format == BoneFormat.MATRIX_4X4) {
+			sb.append(String.format(Locale.US, VARS, boneCount));
+		} else {
+			sb.append(String.format(Locale.US, VARS_PACKED, boneCount
+					* format.vectorsPerBone()));
+		}
 	}
 
 	@Override
 	public void getCode(StringBuilder sb) {
 		final boolean normal = containsNormalAttrib(sb);
+		if (format == BoneFormat.DUAL_QUATERNION) {
+			getDualQuaternionCode(sb, normal);
+			return;
+		}
 		
 		final String SKIN;
 		if (normal) {
@@ -138,11 +200,50 @@ public class SkeletalVertexModifier extends VertexModifier {
 		}
 	}
 
+	/**
+	 * Blends the vertex's bones as dual quaternions, then transforms the
+	 * position and normal by the normalized result.
+	 */
+	private void getDualQuaternionCode(StringBuilder sb, boolean normal) {
+		sb.append(
+				"float m_weight;\n" +
+				"int m_index;\n" +
+				"vec4 m_real = vec4(0.0);\n" +
+				"vec4 m_dual = vec4(0.0);\n");
+		for (int i = 0; i < 4; i++) {
+			sb.append("m_weight = a_weights[").append(i).append("];\n");
+			sb.append("m_index = int(a_indices[").append(i).append("]);\n");
+			sb.append(SKIN_DQ);
+		}
+		sb.append(
+				"float m_length = length(m_real);\n" +
+				"m_real /= m_length;\n" +
+				"m_dual /= m_length;\n");
+		sb.append(DQ_POS);
+		if (normal) {
+			sb.append(DQ_NORMAL);
+		}
+	}
+
 	@Override
 	public void getMethods(StringBuilder sb) {
-		sb.append(METHOD_SKIN_POS);
-		if (containsNormalAttrib(sb)) {
-			sb.append(METHOD_SKIN_NORMAL);
+		switch (format) {
+		case MATRIX_4X4:
+			sb.append(METHOD_SKIN_POS);
+			if (containsNormalAttrib(sb)) {
+				sb.append(METHOD_SKIN_NORMAL);
+			}
+			break;
+		case MATRIX_4X3:
+			sb.append(METHOD_BONE_TRANSFORM_4X3);
+			sb.append(METHOD_SKIN_POS_4X3);
+			if (containsNormalAttrib(sb)) {
+				sb.append(METHOD_SKIN_NORMAL_4X3);
+			}
+			break;
+		case DUAL_QUATERNION:
+			sb.append(METHOD_SKIN_DQ);
+			break;
 		}
 	}
 
@@ -151,4 +252,9 @@ public class SkeletalVertexModifier extends VertexModifier {
 		return STRIDE;
 	}
 	
+	@Override
+	public boolean usesPackedMatrices() {
+		return format != BoneFormat.MATRIX_4X4;
+	}
+	
 }
@@ -31,6 +31,22 @@ public class Skeleton {
 	 */
 	public final LinkedList<Bone> bones;
 	
+	// Flattened hierarchy, evaluated iteratively by writeMatrices(). The
+	// per-bone arrays are indexed by bone index.
+	private final int[] order; // Bone indices, parents before children
+	private final int[] parents; // Parent index of each bone, or -1
+	final int[] depths; // Depth of each bone in the hierarchy (roots are 0)
+	private final float[] rest; // Rest location (x, y, z) of each bone
+	final float[] rotations; // Rotation (w, x, y, z) of each bone
+	
+	// The matrices of the current pose, computed when first needed
+	private final float[] matrices;
+	private boolean posed = false;
+	
+	// The SkeletonEvaluator pass and job this Skeleton was last added to
+	int evalPass = 0;
+	int evalJob;
+	
 	public Skeleton(String id, LinkedList<Bone> roots){
 		this.id = id;
 		this.rootParents = roots;
@@ -51,15 +67,219 @@ public class Skeleton {
 		
 		Log.d(TAG, "roots.size() = " + roots.size());
 		Log.d(TAG, "bones.size() = " + bones.size());
+		
+		// Flatten the hierarchy in breadth-first order
+		final int count = bones.size();
+		order = new int[count];
+		parents = new int[count];
+		depths = new int[count];
+		rest = new float[count * 3];
+		rotations = new float[count * 4];
+		matrices = new float[count * 16];
+		final LinkedList<Bone> queue = new LinkedList<Bone>(roots);
+		for (Bone root : roots) {
+			parents[root.index & 0xFF] = -1;
+		}
+		int i = 0;
+		while (!queue.isEmpty()) {
+			final Bone bone = queue.removeFirst();
+			final int index = bone.index & 0xFF;
+			order[i++] = index;
+			rest[index * 3] = bone.locX;
+			rest[index * 3 + 1] = bone.locY;
+			rest[index * 3 + 2] = bone.locZ;
+			bone.attach(this);
+			if (bone.children != null) {
+				for (Bone child : bone.children) {
+					parents[child.index & 0xFF] = index;
+					depths[child.index & 0xFF] = depths[index] + 1;
+					queue.add(child);
+				}
+			}
+		}
 	}
 	
 	public int boneCount() {
 		return bones.size();
 	}
+	
+	/**
+	 * Marks the bone matrices as out of date. Called whenever
+	 * <code>rotations</code> changes.
+	 */
+	void invalidate() {
+		posed = false;
+	}
+	
+	/**
+	 * Returns the matrices of every bone in the current pose, in index order,
+	 * computing them if the pose has changed since the last call. The
+	 * returned array must not be modified.
+	 */
+	float[] getMatrices() {
+		if (!posed) {
+			writeMatrices(matrices, 0);
+			posed = true;
+		}
+		return matrices;
+	}
+	
+	/**
+	 * Copies an already-evaluated pose into this Skeleton.
+	 * 
+	 * @param rotations
+	 *            The bone rotations of the pose.
+	 * @param matrices
+	 *            The bone matrices of the pose.
+	 */
+	void setPose(float[] rotations, float[] matrices) {
+		System.arraycopy(rotations, 0, this.rotations, 0, this.rotations.length);
+		System.arraycopy(matrices, 0, this.matrices, 0, this.matrices.length);
+		posed = true;
+	}
+	
+	/**
+	 * @return The id this Skeleton was created with (for loaded Skeletons,
+	 *         the file it was loaded from). Skeletons with the same id are
+	 *         assumed to have the same bones.
+	 */
+	String getId() {
+		return id;
+	}
+	
+	/**
+	 * @param bone
+	 *            The index of a bone in this Skeleton.
+	 * @param ancestor
+	 *            The index of another bone in this Skeleton.
+	 * @return true if <code>bone</code> is <code>ancestor</code> or one of its
+	 *         descendants.
+	 */
+	boolean isInBranch(int bone, int ancestor) {
+		while (bone != -1) {
+			if (bone == ancestor) {
+				return true;
+			}
+			bone = parents[bone];
+		}
+		return false;
+	}
 
+	/**
+	 * Writes the matrix of every bone, in index order, to the given array.
+	 * Each matrix is <code>parent * T(rest) * R * T(-rest)</code>; since
+	 * these are all affine, only the upper 3x4 of each matrix is computed.
+	 * 
+	 * @param matrixArray
+	 *            The array to write the matrices to.
+	 * @param offset
+	 *            The offset into <code>matrixArray</code> to start writing at.
+	 */
 	public void writeMatrices(float[] matrixArray, int offset) {
-		for (Bone root : rootParents) {
-			root.writeMatrix(matrixArray, offset, -1);
+		final float[] m = matrixArray;
+		final int[] order = this.order, parents = this.parents;
+		final float[] rest = this.rest, rotations = this.rotations;
+		
+		for (int i = 0; i < order.length; i++) {
+			final int bone = order[i];
+			
+			// Rotation, with the axes swapped as in Bone.writeMatrix()
+			final int q = bone * 4;
+			final float w = rotations[q], x = -rotations[q + 1];
+			final float y = rotations[q + 3], z = rotations[q + 2];
+			final float xx = x * x, yy = y * y, zz = z * z;
+			final float xy = x * y, yz = y * z, xz = x * z;
+			final float xw = x * w, yw = y * w, zw = z * w;
+			final float r00 = 1 - 2 * yy - 2 * zz, r01 = 2 * xy - 2 * zw, r02 = 2 * xz + 2 * yw;
+			final float r10 = 2 * xy + 2 * zw, r11 = 1 - 2 * xx - 2 * zz, r12 = 2 * yz - 2 * xw;
+			final float r20 = 2 * xz - 2 * yw, r21 = 2 * yz + 2 * xw, r22 = 1 - 2 * xx - 2 * yy;
+			
+			// Translation: rest - R * rest
+			final int l = bone * 3;
+			final float lx = rest[l], ly = rest[l + 1], lz = rest[l + 2];
+			final float tx = lx - (r00 * lx + r01 * ly + r02 * lz);
+			final float ty = ly - (r10 * lx + r11 * ly + r12 * lz);
+			final float tz = lz - (r20 * lx + r21 * ly + r22 * lz);
+			
+			final int o = offset + bone * 16;
+			final int parent = parents[bone];
+			if (parent == -1) {
+				m[o] = r00; m[o + 1] = r10; m[o + 2] = r20; m[o + 3] = 0;
+				m[o + 4] = r01; m[o + 5] = r11; m[o + 6] = r21; m[o + 7] = 0;
+				m[o + 8] = r02; m[o + 9] = r12; m[o + 10] = r22; m[o + 11] = 0;
+				m[o + 12] = tx; m[o + 13] = ty; m[o + 14] = tz; m[o + 15] = 1;
+			} else {
+				final int p = offset + parent * 16;
+				final float p00 = m[p], p10 = m[p + 1], p20 = m[p + 2];
+				final float p01 = m[p + 4], p11 = m[p + 5], p21 = m[p + 6];
+				final float p02 = m[p + 8], p12 = m[p + 9], p22 = m[p + 10];
+				final float p03 = m[p + 12], p13 = m[p + 13], p23 = m[p + 14];
+				
+				m[o] = p00 * r00 + p01 * r10 + p02 * r20;
+				m[o + 1] = p10 * r00 + p11 * r10 + p12 * r20;
+				m[o + 2] = p20 * r00 + p21 * r10 + p22 * r20;
+				m[o + 3] = 0;
+				m[o + 4] = p00 * r01 + p01 * r11 + p02 * r21;
+				m[o + 5] = p10 * r01 + p11 * r11 + p12 * r21;
+				m[o + 6] = p20 * r01 + p21 * r11 + p22 * r21;
+				m[o + 7] = 0;
+				m[o + 8] = p00 * r02 + p01 * r12 + p02 * r22;
+				m[o + 9] = p10 * r02 + p11 * r12 + p12 * r22;
+				m[o + 10] = p20 * r02 + p21 * r12 + p22 * r22;
+				m[o + 11] = 0;
+				m[o + 12] = p00 * tx + p01 * ty + p02 * tz + p03;
+				m[o + 13] = p10 * tx + p11 * ty + p12 * tz + p13;
+				m[o + 14] = p20 * tx + p21 * ty + p22 * tz + p23;
+				m[o + 15] = 1;
+			}
+		}
+	}
+	
+	/**
+	 * Writes the matrices of the bones in the given palette, in palette
+	 * order, to the given array. Must only be called from one thread (the
+	 * Engine thread).
+	 * 
+	 * @param matrixArray
+	 *            The array to write the matrices to.
+	 * @param offset
+	 *            The offset into <code>matrixArray</code> to start writing at.
+	 * @param palette
+	 *            The indices of the bones to write.
+	 */
+	public void writeMatrices(float[] matrixArray, int offset, int[] palette) {
+		writeMatrices(matrixArray, offset, palette, BoneFormat.MATRIX_4X4);
+	}
+	
+	/**
+	 * Writes the bones in the given palette, in palette order and in the given
+	 * format, to the given array. The bone matrices are only recomputed if the
+	 * pose has changed, so several BonedObjects can share a Skeleton cheaply.
+	 * Must only be called from one thread (the Engine thread).
+	 * 
+	 * @param matrixArray
+	 *            The array to write the bones to.
+	 * @param offset
+	 *            The offset into <code>matrixArray</code> to start writing at.
+	 * @param palette
+	 *            The indices of the bones to write, or null to write every
+	 *            bone in index order.
+	 * @param format
+	 *            The BoneFormat to write the bones in.
+	 */
+	public void writeMatrices(float[] matrixArray, int offset, int[] palette,
+			BoneFormat format) {
+		final float[] matrices = getMatrices();
+		if (palette == null && format == BoneFormat.MATRIX_4X4) {
+			System.arraycopy(matrices, 0, matrixArray, offset, matrices.length);
+			return;
+		}
+		
+		final int count = palette != null ? palette.length : bones.size();
+		final int size = format.floatsPerBone;
+		for (int i = 0; i < count; i++) {
+			final int bone = palette != null ? palette[i] : i;
+			format.pack(matrices, bone * 16, matrixArray, offset + i * size);
 		}
 	}
 	
@@ -0,0 +1,151 @@
+/*
+ * Copyright 2013 Dan Mercer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.supermercerbros.gameengine.armature;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.supermercerbros.gameengine.Schooner3D;
+import com.supermercerbros.gameengine.util.WorkerPool;
+
+/**
+ * This singleton class poses every animated Skeleton in a frame as one batch.
+ * BonedObjects {@link #add(ActionBlender, int) add} their ActionBlenders
+ * while the Engine calls <code>drawVerts()</code>, and the Engine then
+ * {@link #evaluate(long) evaluates} them all at once. Each Skeleton is a
+ * separate job: its ActionBlenders are updated in the order they were added,
+ * then its bone matrices are computed, so they are ready when the Engine
+ * packs the frame. Jobs are taken by threads from the {@link WorkerPool} and
+ * the Engine thread until none are left.
+ * <p>
+ * Must only be used from one thread (the Engine thread). Nothing is allocated
+ * per frame once the job arrays have grown to fit the scene.
+ */
+public enum SkeletonEvaluator {
+	INSTANCE;
+
+	/**
+	 * Batches with fewer Skeletons than this are evaluated on the calling
+	 * thread only, since waking the workers would cost more than it saves.
+	 */
+	private static final int MIN_PARALLEL_JOBS = 4;
+
+	private final WorkerPool.Task evaluateTask = new WorkerPool.Task() {
+		@Override
+		public void run(int part) {
+			runJobs();
+		}
+	};
+
+	// The current batch. Written by evaluate() before it is run.
+	private long time;
+	private final AtomicInteger nextJob = new AtomicInteger();
+
+	// Jobs, one per Skeleton. The entries of each job form a linked list.
+	private int pass = 1;
+	private int jobCount = 0;
+	private Skeleton[] jobSkeletons = new Skeleton[16];
+	private int[] jobHeads = new int[16];
+	private int[] jobTails = new int[16];
+
+	// Entries, one per ActionBlender
+	private int entryCount = 0;
+	private ActionBlender[] blenders = new ActionBlender[16];
+	private int[] maxDepths = new int[16];
+	private int[] nextEntries = new int[16];
+
+	/**
+	 * Adds an ActionBlender to the next batch.
+	 *
+	 * @param blender
+	 *            The ActionBlender to update.
+	 * @param maxDepth
+	 *            The depth of the deepest bones to evaluate (see
+	 *            {@link ActionBlender#update(long, int)}).
+	 */
+	public void add(ActionBlender blender, int maxDepth) {
+		if (entryCount == blenders.length) {
+			final int size = entryCount * 2;
+			blenders = Arrays.copyOf(blenders, size);
+			maxDepths = Arrays.copyOf(maxDepths, size);
+			nextEntries = Arrays.copyOf(nextEntries, size);
+		}
+		final int entry = entryCount++;
+		blenders[entry] = blender;
+		maxDepths[entry] = maxDepth;
+		nextEntries[entry] = -1;
+
+		// Blenders that share a Skeleton go in the same job, so that they
+		// never pose it at the same time
+		final Skeleton skeleton = blender.skeleton;
+		if (skeleton.evalPass == pass) {
+			final int job = skeleton.evalJob;
+			nextEntries[jobTails[job]] = entry;
+			jobTails[job] = entry;
+			return;
+		}
+		if (jobCount == jobSkeletons.length) {
+			final int size = jobCount * 2;
+			jobSkeletons = Arrays.copyOf(jobSkeletons, size);
+			jobHeads = Arrays.copyOf(jobHeads, size);
+			jobTails = Arrays.copyOf(jobTails, size);
+		}
+		final int job = jobCount++;
+		skeleton.evalPass = pass;
+		skeleton.evalJob = job;
+		jobSkeletons[job] = skeleton;
+		jobHeads[job] = entry;
+		jobTails[job] = entry;
+	}
+
+	/**
+	 * Evaluates every ActionBlender added since the last call, and computes
+	 * the bone matrices of their Skeletons. Returns when all of them are
+	 * done.
+	 *
+	 * @param time
+	 *            The current time, in milliseconds.
+	 */
+	public void evaluate(long time) {
+		if (jobCount == 0) {
+			return;
+		}
+		this.time = time;
+		nextJob.set(0);
+		final int helpers = jobCount < MIN_PARALLEL_JOBS ? 0
+				: Schooner3D.animationThreads;
+		WorkerPool.INSTANCE.run(evaluateTask, helpers);
+
+		// Clear the batch, without keeping objects from old scenes alive
+		Arrays.fill(jobSkeletons, 0, jobCount, null);
+		Arrays.fill(blenders, 0, entryCount, null);
+		jobCount = 0;
+		entryCount = 0;
+		pass++;
+	}
+
+	private void runJobs() {
+		final long time = this.time;
+		final int jobCount = this.jobCount;
+		int job;
+		while ((job = nextJob.getAndIncrement()) < jobCount) {
+			for (int entry = jobHeads[job]; entry != -1; entry = nextEntries[entry]) {
+				blenders[entry].update(time, maxDepths[entry]);
+			}
+			jobSkeletons[job].getMatrices();
+		}
+	}
+}
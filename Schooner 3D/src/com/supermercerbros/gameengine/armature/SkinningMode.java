@@ -0,0 +1,41 @@
+/*
+ * Copyright 2013 Dan Mercer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.supermercerbros.gameengine.armature;
+
+/**
+ * Where a {@link com.supermercerbros.gameengine.objects.BonedObject}'s
+ * vertices are skinned.
+ */
+public enum SkinningMode {
+	/**
+	 * Vertices are skinned in the vertex shader. Skinned positions are not
+	 * available on the CPU.
+	 */
+	GPU,
+	/**
+	 * Vertices are skinned on the CPU by the {@link CpuSkinner} and the
+	 * skinned positions and normals are loaded into the VBO each frame the
+	 * Skeleton moves. Useful on devices with weak vertex shaders.
+	 */
+	CPU,
+	/**
+	 * Vertices are skinned in the vertex shader for rendering, and also on
+	 * the CPU so that the object's bounding sphere (and
+	 * <code>getSkinnedVerts()</code>, for collision or picking) follows the
+	 * animation.
+	 */
+	CPU_BOUNDS
+}
@@ -16,6 +16,8 @@
 
 package com.supermercerbros.gameengine.engine;
 
+import java.util.concurrent.atomic.AtomicInteger;
+
 import android.opengl.Matrix;
 
 /**
@@ -54,6 +56,18 @@ public class Camera {
 	private long duration;
 	private boolean moving;
 	
+	private DataPipe pipe;
+	
+	// Late-latch snapshots: a lock-free triple buffer of view matrices. The
+	// writer (any thread holding this Camera's lock) fills the back buffer and
+	// swaps it with the shared one; the renderer swaps the shared buffer with
+	// its front buffer when a new one has been published.
+	private static final int FRESH = 4;
+	private final float[][] snapshots = new float[3][16];
+	private final AtomicInteger shared = new AtomicInteger(1);
+	private int back = 0;
+	private int front = 2;
+	
 	// Current state
 	private float eyeX;
 	private float eyeY;
@@ -74,6 +88,7 @@ public class Camera {
 	public Camera() {
 		centerZ = -1.0f;
 		upY = 1.0f;
+		publish();
 	}
 	
 	/**
@@ -119,6 +134,7 @@ public class Camera {
 		startTime = System.currentTimeMillis();
 		this.duration = duration;
 		moving = true;
+		requestFrame();
 	}
 	
 	/**
@@ -160,6 +176,7 @@ public class Camera {
 		startTime = System.currentTimeMillis();
 		this.duration = duration;
 		moving = true;
+		requestFrame();
 	}
 	
 	/**
@@ -198,6 +215,7 @@ public class Camera {
 		startTime = System.currentTimeMillis();
 		this.duration = duration;
 		moving = true;
+		requestFrame();
 	}
 	
 	/**
@@ -222,6 +240,7 @@ public class Camera {
 			this.upY = endUpY;
 			this.upZ = endUpZ;
 			moving = false;
+			publish();
 			return;
 		} else if (framePoint < 0.0f) {
 			return;
@@ -236,6 +255,7 @@ public class Camera {
 		this.upX = (float) (beginUpX + ((endUpX - beginUpX) * (double) framePoint));
 		this.upY = (float) (beginUpY + ((endUpY - beginUpY) * (double) framePoint));
 		this.upZ = (float) (beginUpZ + ((endUpZ - beginUpZ) * (double) framePoint));
+		publish();
 	}
 	
 	/**
@@ -293,6 +313,8 @@ public class Camera {
 		this.upX = upX;
 		this.upY = upY;
 		this.upZ = upZ;
+		publish();
+		requestFrame();
 	}
 	
 	/**
@@ -309,6 +331,55 @@ public class Camera {
 		this.eyeX = eyeX;
 		this.eyeY = eyeY;
 		this.eyeZ = eyeZ;
+		publish();
+		requestFrame();
+	}
+	
+	/**
+	 * @return true if the Camera is in the middle of a transition started by
+	 *         one of the <code>moveTo()</code> methods.
+	 */
+	public synchronized boolean isMoving() {
+		return moving;
+	}
+	
+	/**
+	 * Sets the DataPipe that is used to wake the Engine when the Camera is
+	 * moved.
+	 */
+	synchronized void setDataPipe(DataPipe pipe) {
+		this.pipe = pipe;
 	}
 	
+	/**
+	 * Copies the most recently published view matrix to the given array
+	 * without locking, so the renderer can "late-latch" the Camera just
+	 * before drawing instead of using the matrix the Engine computed a frame
+	 * earlier. This must only be called from one thread (the GL thread).
+	 * 
+	 * @param out
+	 *            The array to write the view matrix to.
+	 */
+	public void latchViewMatrix(float[] out) {
+		if ((shared.get() & FRESH) != 0) {
+			front = shared.getAndSet(front) & ~FRESH;
+		}
+		System.arraycopy(snapshots[front], 0, out, 0, 16);
+	}
+	
+	/**
+	 * Writes the current state to the back snapshot and publishes it. Must be
+	 * called while holding this Camera's lock.
+	 */
+	private void publish() {
+		Matrix.setLookAtM(snapshots[back], 0, eyeX, eyeY, eyeZ, centerX,
+				centerY, centerZ, upX, upY, upZ);
+		back = shared.getAndSet(back | FRESH) & ~FRESH;
+	}
+	
+	private void requestFrame() {
+		if (pipe != null) {
+			pipe.requestFrame();
+		}
+	}
 }
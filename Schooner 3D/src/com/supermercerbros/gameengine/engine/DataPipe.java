@@ -21,6 +21,7 @@ import android.util.Log;
 
 import com.supermercerbros.gameengine.Schooner3D;
 import com.supermercerbros.gameengine.engine.shaders.ShaderLib;
+import com.supermercerbros.gameengine.texture.TextureLoader;
 
 /**
  * Used for communication between the main thread, the Engine thread, and the
@@ -35,6 +36,11 @@ public class DataPipe {
 	private RenderData data;
 	private long lastReadTime;
 	private boolean hasData = false;
+	
+	// Render-on-demand
+	private boolean frameRequested = false;
+	private Runnable renderRequester;
+	private volatile float aspect = 1.0f;
 
 	/**
 	 * Constructs a new DataPipe. This also initializes <code>ShaderLib</code>
@@ -45,6 +51,7 @@ public class DataPipe {
 
 	public void close() {
 		ShaderLib.close();
+		TextureLoader.INSTANCE.clear();
 		EGLContextLostHandler.clear();
 	}
 
@@ -62,7 +69,10 @@ public class DataPipe {
 		this.data = newData;
 		hasData = true;
 //		LoopLog.i(TAG, "DataPipe now contains RD " + data.index);
-		notify();
+		notifyAll();
+		if (renderRequester != null) {
+			renderRequester.run();
+		}
 		while (hasData) {
 			try {
 				wait(); //1000 / 30);
@@ -86,8 +96,64 @@ public class DataPipe {
 		final RenderData ldata = this.data;
 		lastReadTime = System.currentTimeMillis();
 		hasData = false;
-		notify();
+		notifyAll();
 //		LoopLog.i(TAG, "DataPipe was read. Renderer now has RD " + ldata.index);
 		return ldata;
 	}
+	
+	/**
+	 * Wakes the Engine if it is idle because nothing in the scene is moving
+	 * (see {@link Schooner3D#renderOnDemand}). Can be called from any thread.
+	 */
+	public synchronized void requestFrame() {
+		frameRequested = true;
+		notifyAll();
+	}
+	
+	/**
+	 * Blocks the Engine until {@link #requestFrame()} is called. Returns
+	 * immediately if a frame was requested since the last call.
+	 * 
+	 * @param engine
+	 *            The Engine that is waiting.
+	 */
+	synchronized void waitForFrameRequest(Engine engine) {
+		while (!frameRequested) {
+			try {
+				wait();
+			} catch (InterruptedException e) {
+				if (engine.isEnding()) {
+					Log.i(TAG, "Engine was interrupted while idle.");
+					break;
+				}
+			}
+		}
+		frameRequested = false;
+	}
+	
+	/**
+	 * Sets the Runnable that is run each time the Engine puts a frame into
+	 * the DataPipe. When rendering on demand, this should request a render
+	 * from the GLSurfaceView.
+	 * 
+	 * @param requester
+	 *            The Runnable to run, or null.
+	 */
+	public synchronized void setRenderRequester(Runnable requester) {
+		this.renderRequester = requester;
+	}
+	
+	/**
+	 * Called by the renderer when the surface's aspect ratio changes.
+	 */
+	void setAspect(float aspect) {
+		this.aspect = aspect;
+	}
+	
+	/**
+	 * @return The aspect ratio (width / height) of the surface.
+	 */
+	float getAspect() {
+		return aspect;
+	}
 }
@@ -23,11 +23,15 @@ import java.util.LinkedList;
 import android.util.FloatMath;
 import android.util.Log;
 
+import com.supermercerbros.gameengine.Schooner3D;
+import com.supermercerbros.gameengine.armature.SkeletonEvaluator;
 import com.supermercerbros.gameengine.collision.CollisionDetector;
 import com.supermercerbros.gameengine.collision.OnCollisionCheckFinishedListener;
 import com.supermercerbros.gameengine.engine.shaders.Material;
+import com.supermercerbros.gameengine.engine.shaders.ShaderLib;
 import com.supermercerbros.gameengine.objects.GameObject;
 import com.supermercerbros.gameengine.objects.Metadata;
+import com.supermercerbros.gameengine.texture.TextureLoader;
 import com.supermercerbros.gameengine.util.LoopingThread;
 import com.supermercerbros.gameengine.util.Toggle;
 
@@ -38,6 +42,8 @@ import com.supermercerbros.gameengine.util.Toggle;
  */
 public class Engine extends LoopingThread {
 	private static final String TAG = "Engine";
+	private static final float TAN_HALF_FOV = (float) Math.tan(Math
+			.toRadians(GameRenderer.FIELD_OF_VIEW / 2));
 
 	/**
 	 * To be used by subclasses of Engine. Contains the GameObjects currently in
@@ -51,6 +57,11 @@ public class Engine extends LoopingThread {
 	private final Toggle cdIsFinished = new Toggle(false);
 	// Be careful to always synchronize access of these fields:
 	private final Light light = new Light();
+	private final LinkedList<PointLight> lights = new LinkedList<PointLight>();
+	
+	private final LightCuller culler = new LightCuller();
+	private final float[] sphere = new float[4];
+	private final float[] viewMatrix = new float[16];
 	
 	private Scene newScene;
 	
@@ -75,6 +86,8 @@ public class Engine extends LoopingThread {
 		Log.d(TAG, "Constructing Engine...");
 		this.pipe = pipe;
 		this.cam = cam;
+		cam.setDataPipe(pipe);
+		TextureLoader.INSTANCE.setDataPipe(pipe);
 		this.objects = new LinkedList<GameObject>();
 		
 		final OnCollisionCheckFinishedListener listener = new OnCollisionCheckFinishedListener() {
@@ -106,10 +119,10 @@ public class Engine extends LoopingThread {
 				if (object.getBounds() != null) {
 					cd.addCollider(object);
 				}
-				outA.modelMatrices.add(new float[16 + (16 * object
-						.getExtraMatrixCount())]);
-				outB.modelMatrices.add(new float[16 + (16 * object
-						.getExtraMatrixCount())]);
+				outA.modelMatrices.add(new float[16 + object
+						.getExtraFloatCount()]);
+				outB.modelMatrices.add(new float[16 + object
+						.getExtraFloatCount()]);
 			}
 		} else {
 			throw new IllegalStateException("Do not add GameObjects to the Engine while it is running.");
@@ -127,10 +140,10 @@ public class Engine extends LoopingThread {
 			if (object.getBounds() != null) {
 				cd.addCollider(object);
 			}
-			outA.modelMatrices.add(new float[16 + (16 * object
-					.getExtraMatrixCount())]);
-			outB.modelMatrices.add(new float[16 + (16 * object
-					.getExtraMatrixCount())]);
+			outA.modelMatrices.add(new float[16 + object
+					.getExtraFloatCount()]);
+			outB.modelMatrices.add(new float[16 + object
+					.getExtraFloatCount()]);
 		} else {
 			throw new IllegalStateException("Do not add GameObjects to the Engine while it is running.");
 		}
@@ -140,6 +153,7 @@ public class Engine extends LoopingThread {
 	public void end() {
 		super.end();
 		cd.end();
+		TextureLoader.INSTANCE.close();
 	}
 	
 	/**
@@ -187,6 +201,34 @@ public class Engine extends LoopingThread {
 			light.g = g;
 			light.b = b;
 		}
+		pipe.requestFrame();
+	}
+	
+	/**
+	 * Adds a point or spot light to the scene. Unlike GameObjects, lights can
+	 * be added while the Engine is running.
+	 * 
+	 * @param light
+	 *            The PointLight (or SpotLight) to add.
+	 */
+	public void addLight(PointLight light) {
+		synchronized (lights) {
+			lights.add(light);
+		}
+		pipe.requestFrame();
+	}
+	
+	/**
+	 * Removes a point or spot light from the scene.
+	 * 
+	 * @param light
+	 *            The PointLight (or SpotLight) to remove.
+	 */
+	public void removeLight(PointLight light) {
+		synchronized (lights) {
+			lights.remove(light);
+		}
+		pipe.requestFrame();
 	}
 	
 	public void setScene(Scene scene) {
@@ -200,9 +242,21 @@ public class Engine extends LoopingThread {
 			synchronized(this) {
 				this.newScene = scene;
 			}
+			pipe.requestFrame();
 		}
 	}
 	
+	/**
+	 * Wakes the Engine if it is idle because nothing in the scene is moving
+	 * (see {@link Schooner3D#renderOnDemand}). Touch events and changes made
+	 * through the Engine and Camera do this automatically; call this after
+	 * changing GameObjects from another thread (i.e. starting a Movement from
+	 * the UI thread).
+	 */
+	public void requestFrame() {
+		pipe.requestFrame();
+	}
+	
 	/* (non-Javadoc)
 	 *  Sets time to System.currentTimeMillis() for first iteration
 	 */
@@ -215,6 +269,30 @@ public class Engine extends LoopingThread {
 		super.start();
 	}
 	
+	/**
+	 * Estimates the height of the given GameObject's bounding sphere on
+	 * screen, as a fraction of the viewport height.
+	 * 
+	 * @return The estimated size, or -1 if the object is off-screen.
+	 */
+	private float screenSize(GameObject object, float aspect) {
+		object.getBoundingSphere(sphere);
+		final float[] v = viewMatrix;
+		final float x = sphere[0], y = sphere[1], z = sphere[2], r = sphere[3];
+		final float viewX = v[0] * x + v[4] * y + v[8] * z + v[12];
+		final float viewY = v[1] * x + v[5] * y + v[9] * z + v[13];
+		final float depth = -(v[2] * x + v[6] * y + v[10] * z + v[14]);
+		if (depth + r <= 0) {
+			return -1; // Behind the camera
+		}
+		final float extent = depth * TAN_HALF_FOV;
+		if (Math.abs(viewY) - r > extent
+				|| Math.abs(viewX) - r > extent * aspect) {
+			return -1; // Outside the view frustum (approximately)
+		}
+		return depth > r ? r / extent : 1;
+	}
+	
 	@Override
 	protected void loop() {
 		// Change scene if necessary
@@ -231,10 +309,16 @@ public class Engine extends LoopingThread {
 		
 		// While collision detection is running
 		scene.onBeginFrame(time);
+		cam.update(time);
+		cam.writeToArray(viewMatrix, 0);
+		final float aspect = pipe.getAspect();
 		for (GameObject object : objects) {
+			if (object.usesScreenSize()) {
+				object.setScreenSize(screenSize(object, aspect));
+			}
 			object.drawVerts(time);
 		}
-		cam.update(time);
+		SkeletonEvaluator.INSTANCE.evaluate(time); // Pose BonedObjects
 		
 		waitOnToggle(cdIsFinished, true); // Wait for collision detection
 		
@@ -258,6 +342,23 @@ public class Engine extends LoopingThread {
 		
 		final Iterator<float[]> matrixIter = out.modelMatrices.iterator();
 		int vOffset = 0, iOffset = 0;
+		
+		// Prepare local lights
+		synchronized (lights) {
+			culler.setLights(lights);
+		}
+		final int maxLights = Schooner3D.maxLights;
+		final boolean hasLocalLights = culler.getLightCount() > 0
+				&& maxLights > 0;
+		final int lightStride = maxLights * PointLight.SIZE;
+		final int objectCount = objects.size();
+		if (out.lightCounts.length < objectCount
+				|| out.lightStride != lightStride) {
+			out.lightCounts = new int[objectCount];
+			out.lightData = new float[objectCount * lightStride];
+			out.lightStride = lightStride;
+		}
+		int primitiveIndex = 0;
 		for (GameObject object : objects) {
 			final Metadata objData = object.info;
 			final int[] objBufferLocations = objData.bufferLocations;
@@ -299,12 +400,24 @@ public class Engine extends LoopingThread {
 					// Load matrices
 					object.writeMatrices(matrixIter.next());
 					
+					// Choose local lights
+					if (hasLocalLights && objMaterial.usesLocalLights()) {
+						object.getBoundingSphere(sphere);
+						out.lightCounts[primitiveIndex] = culler.assign(sphere,
+								out.lightData, primitiveIndex * lightStride,
+								maxLights);
+					} else {
+						out.lightCounts[primitiveIndex] = 0;
+					}
+					
 					out.primitives.add(objData);
+					primitiveIndex++;
 				}
 			}
 		}
 		
 		cam.writeToArray(out.viewMatrix, 0);
+		final long frameTime = time;
 		
 		synchronized (light) {
 			light.copyTo(out.light);
@@ -312,9 +425,37 @@ public class Engine extends LoopingThread {
 		
 		time = pipe.putData(this, out);
 		aBufs = !aBufs;
+		
+		// Idle until something changes
+		if (Schooner3D.renderOnDemand && isQuiescent(frameTime)) {
+			pipe.waitForFrameRequest(this);
+			time = System.currentTimeMillis();
+		}
 //		LoopLog.i(TAG, "Engine is switching to RD " + (aBufs ? 0 : 1));
 	}
 	
+	/**
+	 * @return true if the frame that was just calculated will look the same
+	 *         as the next one.
+	 */
+	private boolean isQuiescent(long frameTime) {
+		if (cam.isMoving() || TextureLoader.INSTANCE.getPendingCount() > 0
+				|| ShaderLib.getPendingCount() > 0) {
+			return false;
+		}
+		synchronized (this) {
+			if (newScene != null) {
+				return false;
+			}
+		}
+		for (GameObject object : objects) {
+			if (object.isAnimating(frameTime)) {
+				return false;
+			}
+		}
+		return true;
+	}
+	
 	@Override
 	protected void onBegin() {
 		scene.onBegin();
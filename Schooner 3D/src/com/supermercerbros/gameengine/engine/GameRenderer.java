@@ -20,6 +20,7 @@ import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.FloatBuffer;
 import java.nio.ShortBuffer;
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.LinkedList;
 
@@ -27,7 +28,6 @@ import javax.microedition.khronos.egl.EGLConfig;
 import javax.microedition.khronos.opengles.GL10;
 
 import android.opengl.GLES20;
-import android.opengl.GLException;
 import android.opengl.GLSurfaceView.Renderer;
 import android.opengl.GLU;
 import android.opengl.Matrix;
@@ -40,12 +40,21 @@ import com.supermercerbros.gameengine.engine.shaders.ShaderLib;
 import com.supermercerbros.gameengine.hud.GameHud;
 import com.supermercerbros.gameengine.objects.Metadata;
 import com.supermercerbros.gameengine.render.Compositor;
+import com.supermercerbros.gameengine.render.CompositorChain;
+import com.supermercerbros.gameengine.render.DynamicResolution;
+import com.supermercerbros.gameengine.texture.TextureCache;
+import com.supermercerbros.gameengine.texture.TextureLoader;
 import com.supermercerbros.gameengine.util.GLES2;
 import com.supermercerbros.gameengine.util.Utils;
 
 public class GameRenderer implements Renderer {
 	private static final String TAG = GameRenderer.class.getName();
 	private static final boolean CHECK_ERRORS = true;
+	
+	/**
+	 * The vertical field of view of the projection, in degrees.
+	 */
+	static final float FIELD_OF_VIEW = 45;
 
 	/**
 	 * @param location
@@ -70,6 +79,14 @@ public class GameRenderer implements Renderer {
 	private float[] wvpMatrix = new float[16];
 	private float[] projMatrix = new float[16];
 
+	// Per-frame uniform state
+	private final float[] lastViewMatrix = new float[16];
+	private final float[] latchedViewMatrix = new float[16];
+	private volatile Camera latchedCamera;
+	private final Light lastLight = new Light();
+	private long uniformVersion = 0;
+	private boolean projChanged = true;
+
 	// Shader variable handles
 	private int u_viewProj = -1;
 	private int u_lightVec = -1;
@@ -83,9 +100,10 @@ public class GameRenderer implements Renderer {
 	private boolean hasHud = false;
 	private boolean isHudLoaded = false;
 	
-	private Compositor compositor;
-	private boolean hasCompositor = false;
-	private boolean isCompositorLoaded = false;
+	private final CompositorChain compositors = new CompositorChain();
+	private boolean isCompositing = false;
+	private volatile DynamicResolution dynamicResolution;
+	private long dataWaitNanos = 0; // Time last frame waited for the Engine
 
 	private long frameCount = 0;
 	private long lastCalcTime;
@@ -124,14 +142,20 @@ public class GameRenderer implements Renderer {
 				Schooner3D.backgroundColor[1], Schooner3D.backgroundColor[2],
 				Schooner3D.backgroundColor[3]);
 
-		// Setup compositor
-		if (hasCompositor && isCompositorLoaded) {
-			compositor.preDraw();
-			logError("compositor preDraw");
+		// Setup compositor, rendering the scene at a reduced resolution if
+		// frames are taking too long
+		final DynamicResolution dr = dynamicResolution;
+		if (dr != null) {
+			compositors.setSceneScale(dr.onFrame(System.nanoTime(),
+					dataWaitNanos));
 		}
+		isCompositing = compositors.preDraw();
+		logError("compositor preDraw");
 		GLES20.glClear(GLES20.GL_COLOR_BUFFER_BIT | GLES20.GL_DEPTH_BUFFER_BIT);
 		
+		final long waitStart = System.nanoTime();
 		final RenderData in = pipe.retrieveData();
+		dataWaitNanos = System.nanoTime() - waitStart;
 
 		// Bind buffers
 		GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, arrayBuffer);
@@ -161,11 +185,45 @@ public class GameRenderer implements Renderer {
 			in.iboRange.reset();
 		}
 
+		// Compile queued programs, evict unused textures, and upload decoded
+		// textures
+		ShaderLib.loadPending(Schooner3D.shaderCompileBudget * 1000000L);
+		TextureCache.INSTANCE.onFrame();
+		TextureLoader.INSTANCE.uploadPending(Schooner3D.textureUploadBudget);
+
+		// Sample the Camera as late as possible if late-latching
+		final float[] viewMatrix;
+		final Camera cam = latchedCamera;
+		if (cam != null) {
+			cam.latchViewMatrix(latchedViewMatrix);
+			viewMatrix = latchedViewMatrix;
+		} else {
+			viewMatrix = in.viewMatrix;
+		}
+
+		// Update per-frame uniform state if the camera, light, or projection
+		// changed since the last frame
+		final Light light = in.light;
+		if (projChanged || !Arrays.equals(lastViewMatrix, viewMatrix)
+				|| !lastLight.matches(light)) {
+			Matrix.multiplyMM(wvpMatrix, 0, projMatrix, 0, viewMatrix, 0);
+			System.arraycopy(viewMatrix, 0, lastViewMatrix, 0, 16);
+			light.copyTo(lastLight);
+			projChanged = false;
+			uniformVersion++;
+		}
+
 		// Render each primitive
+		int currentProgram = -1;
 		Iterator<float[]> matrixIter = in.modelMatrices.iterator();
 		final LinkedList<Metadata> primitives = in.primitives;
 		final int inIndexOffset = in.index * 2;
+		final int lightCapacity = in.lightStride / PointLight.SIZE;
+		int primitiveIndex = -1;
 		for (final Metadata primitive : primitives) {
+			final float[] matrices = matrixIter.next();
+			primitiveIndex++;
+			
 			// Ensure depth test is enabled
 			GLES20.glEnable(GLES20.GL_DEPTH_TEST);
 			logError("glEnable (DEPTH)");
@@ -180,49 +238,64 @@ public class GameRenderer implements Renderer {
 				Log.e(TAG, "primitive.mtl == null");
 				continue;
 			}
-			final Program program = material.getProgram();
-			if (program == null) {
+			if (material.getProgram() == null) {
 				Log.e(TAG, "program == null");
 				continue;
 			}
 			
-			// Load program
-			try {
-				program.load();
-			} catch (GLException e) {
-				Log.e(TAG, "Program could not be loaded.", e);
-				throw new RuntimeException(e); // TODO: remove after debug?
-//					continue; // Is there something better to do here?
+			// Choose the program variant for the primitive's local lights,
+			// drawing with the best loaded variant while it is being compiled
+			int lightCount = in.lightCounts[primitiveIndex];
+			Program program = material.getProgram(lightCount);
+			if (!program.isLoaded()) {
+				ShaderLib.enqueue(program);
+				lightCount = material.getLoadedLightCount(lightCount);
+				program = material.getProgram(lightCount);
 			}
-			GLES20.glUseProgram(program.getHandle());
 			
-			// Load uniforms
-			u_viewProj = program.getUniformLocation(ShaderLib.U_VIEWPROJ);
-			u_lightVec = program.getUniformLocation(ShaderLib.U_LIGHTVEC);
-			u_lightColor = program
-					.getUniformLocation(ShaderLib.U_LIGHTCOLOR);
-
-			// Load World View-Projection matrix
-			Matrix.multiplyMM(wvpMatrix, 0, projMatrix, 0, in.viewMatrix, 0);
-			GLES20.glUniformMatrix4fv(u_viewProj, 1, false, wvpMatrix, 0);
-			logError("glUniformMatrix4fv (wvpMatrix)");
-
-			// Load directional light
-			final Light light = in.light;
-			if (u_lightVec != -1) {
-				GLES20.glUniform3f(u_lightVec, light.x, light.y, light.z);
-				logError("glUniform3fv (light vector)");
+			// Hold the primitive back until its program has been compiled
+			if (!program.isLoaded()) {
+				if (program.hasFailed()) {
+					throw new RuntimeException("Program could not be loaded.");
+				}
+				ShaderLib.enqueue(program);
+				continue;
+			}
+			final int programHandle = program.getHandle();
+			if (programHandle != currentProgram) {
+				GLES20.glUseProgram(programHandle);
+				currentProgram = programHandle;
 			}
-			if (u_lightColor != -1) {
-				GLES20.glUniform3f(u_lightColor, light.r, light.g, light.b);
-				logError("glUniform3fv (light color)");
+			
+			// Load per-frame uniforms if this program's copy is stale
+			if (program.getUniformVersion() != uniformVersion) {
+				u_viewProj = program.getUniformLocation(ShaderLib.U_VIEWPROJ);
+				u_lightVec = program.getUniformLocation(ShaderLib.U_LIGHTVEC);
+				u_lightColor = program
+						.getUniformLocation(ShaderLib.U_LIGHTCOLOR);
+
+				// Load World View-Projection matrix
+				GLES20.glUniformMatrix4fv(u_viewProj, 1, false, wvpMatrix, 0);
+				logError("glUniformMatrix4fv (wvpMatrix)");
+
+				// Load directional light
+				if (u_lightVec != -1) {
+					GLES20.glUniform3f(u_lightVec, light.x, light.y, light.z);
+					logError("glUniform3fv (light vector)");
+				}
+				if (u_lightColor != -1) {
+					GLES20.glUniform3f(u_lightColor, light.r, light.g, light.b);
+					logError("glUniform3fv (light color)");
+				}
+				program.setUniformVersion(uniformVersion);
 			}
 
 			// Material-specific stuff
 			final int[] bufferLocations = primitive.bufferLocations;
 			material.attachAttribs(primitive,
-					bufferLocations[inIndexOffset] * 4,
-					matrixIter.next());
+					bufferLocations[inIndexOffset] * 4, matrices, lightCount,
+					in.lightData, primitiveIndex * in.lightStride,
+					lightCapacity);
 
 			// Render primitive!
 			GLES2.glDrawElements(material.getGeometryType(), primitive.size,
@@ -232,8 +305,8 @@ public class GameRenderer implements Renderer {
 		}
 
 		// Render Compositor
-		if (hasCompositor && isCompositorLoaded) {
-			compositor.postDraw();
+		if (isCompositing) {
+			compositors.postDraw();
 			logError("compositor postDraw");
 		}
 
@@ -263,12 +336,15 @@ public class GameRenderer implements Renderer {
 	public void onSurfaceChanged(GL10 unused, int width, int height) {
 		GLES20.glViewport(0, 0, width, height);
 		aspect = width / (float) height;
+		pipe.setAspect(aspect);
 		projMatrix(projMatrix);
+		projChanged = true;
 
-		if (hasCompositor) {
-			compositor.onSurfaceChanged(width, height);
-			isCompositorLoaded = true;
-		}
+		compositors.onSurfaceChanged(width, height);
+		
+		// The view redraws after a resize, so an idle Engine needs to
+		// produce a frame for it
+		pipe.requestFrame();
 
 		frameCount = 0;
 		lastCalcTime = System.currentTimeMillis();
@@ -278,12 +354,14 @@ public class GameRenderer implements Renderer {
 	 * Writes this GameRenderer's projection matrix to the given float array.
 	 */
 	public void projMatrix(float[] matrix) {
-		Utils.perspectiveM(matrix, 0, 45, aspect, near, far);
+		Utils.perspectiveM(matrix, 0, FIELD_OF_VIEW, aspect, near, far);
 	}
 
 	@Override
 	public void onSurfaceCreated(GL10 unused, EGLConfig config) {
 		EGLContextLostHandler.contextLost();
+		TextureLoader.INSTANCE.onSurfaceCreated();
+		compositors.onSurfaceCreated();
 
 		// Generate buffers
 		final int[] buffers = new int[2];
@@ -327,13 +405,68 @@ public class GameRenderer implements Renderer {
 		this.isHudLoaded = false;
 	}
 
+	/**
+	 * Replaces the post-processing chain with the given Compositor.
+	 * 
+	 * @param c
+	 *            The Compositor to use, or null to disable post-processing.
+	 */
 	public void setCompositor(Compositor c) {
-		if (compositor != null) {
-			throw new IllegalStateException("A Compositor has already been set");
-		} else {
-			compositor = c;
-			hasCompositor = true;
+		synchronized (compositors) {
+			compositors.clear();
+			if (c != null) {
+				compositors.add(c);
+			}
+		}
+	}
+	
+	/**
+	 * Enables or disables late-latching of the Camera. When enabled, the
+	 * renderer reads the Camera's latest view matrix just before drawing
+	 * instead of the one the Engine computed for the frame, so changes made
+	 * with {@link Camera#set(float, float, float)} (i.e. in response to touch
+	 * input) reach the screen a frame sooner.
+	 * 
+	 * @param cam
+	 *            The Camera to sample, or null to use the Engine's view
+	 *            matrix.
+	 */
+	public void setLateLatchCamera(Camera cam) {
+		this.latchedCamera = cam;
+	}
+	
+	/**
+	 * Enables or disables dynamic resolution scaling.
+	 * 
+	 * @param dr
+	 *            The DynamicResolution that chooses the scene's resolution,
+	 *            or null to always render the scene at full resolution.
+	 */
+	public void setDynamicResolution(DynamicResolution dr) {
+		this.dynamicResolution = dr;
+		if (dr == null) {
+			compositors.setSceneScale(1.0f);
 		}
 	}
+	
+	/**
+	 * Adds a Compositor to the end of the post-processing chain.
+	 * 
+	 * @param c
+	 *            The Compositor to add.
+	 */
+	public void addCompositor(Compositor c) {
+		compositors.add(c);
+	}
+	
+	/**
+	 * Removes a Compositor from the post-processing chain.
+	 * 
+	 * @param c
+	 *            The Compositor to remove.
+	 */
+	public void removeCompositor(Compositor c) {
+		compositors.remove(c);
+	}
 
 }
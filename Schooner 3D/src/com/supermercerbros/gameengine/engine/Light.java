@@ -24,6 +24,15 @@ public class Light {
 	public float g;
 	public float b;
 
+	/**
+	 * @return true if the given Light has the same vector and color as this
+	 *         one.
+	 */
+	public boolean matches(Light light) {
+		return light.x == x && light.y == y && light.z == z && light.r == r
+				&& light.g == g && light.b == b;
+	}
+
 	public void copyTo(Light light) {
 		if (light == this) {
 			return;
@@ -0,0 +1,151 @@
+/*
+ * Copyright 2013 Dan Mercer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.supermercerbros.gameengine.engine;
+
+import java.util.List;
+
+import android.util.FloatMath;
+
+/**
+ * Chooses the {@link PointLight}s that affect each object most. Used by the
+ * Engine thread.
+ */
+class LightCuller {
+	private float[] lights = new float[0];
+	private int lightCount = 0;
+
+	// Selection scratch space
+	private int[] bestIndices = new int[0];
+	private float[] bestScores = new float[0];
+
+	/**
+	 * Takes a snapshot of the given lights for this frame.
+	 */
+	void setLights(List<PointLight> scene) {
+		final int count = scene.size();
+		if (lights.length < count * PointLight.SIZE) {
+			lights = new float[count * PointLight.SIZE];
+		}
+		int i = 0;
+		for (PointLight light : scene) {
+			light.write(lights, i * PointLight.SIZE);
+			i++;
+		}
+		lightCount = count;
+	}
+
+	/**
+	 * @return The number of lights in the current snapshot.
+	 */
+	int getLightCount() {
+		return lightCount;
+	}
+
+	/**
+	 * Finds the lights that affect the given bounding sphere most, and writes
+	 * their uniform data to <code>out</code>. The data is laid out as
+	 * <code>maxLights</code> vec4s of position and inverse range, then
+	 * <code>maxLights</code> vec3s of color, then <code>maxLights</code> vec4s
+	 * of spot direction and cutoff cosine.
+	 * 
+	 * @param sphere
+	 *            The world-space center (x, y, z) and radius of the object.
+	 * @param out
+	 *            The array to write the light data to.
+	 * @param offset
+	 *            The offset into <code>out</code> where the object's light
+	 *            data starts.
+	 * @param maxLights
+	 *            The maximum number of lights to choose.
+	 * @return The number of lights chosen.
+	 */
+	int assign(float[] sphere, float[] out, int offset, int maxLights) {
+		if (bestIndices.length < maxLights) {
+			bestIndices = new int[maxLights];
+			bestScores = new float[maxLights];
+		}
+		final float cx = sphere[0], cy = sphere[1], cz = sphere[2];
+		final float radius = sphere[3];
+
+		int count = 0;
+		for (int i = 0; i < lightCount; i++) {
+			final int l = i * PointLight.SIZE;
+			final float range = lights[l + 3];
+			final float vx = cx - lights[l];
+			final float vy = cy - lights[l + 1];
+			final float vz = cz - lights[l + 2];
+			final float distSq = vx * vx + vy * vy + vz * vz;
+			final float dist = FloatMath.sqrt(distSq);
+			final float gap = Math.max(dist - radius, 0.0f);
+			if (gap >= range) {
+				continue; // Out of range
+			}
+
+			// Spot cone test (from the closest point of the cone to the
+			// sphere's center)
+			final float cos = lights[l + 10];
+			if (cos > -1.0f) {
+				final float along = vx * lights[l + 7] + vy * lights[l + 8] + vz
+						* lights[l + 9];
+				final float across = FloatMath.sqrt(Math.max(distSq - along
+						* along, 0.0f));
+				final float sin = FloatMath.sqrt(1.0f - cos * cos);
+				if ((cos >= 0.0f && along < -radius)
+						|| cos * across - along * sin > radius) {
+					continue; // Outside the cone
+				}
+			}
+
+			final float falloff = 1.0f - gap / range;
+			final float brightness = Math.max(lights[l + 4],
+					Math.max(lights[l + 5], lights[l + 6]));
+			final float score = brightness * falloff * falloff;
+
+			// Insert into the sorted list of best lights
+			int pos = count;
+			if (count < maxLights) {
+				count++;
+			} else if (score <= bestScores[maxLights - 1]) {
+				continue;
+			} else {
+				pos = maxLights - 1;
+			}
+			while (pos > 0 && bestScores[pos - 1] < score) {
+				bestScores[pos] = bestScores[pos - 1];
+				bestIndices[pos] = bestIndices[pos - 1];
+				pos--;
+			}
+			bestScores[pos] = score;
+			bestIndices[pos] = l;
+		}
+
+		// Write uniform data
+		final int colors = offset + maxLights * 4;
+		final int spots = offset + maxLights * 7;
+		for (int i = 0; i < count; i++) {
+			final int l = bestIndices[i];
+			out[offset + i * 4] = lights[l];
+			out[offset + i * 4 + 1] = lights[l + 1];
+			out[offset + i * 4 + 2] = lights[l + 2];
+			out[offset + i * 4 + 3] = 1.0f / lights[l + 3];
+			out[colors + i * 3] = lights[l + 4];
+			out[colors + i * 3 + 1] = lights[l + 5];
+			out[colors + i * 3 + 2] = lights[l + 6];
+			System.arraycopy(lights, l + 7, out, spots + i * 4, 4);
+		}
+		return count;
+	}
+}
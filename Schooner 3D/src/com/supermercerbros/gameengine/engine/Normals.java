@@ -26,12 +26,27 @@ public class Normals {
 	public static void calculate(GameObject object) {
 		if (object.normals == null || object.normals.length != object.verts.length) {
 			throw new IllegalStateException("object.normals is not equal in length to object.verts");
-		} else {
-			Arrays.fill(object.normals, 0.0f);
 		}
-		final float[] normals = object.normals, verts = object.verts;
-		final short[] indices = object.indices;
-		final short[][] doubles = object.doubles;
+		calculate(object.verts, object.indices, object.doubles, object.normals);
+	}
+
+	/**
+	 * Calculates the vertex normals of a mesh.
+	 * 
+	 * @param verts
+	 *            The vertex coordinates of the mesh.
+	 * @param indices
+	 *            The indices of the mesh's triangles.
+	 * @param doubles
+	 *            The pairs of coincident vertices whose normals should be
+	 *            averaged, or null.
+	 * @param normals
+	 *            The array to write the normals to, the same length as
+	 *            <code>verts</code>.
+	 */
+	public static void calculate(float[] verts, short[] indices,
+			short[][] doubles, float[] normals) {
+		Arrays.fill(normals, 0.0f);
 
 		final float[] vectors = new float[9];
 
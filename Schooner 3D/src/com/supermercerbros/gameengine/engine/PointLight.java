@@ -0,0 +1,101 @@
+/*
+ * Copyright 2013 Dan Mercer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.supermercerbros.gameengine.engine;
+
+/**
+ * A light that shines in all directions from a point, fading out at a given
+ * range. Add PointLights to the scene with {@link Engine#addLight(PointLight)};
+ * each object is lit by the lights that affect it most (up to
+ * {@link com.supermercerbros.gameengine.Schooner3D#maxLights}), if its
+ * Material supports local lights.
+ */
+public class PointLight {
+	/**
+	 * The number of floats written by {@link #write(float[], int)}: position
+	 * (3), range (1), color (3), spot direction (3), and spot cutoff (1).
+	 */
+	static final int SIZE = 11;
+
+	protected float x, y, z;
+	protected float r, g, b;
+	protected float range;
+
+	/**
+	 * Creates a new PointLight.
+	 * 
+	 * @param x
+	 *            The x-coordinate of the light's position
+	 * @param y
+	 *            The y-coordinate of the light's position
+	 * @param z
+	 *            The z-coordinate of the light's position
+	 * @param r
+	 *            The red value of the light's color
+	 * @param g
+	 *            The green value of the light's color
+	 * @param b
+	 *            The blue value of the light's color
+	 * @param range
+	 *            The distance at which the light fades out completely
+	 */
+	public PointLight(float x, float y, float z, float r, float g, float b,
+			float range) {
+		setPosition(x, y, z);
+		setColor(r, g, b);
+		setRange(range);
+	}
+
+	public synchronized void setPosition(float x, float y, float z) {
+		this.x = x;
+		this.y = y;
+		this.z = z;
+	}
+
+	public synchronized void setColor(float r, float g, float b) {
+		this.r = r;
+		this.g = g;
+		this.b = b;
+	}
+
+	/**
+	 * @param range
+	 *            The distance at which the light fades out completely. Must
+	 *            be positive.
+	 */
+	public synchronized void setRange(float range) {
+		if (range <= 0) {
+			throw new IllegalArgumentException("range must be positive");
+		}
+		this.range = range;
+	}
+
+	/**
+	 * Writes a snapshot of this light to the given array. Called by the Engine.
+	 */
+	synchronized void write(float[] out, int offset) {
+		out[offset] = x;
+		out[offset + 1] = y;
+		out[offset + 2] = z;
+		out[offset + 3] = range;
+		out[offset + 4] = r;
+		out[offset + 5] = g;
+		out[offset + 6] = b;
+		out[offset + 7] = 0.0f;
+		out[offset + 8] = 0.0f;
+		out[offset + 9] = 0.0f;
+		out[offset + 10] = -2.0f; // No cone: every direction passes the test
+	}
+}
@@ -66,6 +66,21 @@ public class RenderData {
 	public CopyOnWriteArrayList<float[]> modelMatrices;
 	public float[] viewMatrix = new float[16];
 	public Light light = new Light();
+	
+	/**
+	 * The uniform data of the point and spot lights affecting each primitive,
+	 * in blocks of {@link #lightStride} floats (see
+	 * {@link com.supermercerbros.gameengine.engine.shaders.Material#attachAttribs(Metadata, int, float[], int, float[], int, int)}).
+	 */
+	public float[] lightData = new float[0];
+	/**
+	 * The number of lights affecting each primitive.
+	 */
+	public int[] lightCounts = new int[0];
+	/**
+	 * The size of each primitive's block in {@link #lightData}.
+	 */
+	public int lightStride;
 
 	
 	public RenderData(int index, final int vboLength, final int iboLength) {
@@ -0,0 +1,89 @@
+/*
+ * Copyright 2013 Dan Mercer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.supermercerbros.gameengine.engine;
+
+import android.util.FloatMath;
+
+/**
+ * A {@link PointLight} that only shines within a cone.
+ */
+public class SpotLight extends PointLight {
+	private float dx, dy, dz;
+	private float cosCutoff;
+
+	/**
+	 * Creates a new SpotLight.
+	 * 
+	 * @param x
+	 *            The x-coordinate of the light's position
+	 * @param y
+	 *            The y-coordinate of the light's position
+	 * @param z
+	 *            The z-coordinate of the light's position
+	 * @param r
+	 *            The red value of the light's color
+	 * @param g
+	 *            The green value of the light's color
+	 * @param b
+	 *            The blue value of the light's color
+	 * @param range
+	 *            The distance at which the light fades out completely
+	 * @param dx
+	 *            The x-coordinate of the direction the light points in
+	 * @param dy
+	 *            The y-coordinate of the direction the light points in
+	 * @param dz
+	 *            The z-coordinate of the direction the light points in
+	 * @param cutoff
+	 *            The angle between the direction and the edge of the cone, in
+	 *            degrees
+	 */
+	public SpotLight(float x, float y, float z, float r, float g, float b,
+			float range, float dx, float dy, float dz, float cutoff) {
+		super(x, y, z, r, g, b, range);
+		setDirection(dx, dy, dz);
+		setCutoff(cutoff);
+	}
+
+	/**
+	 * Sets the direction the light points in. The given vector does not need
+	 * to be normalized.
+	 */
+	public synchronized void setDirection(float dx, float dy, float dz) {
+		final float length = FloatMath.sqrt(dx * dx + dy * dy + dz * dz);
+		this.dx = dx / length;
+		this.dy = dy / length;
+		this.dz = dz / length;
+	}
+
+	/**
+	 * @param cutoff
+	 *            The angle between the direction and the edge of the cone, in
+	 *            degrees
+	 */
+	public synchronized void setCutoff(float cutoff) {
+		this.cosCutoff = (float) Math.cos(Math.toRadians(cutoff));
+	}
+
+	@Override
+	synchronized void write(float[] out, int offset) {
+		super.write(out, offset);
+		out[offset + 7] = dx;
+		out[offset + 8] = dy;
+		out[offset + 9] = dz;
+		out[offset + 10] = cosCutoff;
+	}
+}
@@ -17,13 +17,16 @@
 package com.supermercerbros.gameengine.engine.shaders;
 
 import java.nio.ByteOrder;
+import java.util.Arrays;
 
 import android.opengl.GLES20;
 import android.util.Log;
 
+import com.supermercerbros.gameengine.Schooner3D;
 import com.supermercerbros.gameengine.objects.GameObject;
 import com.supermercerbros.gameengine.objects.Metadata;
 import com.supermercerbros.gameengine.shaders.ProgramSource;
+import com.supermercerbros.gameengine.texture.AtlasRegion;
 import com.supermercerbros.gameengine.util.GLES2;
 
 /**
@@ -42,10 +45,59 @@ public abstract class Material {
 			+ "uniform vec3 u_lightColor;\n";
 	
 	/**
-	 * Contains the OpenGL shader program used by this Material.
+	 * Vertex shader uniforms and a <code>vec3 localLighting(vec3 pos, vec3
+	 * normal)</code> function that sums the diffuse light from the object's
+	 * point and spot lights at the given world-space position. Use this in
+	 * Materials that pass <code>true</code> for <code>localLights</code> in
+	 * {@link #setProgram(ProgramSource, int, boolean)}.
+	 */
+	public static final String VARS_LOCAL_LIGHTS = "\n"
+			+ "#if LIGHT_COUNT > 0\n"
+			+ "uniform vec4 u_lightPos[LIGHT_COUNT];\n"
+			+ "uniform vec3 u_lightColors[LIGHT_COUNT];\n"
+			+ "uniform vec4 u_lightSpot[LIGHT_COUNT];\n"
+			+ "#endif\n"
+			+ "vec3 localLighting(vec3 pos, vec3 normal) {\n"
+			+ "  vec3 color = vec3(0.0);\n"
+			+ "#if LIGHT_COUNT > 0\n"
+			+ "  for (int i = 0; i < LIGHT_COUNT; i++) {\n"
+			+ "    vec3 toLight = u_lightPos[i].xyz - pos;\n"
+			+ "    float dist = length(toLight);\n"
+			+ "    vec3 dir = toLight / max(dist, 0.0001);\n"
+			+ "    float falloff = clamp(1.0 - dist * u_lightPos[i].w, 0.0, 1.0);\n"
+			+ "    float spot = step(u_lightSpot[i].w, dot(-dir, u_lightSpot[i].xyz));\n"
+			+ "    color += u_lightColors[i] * (max(dot(normal, dir), 0.0) * falloff * falloff * spot);\n"
+			+ "  }\n"
+			+ "#endif\n"
+			+ "  return color;\n"
+			+ "}\n";
+	
+	// Indices into the per-variant uniform location cache
+	private static final int U_MODEL = 0;
+	private static final int U_MATRICES = 1;
+	private static final int U_LIGHTPOS = 2;
+	private static final int U_LIGHTCOLORS = 3;
+	private static final int U_LIGHTSPOT = 4;
+	private static final int UNIFORM_COUNT = 5;
+	
+	/**
+	 * Contains the OpenGL shader program used by this Material. If the
+	 * Material supports local lights, this is the variant currently being
+	 * drawn with.
 	 */
 	protected Program program;
 	
+	/**
+	 * The Program without local lights.
+	 */
+	private Program baseProgram;
+	
+	// Local light variants, indexed by light count
+	private boolean localLights = false;
+	private String vertexSource;
+	private String fragmentSource;
+	private Program[] variants;
+	
 	/**
 	 * Contains the handle to the <code>a_pos</code> attribute in the shader,
 	 * the attribute used to store vertex position. This handle is initialized
@@ -67,19 +119,13 @@ public abstract class Material {
 	protected int a_mtl;
 	
 	/**
-	 * Contains the handle to the <code>u_model</code> uniform in the shader,
-	 * the uniform used to store the object-specific tranformation matrix. This
-	 * handle is initialized during
-	 * {@link #attachAttribs(Metadata, int, float[])}.
-	 */
-	private int u_model;
-	/**
-	 * Contains the handle to the <code>u_matrices</code> uniform in the shader,
-	 * which is the uniform used to store extra matrices for the object. This
-	 * handle is initialized during
-	 * {@link #attachAttribs(Metadata, int, float[])}.
+	 * Contains the handles to the <code>u_model</code> uniform (the
+	 * object-specific transformation matrix), the <code>u_matrices</code>
+	 * uniform (extra matrices for the object), and the local light uniforms,
+	 * for each Program variant. These handles are initialized during
+	 * {@link #attachAttribs(Metadata, int, float[], int, float[], int, int)}.
 	 */
-	private int u_matrices;
+	private int[] uniforms;
 	
 	/**
 	 * The loading offset for the VBO.
@@ -106,6 +152,24 @@ public abstract class Material {
 	}
 	
 	protected void setProgram(ProgramSource source, int stride) {
+		setProgram(source, stride, false);
+	}
+	
+	/**
+	 * Sets the Program used by this Material.
+	 * 
+	 * @param source
+	 *            The ProgramSource of the Program.
+	 * @param stride
+	 *            The number of floats per vertex.
+	 * @param localLights
+	 *            true if the shaders use the point and spot lights affecting
+	 *            each object (see {@link #VARS_LOCAL_LIGHTS}). A variant of
+	 *            the Program is compiled for each number of lights, with
+	 *            <code>LIGHT_COUNT</code> defined as that number.
+	 */
+	protected void setProgram(ProgramSource source, int stride,
+			boolean localLights) {
 		if (program != null) {
 			throw new IllegalStateException("Program has already been set.");
 		}
@@ -169,7 +233,26 @@ public abstract class Material {
 		
 //		Log.d("Vertex Shader", vertex);
 //		Log.d("Fragment Shader", fragment);
-		this.program = ShaderLib.newProgram(vertex, fragment);
+		if (localLights) {
+			this.localLights = true;
+			this.vertexSource = vertex;
+			this.fragmentSource = fragment;
+			this.variants = new Program[Math.max(Schooner3D.maxLights, 0) + 1];
+			final String define = lightCountDefine(0);
+			this.program = ShaderLib.newProgram(define + vertex, define
+					+ fragment);
+			variants[0] = program;
+		} else {
+			this.program = ShaderLib.newProgram(vertex, fragment);
+		}
+		this.baseProgram = program;
+		this.uniforms = new int[(localLights ? variants.length : 1)
+				* UNIFORM_COUNT];
+		Arrays.fill(uniforms, -2);
+	}
+	
+	private static String lightCountDefine(int count) {
+		return "#define " + ShaderLib.LIGHT_COUNT + " " + count + "\n";
 	}
 	
 	/**
@@ -185,28 +268,93 @@ public abstract class Material {
 	 */
 	public void attachAttribs(Metadata primitive, int vboOffset,
 			float[] matrices) {
+		attachAttribs(primitive, vboOffset, matrices, 0, null, 0, 0);
+	}
+	
+	/**
+	 * Called by the renderer to attach the vertex attributes and the local
+	 * lights of a primitive. The Program returned by
+	 * {@link #getProgram(int)} for <code>lightCount</code> must be loaded and
+	 * in use.
+	 * 
+	 * @param primitive
+	 *            The Metadata about the primitive to load
+	 * @param vboOffset
+	 *            The offset into the VBO where the vertex data is stored
+	 * @param matrices
+	 *            A float array containing the matrices for this primitve,
+	 *            starting with the model matrix.
+	 * @param lightCount
+	 *            The number of local lights to use.
+	 * @param lightData
+	 *            The light uniform data: <code>lightCapacity</code> vec4s of
+	 *            position and inverse range, then <code>lightCapacity</code>
+	 *            vec3s of color, then <code>lightCapacity</code> vec4s of spot
+	 *            direction and cutoff cosine.
+	 * @param lightOffset
+	 *            The offset into <code>lightData</code> where the
+	 *            primitive's data starts.
+	 * @param lightCapacity
+	 *            The number of lights that fit in the primitive's data.
+	 */
+	public void attachAttribs(Metadata primitive, int vboOffset,
+			float[] matrices, int lightCount, float[] lightData,
+			int lightOffset, int lightCapacity) {
+		if (!localLights) {
+			lightCount = 0;
+		}
+		lightCount = usableLightCount(lightCount);
+		program = getProgram(lightCount);
 		if (a_pos == -2) {
+			// Attribute locations are the same in every variant (see
+			// ShaderLib.ATTRIB_BINDINGS)
 			a_pos = program.getAttribLocation(ShaderLib.A_POS);
 			a_normal = program.getAttribLocation(ShaderLib.A_NORMAL);
 			a_mtl = program.getAttribLocation(ShaderLib.A_MTL);
-			u_model = program.getUniformLocation(ShaderLib.U_MODEL);
-			u_matrices = program.getUniformLocation(ShaderLib.U_MATRICES);
+		}
+		final int u = lightCount * UNIFORM_COUNT;
+		if (uniforms[u] == -2) {
+			uniforms[u + U_MODEL] = program.getUniformLocation(ShaderLib.U_MODEL);
+			uniforms[u + U_MATRICES] = program
+					.getUniformLocation(ShaderLib.U_MATRICES);
+			uniforms[u + U_LIGHTPOS] = program
+					.getUniformLocation(ShaderLib.U_LIGHTPOS);
+			uniforms[u + U_LIGHTCOLORS] = program
+					.getUniformLocation(ShaderLib.U_LIGHTCOLORS);
+			uniforms[u + U_LIGHTSPOT] = program
+					.getUniformLocation(ShaderLib.U_LIGHTSPOT);
 		}
 		
+		final int u_model = uniforms[u + U_MODEL];
 		if (u_model != -1) {
 			GLES20.glUniformMatrix4fv(u_model, 1, false, matrices, 0);
 		}
 		
+		final int u_matrices = uniforms[u + U_MATRICES];
 		if (u_matrices != -1 && matrices.length != 16) {
-			GLES20.glUniformMatrix4fv(u_matrices, (matrices.length - 16) / 16,
-					false, matrices, 16);
+			if (modifier != null && modifier.usesPackedMatrices()) {
+				GLES20.glUniform4fv(u_matrices, (matrices.length - 16) / 4,
+						matrices, 16);
+			} else {
+				GLES20.glUniformMatrix4fv(u_matrices,
+						(matrices.length - 16) / 16, false, matrices, 16);
+			}
+		}
+		
+		if (lightCount > 0) {
+			GLES20.glUniform4fv(uniforms[u + U_LIGHTPOS], lightCount,
+					lightData, lightOffset);
+			GLES20.glUniform3fv(uniforms[u + U_LIGHTCOLORS], lightCount,
+					lightData, lightOffset + lightCapacity * 4);
+			GLES20.glUniform4fv(uniforms[u + U_LIGHTSPOT], lightCount,
+					lightData, lightOffset + lightCapacity * 7);
 		}
 		
 		outPos = vboOffset;
 		
 		onAttachAttribs();
 		if (modifier != null) {
-			modifier.onAttachAttribs(this, program);
+			modifier.onAttachAttribs(this, program, matrices);
 		}
 	}
 	
@@ -281,6 +429,34 @@ public abstract class Material {
 		inPos += size;
 	}
 	
+	/**
+	 * Loads UV coordinates to the VBO array, mapping them onto the given
+	 * atlas region.
+	 * 
+	 * @param uvs
+	 *            The UV coordinates to load
+	 * @param vbo
+	 *            The VBO array to load to
+	 * @param count
+	 *            The number of vertices represented
+	 * @param region
+	 *            The AtlasRegion to map the UVs onto, or null to load them
+	 *            unchanged.
+	 */
+	public void loadUVsToVbo(float[] uvs, float[] vbo, int count,
+			AtlasRegion region) {
+		if (region == null) {
+			loadArrayToVbo(uvs, vbo, 2, count);
+			return;
+		}
+		for (int i = 0; i < count; i++) {
+			final int index = inPos + i * stride;
+			vbo[index] = region.mapU(uvs[i * 2]);
+			vbo[index + 1] = region.mapV(uvs[i * 2 + 1]);
+		}
+		inPos += 2;
+	}
+	
 	/**
 	 * Loads byte vertex attribute data to the VBO array.
 	 * 
@@ -338,6 +514,36 @@ public abstract class Material {
 		outPos += size * 4;
 	}
 	
+	/**
+	 * Attaches the given float attribute to the GPU from a point after the
+	 * current one, without moving past it. Call {@link #skipAttribs(int)} once
+	 * the attributes stored there have been attached.
+	 * 
+	 * @param attrib
+	 *            The index of the attribute to attach.
+	 * @param size
+	 *            The size of the attribute.
+	 * @param offset
+	 *            The number of floats past the current point that the
+	 *            attribute starts at.
+	 */
+	public void attachAttribAt(int attrib, int size, int offset) {
+		GLES2.glEnableVertexAttribArray(attrib);
+		GLES2.glVertexAttribPointer(attrib, size, GLES20.GL_FLOAT, false,
+				byteStride, outPos + offset * 4);
+	}
+	
+	/**
+	 * Moves past the given number of floats of per-vertex data without
+	 * attaching them.
+	 * 
+	 * @param floats
+	 *            The number of floats to skip.
+	 */
+	public void skipAttribs(int floats) {
+		outPos += floats * 4;
+	}
+	
 	/**
 	 * Attaches the given attribute to the GPU.
 	 * 
@@ -418,7 +624,82 @@ public abstract class Material {
 		setUniform(program.getUniformLocation(name), args);
 	}
 	
+	/**
+	 * @return The Program used by this Material for objects without local
+	 *         lights.
+	 */
 	public Program getProgram() {
-		return program;
+		return baseProgram;
+	}
+	
+	/**
+	 * Returns the Program variant for the given number of local lights,
+	 * creating it if necessary. New variants are compiled through the
+	 * ShaderLib warm-up queue. If the variant failed to compile or link (i.e.
+	 * because its light uniforms don't fit), the variant with one light fewer
+	 * is used instead.
+	 * 
+	 * @param lightCount
+	 *            The number of point and spot lights affecting the object.
+	 * @return The Program to draw the object with.
+	 */
+	public Program getProgram(int lightCount) {
+		return variants == null ? baseProgram
+				: variants[usableLightCount(lightCount)];
+	}
+	
+	/**
+	 * Returns the largest number of local lights, up to
+	 * <code>lightCount</code>, whose Program variant is loaded. This does not
+	 * create any variants.
+	 * 
+	 * @param lightCount
+	 *            The number of point and spot lights affecting the object.
+	 * @return The number of lights to draw the object with while its variant
+	 *         is being compiled.
+	 */
+	public int getLoadedLightCount(int lightCount) {
+		if (variants == null) {
+			return 0;
+		}
+		lightCount = Math.max(Math.min(lightCount, variants.length - 1), 0);
+		while (lightCount > 0
+				&& (variants[lightCount] == null || !variants[lightCount]
+						.isLoaded())) {
+			lightCount--;
+		}
+		return lightCount;
+	}
+	
+	/**
+	 * Clamps <code>lightCount</code> to the number of variants, then steps
+	 * down past variants that failed to load, creating the next one only once
+	 * the one above it has failed.
+	 */
+	private int usableLightCount(int lightCount) {
+		if (!localLights || lightCount <= 0) {
+			return 0;
+		}
+		lightCount = Math.min(lightCount, variants.length - 1);
+		while (lightCount > 0) {
+			if (variants[lightCount] == null) {
+				final String define = lightCountDefine(lightCount);
+				variants[lightCount] = ShaderLib.newProgram(define
+						+ vertexSource, define + fragmentSource);
+			}
+			if (!variants[lightCount].hasFailed()) {
+				break;
+			}
+			lightCount--;
+		}
+		return lightCount;
+	}
+	
+	/**
+	 * @return true if this Material's shaders use local (point and spot)
+	 *         lights.
+	 */
+	public boolean usesLocalLights() {
+		return localLights;
 	}
 }
@@ -36,6 +36,14 @@ public class Program implements EGLContextLostListener {
 	private int handle;
 
 	private boolean loaded;
+	private boolean failed;
+	
+	// The version of the per-frame uniforms last loaded into this program
+	private long uniformVersion = -1;
+	
+	// Load metrics, in nanoseconds
+	private long compileTime;
+	private long linkTime;
 
 	public Program(Shader vertexShader, Shader fragmentShader) {
 		vertex = vertexShader;
@@ -56,8 +64,13 @@ public class Program implements EGLContextLostListener {
 			return handle;
 		}
 
+		final long compileStart = System.nanoTime();
 		int vHandle = vertex.load(GLES20.GL_VERTEX_SHADER);
 		int fHandle = fragment.load(GLES20.GL_FRAGMENT_SHADER);
+		compileTime = System.nanoTime() - compileStart;
+		if (vHandle == 0 || fHandle == 0) {
+			throw new GLException(0, "Error compiling shaders.");
+		}
 
 		handle = GLES20.glCreateProgram();
 		if (handle == 0) {
@@ -70,13 +83,21 @@ public class Program implements EGLContextLostListener {
 		GameRenderer.logError("glAttachShader(handle, vertex.handle)");
 		GLES20.glAttachShader(handle, fHandle);
 		GameRenderer.logError("glAttachShader(handle, fragment.handle)");
+		
+		// Use the same locations for common attributes in every program
+		final String[] bindings = ShaderLib.ATTRIB_BINDINGS;
+		for (int i = 0; i < bindings.length; i++) {
+			GLES20.glBindAttribLocation(handle, i, bindings[i]);
+		}
 
 		// Link program
+		final long linkStart = System.nanoTime();
 		GLES20.glLinkProgram(handle);
 
-		// Check link status
+		// Check link status (this also waits for the link to finish)
 		int[] status = { 0 };
 		GLES20.glGetProgramiv(handle, GLES20.GL_LINK_STATUS, status, 0);
+		linkTime = System.nanoTime() - linkStart;
 		if (status[0] != GLES20.GL_TRUE) { // If there is an error...
 			String infoLog = GLES20.glGetProgramInfoLog(handle);
 			GLES20.glDeleteProgram(handle);
@@ -85,7 +106,10 @@ public class Program implements EGLContextLostListener {
 			throw new GLException(0, "Error linking program.");
 		}
 
-		Log.d(TAG, "Program successfully created and linked!");
+		uniformVersion = -1;
+		Log.d(TAG, "Program successfully created and linked! (compile: "
+				+ (compileTime / 1000) + " us, link: " + (linkTime / 1000)
+				+ " us)");
 		loaded = true;
 		return handle;
 	}
@@ -108,9 +132,57 @@ public class Program implements EGLContextLostListener {
 		return loaded;
 	}
 
+	/**
+	 * @return true if this Program could not be compiled or linked by the
+	 *         {@link ShaderLib} warm-up queue.
+	 */
+	public boolean hasFailed() {
+		return failed;
+	}
+
+	void setFailed() {
+		failed = true;
+	}
+
 	public int getHandle() {
 		return handle;
 	}
+	
+	/**
+	 * @return The version of the per-frame uniforms (view-projection matrix,
+	 *         light) that were last loaded into this Program, or -1 if they
+	 *         have not been loaded since the Program was linked.
+	 */
+	public long getUniformVersion() {
+		return uniformVersion;
+	}
+	
+	/**
+	 * Records the version of the per-frame uniforms that were just loaded into
+	 * this Program. Called by the renderer.
+	 * 
+	 * @param version
+	 *            The version of the uniforms.
+	 */
+	public void setUniformVersion(long version) {
+		uniformVersion = version;
+	}
+	
+	/**
+	 * @return The time spent compiling this Program's shaders the last time it
+	 *         was loaded, in nanoseconds.
+	 */
+	public long getCompileTime() {
+		return compileTime;
+	}
+	
+	/**
+	 * @return The time spent linking this Program the last time it was loaded,
+	 *         in nanoseconds.
+	 */
+	public long getLinkTime() {
+		return linkTime;
+	}
 
 	@Override
 	public void onContextLost() {
@@ -18,6 +18,7 @@ package com.supermercerbros.gameengine.engine.shaders;
 
 import java.util.LinkedList;
 
+import android.opengl.GLException;
 import android.util.Log;
 
 public class ShaderLib {
@@ -36,10 +37,34 @@ public class ShaderLib {
 	
 	public static final String S_BASEMAP = "s_baseMap";
 	
+	public static final String U_LIGHTPOS = "u_lightPos";
+	public static final String U_LIGHTCOLORS = "u_lightColors";
+	public static final String U_LIGHTSPOT = "u_lightSpot";
+	
+	/**
+	 * The preprocessor macro defined as the number of local lights in each
+	 * Program variant of a Material that uses local lights.
+	 */
+	public static final String LIGHT_COUNT = "LIGHT_COUNT";
+	
+	/**
+	 * The attribute names that are bound to fixed locations (their indices in
+	 * this array) in every Program, so that the variants of a Material share
+	 * attribute locations.
+	 */
+	static final String[] ATTRIB_BINDINGS = { A_POS, A_NORMAL, A_MTL,
+			"a_weights", "a_indices", "a_index" };
+	
 	private static LinkedList<Program> programs;
 	private static LinkedList<Shader> shaders;
+	private static LinkedList<Program> pending;
 	private static boolean initialized = false;
 	
+	// Warm-up statistics
+	private static int warmedCount;
+	private static long warmCompileTime;
+	private static long warmLinkTime;
+	
 	/**
 	 * Initializes the ShaderLib.
 	 */
@@ -51,6 +76,10 @@ public class ShaderLib {
 		initialized = true;
 		programs = new LinkedList<Program>();
 		shaders = new LinkedList<Shader>();
+		pending = new LinkedList<Program>();
+		warmedCount = 0;
+		warmCompileTime = 0;
+		warmLinkTime = 0;
 	}
 	
 	public static synchronized void close() {
@@ -60,6 +89,8 @@ public class ShaderLib {
 			programs = null;
 			shaders.clear();
 			shaders = null;
+			pending.clear();
+			pending = null;
 			Log.d(TAG, "ShaderLib is now closed.");
 		} else {
 			Log.e(TAG, "ShaderLib.close() was called before init()");
@@ -107,7 +138,95 @@ public class ShaderLib {
 		
 		final Program program = new Program(vert, frag);
 		programs.add(program);
+		pending.add(program);
 		return program;
 	}
 	
+	/**
+	 * Adds the given Program to the warm-up queue, unless it is already loaded
+	 * or queued. Programs made by {@link #newProgram(String, String)} are
+	 * queued automatically, so this is only needed for Programs that have been
+	 * unloaded (i.e. after the EGL context was lost).
+	 * 
+	 * @param program
+	 *            The Program to compile on the GL thread.
+	 */
+	public static synchronized void enqueue(Program program) {
+		if (!initialized || program.isLoaded() || program.hasFailed()
+				|| pending.contains(program)) {
+			return;
+		}
+		pending.add(program);
+	}
+	
+	/**
+	 * @return The number of Programs waiting to be compiled. Games can show a
+	 *         loading screen until this returns zero.
+	 */
+	public static synchronized int getPendingCount() {
+		return initialized ? pending.size() : 0;
+	}
+	
+	private static synchronized Program nextPending() {
+		if (!initialized) {
+			return null;
+		}
+		return pending.poll();
+	}
+	
+	/**
+	 * Compiles and links queued Programs until the given time budget has been
+	 * spent. At least one Program is loaded per call if any are queued. Must be
+	 * called on the GL thread.
+	 * 
+	 * @param budget
+	 *            The time budget, in nanoseconds. If this is zero or negative,
+	 *            every queued Program is loaded.
+	 * @return The number of Programs that were loaded.
+	 */
+	public static int loadPending(long budget) {
+		final long start = System.nanoTime();
+		int count = 0;
+		
+		Program program;
+		while ((program = nextPending()) != null) {
+			if (!program.isLoaded() && !program.hasFailed()) {
+				try {
+					program.load();
+				} catch (GLException e) {
+					// The renderer falls back to a variant with fewer lights,
+					// or throws if there is none
+					Log.e(TAG, "Program could not be loaded.", e);
+					program.setFailed();
+					continue;
+				}
+				count++;
+				synchronized (ShaderLib.class) {
+					warmedCount++;
+					warmCompileTime += program.getCompileTime();
+					warmLinkTime += program.getLinkTime();
+				}
+			}
+			
+			if (budget > 0 && System.nanoTime() - start >= budget) {
+				break;
+			}
+		}
+		
+		if (count > 0 && getPendingCount() == 0) {
+			logStats();
+		}
+		return count;
+	}
+	
+	/**
+	 * Logs the number of Programs loaded through the warm-up queue, and the
+	 * total time spent compiling and linking them.
+	 */
+	public static synchronized void logStats() {
+		Log.i(TAG, "Shader warm-up: " + warmedCount + " programs, "
+				+ (warmCompileTime / 1000000) + " ms compiling, "
+				+ (warmLinkTime / 1000000) + " ms linking");
+	}
+	
 }
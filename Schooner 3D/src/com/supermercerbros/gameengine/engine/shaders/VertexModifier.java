@@ -26,6 +26,16 @@ public abstract class VertexModifier {
 	
 	public abstract void onAttachAttribs(Material mtl, Program program);
 	
+	/**
+	 * Like {@link #onAttachAttribs(Material, Program)}, but also given the
+	 * matrices of the primitive being drawn (the model matrix, then the
+	 * object's extra floats), for modifiers whose attributes depend on the
+	 * object's state. The default implementation ignores them.
+	 */
+	public void onAttachAttribs(Material mtl, Program program, float[] matrices) {
+		onAttachAttribs(mtl, program);
+	}
+	
 	/**
 	 * @param sb 
 	 * @return Additional variables (uniforms and attributes) for the vertex
@@ -53,6 +63,15 @@ public abstract class VertexModifier {
 	 * @return The number of additional floats per vertex.
 	 */
 	public abstract int getStride();
+	
+	/**
+	 * @return true if the modifier declares <code>u_matrices</code> as an
+	 *         array of <code>vec4</code>s (i.e. packed bone transforms)
+	 *         rather than <code>mat4</code>s.
+	 */
+	public boolean usesPackedMatrices() {
+		return false;
+	}
 
 	protected static boolean containsNormalAttrib(StringBuilder sb) {
 		return (sb.indexOf(" " + ShaderLib.A_NORMAL + ";") != -1);
@@ -21,6 +21,7 @@ import android.opengl.GLES20;
 import android.view.MotionEvent;
 
 import com.supermercerbros.gameengine.engine.shaders.Program;
+import com.supermercerbros.gameengine.texture.AtlasRegion;
 import com.supermercerbros.gameengine.util.GLES2;
 
 /**
@@ -45,6 +46,8 @@ public abstract class HudElement {
 	private int iboOffset;
 	private int indexCount;
 	
+	private AtlasRegion region;
+	
 	// Protected fields
 	/**
 	 * This HudElement's OpenGL primitive type
@@ -157,6 +160,28 @@ public abstract class HudElement {
 	// OTHER METHODS
 	// ============================
 	
+	/**
+	 * Places this HudElement's image in a {@link com.supermercerbros.gameengine.texture.TextureAtlas} page. The UVs
+	 * returned by {@link #getUVs()} are mapped onto the region when the
+	 * element is written to the GameHud's buffers, so this must be called
+	 * before the GameHud is loaded. Subclasses should bind
+	 * {@link AtlasRegion#getPage()} in {@link #onRender()}.
+	 * 
+	 * @param region
+	 *            The AtlasRegion containing this element's image, or null.
+	 */
+	public synchronized void setAtlasRegion(AtlasRegion region) {
+		this.region = region;
+	}
+	
+	/**
+	 * @return The AtlasRegion containing this element's image, or null if
+	 *         it does not use an atlas.
+	 */
+	public synchronized AtlasRegion getAtlasRegion() {
+		return region;
+	}
+	
 	/** Called by the {@link GameHud}. */
 	synchronized void render() {
 		GLES20.glUseProgram(programHandle);
@@ -195,13 +220,21 @@ public abstract class HudElement {
 		final float[] verts = getVerts();
 		final int count = verts.length;
 		if (hasUVs) {
+			// Map the UVs as they are written; getUVs() may return an array
+			// that the subclass keeps
 			final float[] uvs = getUVs();
+			final AtlasRegion region = this.region;
 			for (int i = 0; i < count; i += 2) {
 				// Write verts and UVs to buffer
 				vbo.putFloat(verts[i]);
 				vbo.putFloat(verts[i + 1]);
-				vbo.putFloat(uvs[i]);
-				vbo.putFloat(uvs[i + 1]);
+				if (region != null) {
+					vbo.putFloat(region.mapU(uvs[i]));
+					vbo.putFloat(region.mapV(uvs[i + 1]));
+				} else {
+					vbo.putFloat(uvs[i]);
+					vbo.putFloat(uvs[i + 1]);
+				}
 			}
 		} else {
 			for (int i = 0; i < count; i += 2) {
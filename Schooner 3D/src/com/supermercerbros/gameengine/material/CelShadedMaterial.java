@@ -20,6 +20,7 @@ import com.supermercerbros.gameengine.engine.shaders.Material;
 import com.supermercerbros.gameengine.engine.shaders.ShaderLib;
 import com.supermercerbros.gameengine.objects.GameObject;
 import com.supermercerbros.gameengine.shaders.ProgramSource;
+import com.supermercerbros.gameengine.texture.AtlasRegion;
 import com.supermercerbros.gameengine.texture.Texture;
 
 /**
@@ -67,9 +68,24 @@ public class CelShadedMaterial extends Material {
 			"gl_FragColor = vec4(texColor * brightness, 1.0);";
 	
 	private Texture texture;
+	private final AtlasRegion region;
 	
 	public CelShadedMaterial(Texture texture) {
 		this.texture = texture;
+		this.region = null;
+	}
+	
+	/**
+	 * Creates a CelShadedMaterial that uses an image packed in a
+	 * {@link com.supermercerbros.gameengine.texture.TextureAtlas}. Objects'
+	 * UVs are mapped onto the region as they are loaded.
+	 * 
+	 * @param region
+	 *            The AtlasRegion containing the image.
+	 */
+	public CelShadedMaterial(AtlasRegion region) {
+		this.texture = region.getPage();
+		this.region = region;
 	}
 	
 	@Override
@@ -86,7 +102,7 @@ public class CelShadedMaterial extends Material {
 	public void onLoadObject(GameObject obj, float[] vbo, int vertCount) {
 		loadArrayToVbo(obj.verts, vbo, 3, vertCount);
 		loadArrayToVbo(obj.normals, vbo, 3, vertCount);
-		loadArrayToVbo(obj.mtl, vbo, 2, vertCount);
+		loadUVsToVbo(obj.mtl, vbo, vertCount, region);
 	}
 	
 	@Override
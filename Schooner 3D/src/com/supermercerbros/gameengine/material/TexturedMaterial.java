@@ -20,6 +20,7 @@ import com.supermercerbros.gameengine.engine.shaders.Material;
 import com.supermercerbros.gameengine.engine.shaders.ShaderLib;
 import com.supermercerbros.gameengine.objects.GameObject;
 import com.supermercerbros.gameengine.shaders.ProgramSource;
+import com.supermercerbros.gameengine.texture.AtlasRegion;
 import com.supermercerbros.gameengine.texture.Texture;
 
 /**
@@ -37,7 +38,8 @@ public class TexturedMaterial extends Material {
 			"uniform mat4 u_viewProj;\n" +
 			"uniform vec3 u_lightVec;\n" +
 			"uniform vec3 u_lightColor;\n" + 
-			"uniform mat4 u_model;\n";
+			"uniform mat4 u_model;\n" +
+			VARS_LOCAL_LIGHTS;
 	
 	private static final String VERT_MAIN =
 			"mat4 transform = (u_viewProj * u_model);" +
@@ -46,6 +48,9 @@ public class TexturedMaterial extends Material {
 			"vec3 normal = (transform * vec4(a_normal, 0.0)).xyz;\n" +
 			"float brightness = max((dot(normal, u_lightVec) + 1.0) / 2.0, 0.0);\n" +
 			"vec3 color = (u_lightColor * brightness);\n" +
+			"vec3 worldPos = (u_model * vec4(a_pos, 1.0)).xyz;\n" +
+			"vec3 worldNormal = normalize((u_model * vec4(a_normal, 0.0)).xyz);\n" +
+			"color += localLighting(worldPos, worldNormal);\n" +
 			
 			"v_lightColor = min(color, vec3(1.0));\n";
 	
@@ -60,9 +65,24 @@ public class TexturedMaterial extends Material {
 			"gl_FragColor = vec4(texture2D(s_baseMap, v_tc).rgb, 1.0) * vec4(v_lightColor, 1.0);\n";
 	
 	private Texture texture;
+	private final AtlasRegion region;
 	
 	public TexturedMaterial(Texture texture) {
 		this.texture = texture;
+		this.region = null;
+	}
+	
+	/**
+	 * Creates a TexturedMaterial that uses an image packed in a
+	 * {@link com.supermercerbros.gameengine.texture.TextureAtlas}. Objects'
+	 * UVs are mapped onto the region as they are loaded.
+	 * 
+	 * @param region
+	 *            The AtlasRegion containing the image.
+	 */
+	public TexturedMaterial(AtlasRegion region) {
+		this.texture = region.getPage();
+		this.region = region;
 	}
 	
 	@Override
@@ -79,13 +99,13 @@ public class TexturedMaterial extends Material {
 	public void onLoadObject(GameObject obj, float[] vbo, int vertCount) {
 		loadArrayToVbo(obj.verts, vbo, 3, vertCount);
 		loadArrayToVbo(obj.normals, vbo, 3, vertCount);
-		loadArrayToVbo(obj.mtl, vbo, 2, vertCount);
+		loadUVsToVbo(obj.mtl, vbo, vertCount, region);
 	}
 	
 	@Override
 	public void makeProgram() {
 		final ProgramSource prog = new ProgramSource(VARYINGS, null, VERT_VARS,
 				VERT_MAIN, null, FRAG_VARS, FRAG_MAIN);
-		setProgram(prog, STRIDE);
+		setProgram(prog, STRIDE, true);
 	}
 }
@@ -0,0 +1,92 @@
+/*
+ * Copyright 2013 Dan Mercer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.supermercerbros.gameengine.math;
+
+/**
+ * A Curve that has been resampled at evenly spaced points and quantized to 16
+ * bits per sample. Evaluating it is a constant-time lookup and a linear
+ * interpolation, at the cost of a small error (at most 1/65535 of the
+ * curve's range, plus whatever detail falls between samples).
+ */
+public class BakedCurve implements Curve {
+	private static final float STEPS = 65535;
+
+	private final char[] samples;
+	private final int lastSample;
+	private final float min, scale;
+	private final float startValue, endValue;
+
+	/**
+	 * Bakes the given Curve.
+	 *
+	 * @param curve
+	 *            The Curve to sample.
+	 * @param sampleCount
+	 *            The number of samples to take, including both ends. Must be
+	 *            at least 2.
+	 */
+	public BakedCurve(Curve curve, int sampleCount) {
+		if (sampleCount < 2) {
+			throw new IllegalArgumentException("sampleCount < 2");
+		}
+		final float[] values = new float[sampleCount];
+		lastSample = sampleCount - 1;
+		float min = Float.POSITIVE_INFINITY, max = Float.NEGATIVE_INFINITY;
+		for (int i = 0; i < sampleCount; i++) {
+			final float value = curve.getInterpolation((float) i / lastSample);
+			values[i] = value;
+			min = Math.min(min, value);
+			max = Math.max(max, value);
+		}
+
+		this.min = min;
+		this.scale = (max - min) / STEPS;
+		this.samples = new char[sampleCount];
+		for (int i = 0; i < sampleCount; i++) {
+			samples[i] = scale == 0 ? 0
+					: (char) Math.round((values[i] - min) / scale);
+		}
+		this.startValue = values[0];
+		this.endValue = values[lastSample];
+	}
+
+	/* (non-Javadoc)
+	 * @see com.supermercerbros.gameengine.math.Curve#getInterpolation(float)
+	 */
+	@Override
+	public float getInterpolation(float x) {
+		if (x >= 1) {
+			return endValue;
+		} else if (x <= 0) {
+			return startValue;
+		}
+		final float position = x * lastSample;
+		final int i = (int) position;
+		if (i >= lastSample) {
+			return endValue;
+		}
+		final float s0 = samples[i], s1 = samples[i + 1];
+		return min + (s0 + (s1 - s0) * (position - i)) * scale;
+	}
+
+	/* (non-Javadoc)
+	 * @see com.supermercerbros.gameengine.math.Curve#getStartValue()
+	 */
+	@Override
+	public float getStartValue() {
+		return startValue;
+	}
+}
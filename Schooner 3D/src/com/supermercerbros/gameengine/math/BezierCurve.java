@@ -16,14 +16,44 @@
 
 package com.supermercerbros.gameengine.math;
 
+import java.util.Arrays;
+
 
 /**
- * Represents a piecewise Bezier curve, used for interpolation
+ * Represents a piecewise Bezier curve, used for interpolation. The polynomial
+ * coefficients of each segment are computed once, and the segment used by the
+ * last call is remembered, so evaluating a curve at increasing times (as
+ * animations do) does not search the keyframes.
  */
 public class BezierCurve implements Curve {
+	/**
+	 * The number of Newton-Raphson iterations used to find a segment's
+	 * parameter given a time.
+	 */
+	private static final int NEWTON_ITERATIONS = 4;
+	
+	/**
+	 * Parameter changes smaller than this end the Newton-Raphson iterations.
+	 */
+	private static final float EPSILON = 1e-5f;
+	
 	private final float[] values;
 	private final float[] times;
 	private final int lastIndex;
+	private final int segmentCount;
+	
+	/**
+	 * The cubic coefficients of each segment: (a, b, c, d) for the time, then
+	 * for the value, such that <code>p(t) = ((a * t + b) * t + c) * t + d</code>.
+	 */
+	private final float[] coefficients;
+	
+	/**
+	 * The segment used by the last call to getInterpolation(). This is only a
+	 * hint, so it does not need to be synchronized when a curve is shared
+	 * between threads.
+	 */
+	private int cursor = 0;
 	
 	public BezierCurve(float[] x, float[] y) {
 		if (x.length != y.length) {
@@ -37,6 +67,83 @@ public class BezierCurve implements Curve {
 		times = x;
 		values = y;
 		lastIndex = times.length - 1;
+		segmentCount = lastIndex / 3;
+		
+		coefficients = new float[segmentCount * 8];
+		updateCoefficients();
+	}
+	
+	private void updateCoefficients() {
+		for (int segment = 0; segment < segmentCount; segment++) {
+			setCoefficients(times, segment * 3, coefficients, segment * 8);
+			setCoefficients(values, segment * 3, coefficients, segment * 8 + 4);
+		}
+	}
+	
+	/**
+	 * Prepares the four curves of a quaternion for playback. A quaternion
+	 * and its negation represent the same rotation, so wherever a keyframe is
+	 * in the opposite hemisphere from the keyframe before it, that keyframe
+	 * and its handles are negated. Otherwise, interpolating the components
+	 * would take the long way around (or pass near zero). This only works if
+	 * the curves are BezierCurves with the same keyframe times, as exported
+	 * together.
+	 * 
+	 * @param w The w-component curve.
+	 * @param x The x-component curve.
+	 * @param y The y-component curve.
+	 * @param z The z-component curve.
+	 * @return true if the curves could be aligned.
+	 */
+	public static boolean alignQuaternion(Curve w, Curve x, Curve y, Curve z) {
+		if (!(w instanceof BezierCurve && x instanceof BezierCurve
+				&& y instanceof BezierCurve && z instanceof BezierCurve)) {
+			return false;
+		}
+		final BezierCurve cw = (BezierCurve) w, cx = (BezierCurve) x;
+		final BezierCurve cy = (BezierCurve) y, cz = (BezierCurve) z;
+		if (!Arrays.equals(cw.times, cx.times)
+				|| !Arrays.equals(cw.times, cy.times)
+				|| !Arrays.equals(cw.times, cz.times)) {
+			return false;
+		}
+		
+		final float[] vw = cw.values, vx = cx.values, vy = cy.values, vz = cz.values;
+		boolean changed = false;
+		for (int key = 3; key <= cw.lastIndex; key += 3) {
+			final int prev = key - 3;
+			final float dot = vw[prev] * vw[key] + vx[prev] * vx[key]
+					+ vy[prev] * vy[key] + vz[prev] * vz[key];
+			if (dot >= 0) {
+				continue;
+			}
+			final int last = Math.min(key + 1, cw.lastIndex);
+			for (int i = key - 1; i <= last; i++) {
+				vw[i] = -vw[i];
+				vx[i] = -vx[i];
+				vy[i] = -vy[i];
+				vz[i] = -vz[i];
+			}
+			changed = true;
+		}
+		
+		if (changed) {
+			cw.updateCoefficients();
+			cx.updateCoefficients();
+			cy.updateCoefficients();
+			cz.updateCoefficients();
+		}
+		return true;
+	}
+	
+	private static void setCoefficients(float[] p, int pOffset, float[] out,
+			int offset) {
+		final float p0 = p[pOffset], p1 = p[pOffset + 1];
+		final float p2 = p[pOffset + 2], p3 = p[pOffset + 3];
+		out[offset] = -p0 + 3 * p1 - 3 * p2 + p3;
+		out[offset + 1] = 3 * p0 - 6 * p1 + 3 * p2;
+		out[offset + 2] = -3 * p0 + 3 * p1;
+		out[offset + 3] = p0;
 	}
 	
 	/* (non-Javadoc)
@@ -44,72 +151,72 @@ public class BezierCurve implements Curve {
 	 */
 	@Override
 	public float getInterpolation(float x) {
-		final float frame = x * times[lastIndex];
 		if (x >= 1) {
 			return values[lastIndex];
 		} else if (x <= 0) {
 			return values[0];
 		}
+		final float frame = x * times[lastIndex];
 		
-		// Get index of lower keyframe
-		int keyframe = 0;
-		while (frame > times[(keyframe + 1) * 3]) {
-			keyframe++;
-		}
-		
-		// Point frame coordinates
-		final float fp0 = times[(keyframe * 3) + 0];
-		final float fp1 = times[(keyframe * 3) + 1];
-		final float fp2 = times[(keyframe * 3) + 2];
-		final float fp3 = times[(keyframe * 3) + 3];
-		
-		// Point value coordinates
-		final float vp0 = values[(keyframe * 3) + 0];
-		final float vp1 = values[(keyframe * 3) + 1];
-		final float vp2 = values[(keyframe * 3) + 2];
-		final float vp3 = values[(keyframe * 3) + 3];
-		
-		// Estimate T given X
-		float lowerT = 0;
-		float upperT = 1;
-		float tGuess = (fp0 - frame) / (fp0 - fp3);
+		final int segment = findSegment(frame);
+		final int c = segment * 8;
+		final float a = coefficients[c], b = coefficients[c + 1];
+		final float cc = coefficients[c + 2], d = coefficients[c + 3];
 		
-		for (int i = 1; i <= 5; i++) {
-			final float frameGuess = solve(fp0, fp1, fp2, fp3, tGuess);
-			if (frameGuess < frame) {
-				lowerT = tGuess;
-			} else if (frameGuess > frame){
-				upperT = tGuess;
-			} else {
-				return solve(vp0, vp1, vp2, vp3, tGuess);
+		// Estimate T given X, then refine it with Newton-Raphson
+		final float start = times[segment * 3], end = times[segment * 3 + 3];
+		float t = end > start ? (frame - start) / (end - start) : 0;
+		for (int i = 0; i < NEWTON_ITERATIONS; i++) {
+			final float error = ((a * t + b) * t + cc) * t + d - frame;
+			final float slope = (3 * a * t + 2 * b) * t + cc;
+			if (slope == 0) {
+				break;
+			}
+			final float step = error / slope;
+			t -= step;
+			if (t < 0) {
+				t = 0;
+			} else if (t > 1) {
+				t = 1;
+			}
+			if (step < EPSILON && step > -EPSILON) {
+				break;
 			}
-			
-			tGuess = (lowerT + upperT) / 2;
 		}
 		
-		final float lowerFrame = solve(fp0, fp1, fp2, fp3, lowerT);
-		final float upperFrame = solve(fp0, fp1, fp2, fp3, upperT);
-		final float alpha = (lowerFrame - frame) / (lowerFrame - upperFrame);
-		final float t = lowerT + (upperT - lowerT) * alpha;
-		
-		// Solve for Y now that we have an estimated T
-		return solve(vp0, vp1, vp2, vp3, t);
-		
+		// Solve for Y now that we have T
+		return ((coefficients[c + 4] * t + coefficients[c + 5]) * t
+				+ coefficients[c + 6]) * t + coefficients[c + 7];
 	}
 	
-	private static float solve(final float p0, final float p1, final float p2,
-			final float p3, final float t) {
-		if (t == 0.0) {
-			return p0;
-		} else if (t == 1.0) {
-			return p3;
+	/**
+	 * Finds the segment containing the given frame, starting from the cursor.
+	 * The cursor is only a hint, so a curve can be evaluated from several
+	 * threads at once.
+	 */
+	private int findSegment(float frame) {
+		final float[] times = this.times;
+		int segment = cursor;
+		if (segment >= segmentCount || frame < times[segment * 3]) {
+			// Time went backwards; search from the start
+			int low = 0, high = segmentCount - 1;
+			while (low < high) {
+				final int mid = (low + high) >>> 1;
+				if (frame > times[(mid + 1) * 3]) {
+					low = mid + 1;
+				} else {
+					high = mid;
+				}
+			}
+			segment = low;
+		} else {
+			while (segment < segmentCount - 1
+					&& frame > times[(segment + 1) * 3]) {
+				segment++;
+			}
 		}
-		
-		final float d = 1 - t;
-		return (d * d * d * p0) +
-				(3 * d * d * t * p1) +
-				(3 * d * t * t * p2) +
-				(t * t * t * p3);
+		cursor = segment;
+		return segment;
 	}
 	
 	/* (non-Javadoc)
@@ -27,16 +27,10 @@ import android.opengl.Matrix;
  * 
  */
 public class MatrixUtils extends Matrix {
-	/*
-	 * The technique of using a temp float array was obtained from 
-	 * Matrix.java of the AOSP, which was released under the Apache 
-	 * License, Version 2.0. 
-	 * (Copyright 2007 The Android Open Source Project)
-	 */
-	private static final float[] temp = new float[32];
-
 	/**
-	 * Rotates the given matrix in place by the given quaternion rotation
+	 * Rotates the given matrix in place by the given quaternion rotation.
+	 * This method does not lock or allocate, so it may be called from
+	 * several threads at once (on different matrices).
 	 * 
 	 * @param m The float array that holds matrix to rotate
 	 * @param mOffset The offset into <code>m</code> where the matrix starts
@@ -47,16 +41,14 @@ public class MatrixUtils extends Matrix {
 	 */
 	public static void rotateQuaternionM(float[] m, int mOffset, float w,
 			float x, float y, float z) {
-		synchronized (temp) {
-			setRotateQuaternionM(temp, 0, w, x, y, z);
-			multiplyMM(temp, 16, m, mOffset, temp, 0);
-			System.arraycopy(temp, 16, m, mOffset, 16);
-		}
+		rotateQuaternionM(m, mOffset, m, mOffset, w, x, y, z);
 	}
 	
 	/**
 	 * Rotates the given matrix by the given quaternion rotation, putting the
-	 * result in rm
+	 * result in rm. <code>rm</code> and <code>m</code> may be the same
+	 * matrix. This method does not lock or allocate, so it may be called from
+	 * several threads at once (on different matrices).
 	 * 
 	 * @param rm The array to store the result
 	 * @param rmOffset The offset into rm where the matrix should start.
@@ -69,9 +61,26 @@ public class MatrixUtils extends Matrix {
 	 */
 	public static void rotateQuaternionM(float[] rm, int rmOffset, float[] m,
 			int mOffset, float w, float x, float y, float z) {
-		synchronized (temp) {
-			setRotateQuaternionM(temp, 0, w, x, y, z);
-			multiplyMM(rm, rmOffset, m, mOffset, temp, 0);
+		final float xx = x*x, yy = y*y, zz = z*z;
+		final float xy = x*y, yz = y*z, xz = x*z;
+		final float xw = x*w, yw = y*w, zw = z*w;
+		
+		// The rotation matrix (only the upper 3x3 differs from identity)
+		final float r00 = 1 - 2*yy - 2*zz, r01 = 2*xy - 2*zw, r02 = 2*xz + 2*yw;
+		final float r10 = 2*xy + 2*zw, r11 = 1 - 2*xx - 2*zz, r12 = 2*yz - 2*xw;
+		final float r20 = 2*xz - 2*yw, r21 = 2*yz + 2*xw, r22 = 1 - 2*xx - 2*yy;
+		
+		// m * R only changes the first three columns of m. Each row of m is
+		// read before it is written so that rm may alias m.
+		for (int row = 0; row < 4; row++) {
+			final float m0 = m[mOffset + row];
+			final float m1 = m[mOffset + 4 + row];
+			final float m2 = m[mOffset + 8 + row];
+			final float m3 = m[mOffset + 12 + row];
+			rm[rmOffset + row] = m0 * r00 + m1 * r10 + m2 * r20;
+			rm[rmOffset + 4 + row] = m0 * r01 + m1 * r11 + m2 * r21;
+			rm[rmOffset + 8 + row] = m0 * r02 + m1 * r12 + m2 * r22;
+			rm[rmOffset + 12 + row] = m3;
 		}
 	}
 	
@@ -121,4 +121,127 @@ public class Quaternion {
 		
 		return new Point(rX, rY, rZ);
 	}
+	
+	/**
+	 * Normalized linear interpolation between two quaternions stored in
+	 * arrays as (w, x, y, z). If the quaternions are in opposite hemispheres,
+	 * <code>b</code> is negated first so that the shorter path is taken. The
+	 * output may be the same array as either input.
+	 * 
+	 * @param a The array containing the quaternion at t = 0.
+	 * @param aOffset The offset of <code>a</code>.
+	 * @param b The array containing the quaternion at t = 1.
+	 * @param bOffset The offset of <code>b</code>.
+	 * @param t The interpolation factor.
+	 * @param out The array to write the result to.
+	 * @param outOffset The offset into <code>out</code>.
+	 */
+	public static void nlerp(float[] a, int aOffset, float[] b, int bOffset,
+			float t, float[] out, int outOffset) {
+		final float aw = a[aOffset], ax = a[aOffset + 1], ay = a[aOffset + 2], az = a[aOffset + 3];
+		float bw = b[bOffset], bx = b[bOffset + 1], by = b[bOffset + 2], bz = b[bOffset + 3];
+		if (aw * bw + ax * bx + ay * by + az * bz < 0) {
+			bw = -bw;
+			bx = -bx;
+			by = -by;
+			bz = -bz;
+		}
+		final float w = aw + (bw - aw) * t;
+		final float x = ax + (bx - ax) * t;
+		final float y = ay + (by - ay) * t;
+		final float z = az + (bz - az) * t;
+		normalize(w, x, y, z, out, outOffset);
+	}
+	
+	/**
+	 * Spherical linear interpolation between two unit quaternions stored in
+	 * arrays as (w, x, y, z). Like {@link #nlerp nlerp()}, this takes the
+	 * shorter path, but it also rotates at a constant rate. Nearly equal
+	 * quaternions are nlerped instead. The output may be the same array as
+	 * either input.
+	 * 
+	 * @param a The array containing the quaternion at t = 0.
+	 * @param aOffset The offset of <code>a</code>.
+	 * @param b The array containing the quaternion at t = 1.
+	 * @param bOffset The offset of <code>b</code>.
+	 * @param t The interpolation factor.
+	 * @param out The array to write the result to.
+	 * @param outOffset The offset into <code>out</code>.
+	 */
+	public static void slerp(float[] a, int aOffset, float[] b, int bOffset,
+			float t, float[] out, int outOffset) {
+		final float aw = a[aOffset], ax = a[aOffset + 1], ay = a[aOffset + 2], az = a[aOffset + 3];
+		float bw = b[bOffset], bx = b[bOffset + 1], by = b[bOffset + 2], bz = b[bOffset + 3];
+		float cos = aw * bw + ax * bx + ay * by + az * bz;
+		if (cos < 0) {
+			cos = -cos;
+			bw = -bw;
+			bx = -bx;
+			by = -by;
+			bz = -bz;
+		}
+		
+		final float sa, sb;
+		if (cos > 0.9995f) {
+			sa = 1 - t;
+			sb = t;
+		} else {
+			final double angle = Math.acos(cos);
+			final double sin = Math.sin(angle);
+			sa = (float) (Math.sin((1 - t) * angle) / sin);
+			sb = (float) (Math.sin(t * angle) / sin);
+		}
+		normalize(aw * sa + bw * sb, ax * sa + bx * sb, ay * sa + by * sb,
+				az * sa + bz * sb, out, outOffset);
+	}
+	
+	/**
+	 * Multiplies two quaternions stored in arrays as (w, x, y, z). The product
+	 * <code>a * b</code> rotates by <code>b</code>, then by <code>a</code>.
+	 * The output may be the same array as either input.
+	 * 
+	 * @param a The array containing the left quaternion.
+	 * @param aOffset The offset of <code>a</code>.
+	 * @param b The array containing the right quaternion.
+	 * @param bOffset The offset of <code>b</code>.
+	 * @param out The array to write the product to.
+	 * @param outOffset The offset into <code>out</code>.
+	 */
+	public static void multiply(float[] a, int aOffset, float[] b, int bOffset,
+			float[] out, int outOffset) {
+		final float aw = a[aOffset], ax = a[aOffset + 1], ay = a[aOffset + 2], az = a[aOffset + 3];
+		final float bw = b[bOffset], bx = b[bOffset + 1], by = b[bOffset + 2], bz = b[bOffset + 3];
+		out[outOffset] = aw * bw - ax * bx - ay * by - az * bz;
+		out[outOffset + 1] = aw * bx + ax * bw + ay * bz - az * by;
+		out[outOffset + 2] = aw * by - ax * bz + ay * bw + az * bx;
+		out[outOffset + 3] = aw * bz + ax * by - ay * bx + az * bw;
+	}
+	
+	/**
+	 * Writes the given quaternion to an array, scaled to unit length. A
+	 * zero-length quaternion is written as the identity.
+	 * 
+	 * @param w The w-component of the quaternion.
+	 * @param x The x-component of the quaternion.
+	 * @param y The y-component of the quaternion.
+	 * @param z The z-component of the quaternion.
+	 * @param out The array to write the normalized quaternion to.
+	 * @param outOffset The offset into <code>out</code>.
+	 */
+	public static void normalize(float w, float x, float y, float z, float[] out,
+			int outOffset) {
+		final float lengthSq = w * w + x * x + y * y + z * z;
+		if (lengthSq == 0) {
+			out[outOffset] = 1;
+			out[outOffset + 1] = 0;
+			out[outOffset + 2] = 0;
+			out[outOffset + 3] = 0;
+			return;
+		}
+		final float scale = (float) (1.0 / Math.sqrt(lengthSq));
+		out[outOffset] = w * scale;
+		out[outOffset + 1] = x * scale;
+		out[outOffset + 2] = y * scale;
+		out[outOffset + 3] = z * scale;
+	}
 }
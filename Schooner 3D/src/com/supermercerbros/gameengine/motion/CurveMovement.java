@@ -16,6 +16,7 @@
 
 package com.supermercerbros.gameengine.motion;
 
+import com.supermercerbros.gameengine.math.BezierCurve;
 import com.supermercerbros.gameengine.math.Curve;
 import com.supermercerbros.gameengine.math.MatrixUtils;
 import com.supermercerbros.gameengine.objects.GameObject;
@@ -48,6 +49,7 @@ public class CurveMovement implements Movement {
 			xRot = curves[index++];
 			yRot = curves[index++];
 			zRot = curves[index++];
+			BezierCurve.alignQuaternion(wRot, xRot, yRot, zRot);
 		} else {
 			wRot = null;
 			xRot = null;
@@ -92,7 +94,13 @@ public class CurveMovement implements Movement {
 			final float rotX = xRot.getInterpolation(framePoint);
 			final float rotY = yRot.getInterpolation(framePoint);
 			final float rotZ = zRot.getInterpolation(framePoint);
-			MatrixUtils.rotateQuaternionM(target.modelMatrix, 0, rotW, rotX, rotY, rotZ);
+			// The curves are interpolated componentwise, so normalize
+			final float lengthSq = rotW * rotW + rotX * rotX + rotY * rotY + rotZ * rotZ;
+			if (lengthSq > 0) {
+				final float scale = (float) (1.0 / Math.sqrt(lengthSq));
+				MatrixUtils.rotateQuaternionM(target.modelMatrix, 0, rotW * scale,
+						rotX * scale, rotY * scale, rotZ * scale);
+			}
 		}
 		
 		// Scale
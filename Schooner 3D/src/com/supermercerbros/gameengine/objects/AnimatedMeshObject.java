@@ -16,10 +16,13 @@
 
 package com.supermercerbros.gameengine.objects;
 
+import java.util.Arrays;
+
 import android.util.Log;
 
 import com.supermercerbros.gameengine.animation.AnimationData;
 import com.supermercerbros.gameengine.animation.MeshAnimation;
+import com.supermercerbros.gameengine.animation.MorphVertexModifier;
 import com.supermercerbros.gameengine.engine.Normals;
 import com.supermercerbros.gameengine.engine.shaders.Material;
 
@@ -38,19 +41,123 @@ public class AnimatedMeshObject extends GameObject {
 	 * transportation to the client.
 	 */
 	private MeshAnimation[] anims;
+	
+	// GPU morphing
+	private final MeshAnimation morphs;
+	private final float[] baseVerts;
+	private boolean vertsModified = false;
+	
+	/**
+	 * The offsets of the vertex positions of each morph target from the base
+	 * mesh, or null if this object is not morphed on the GPU.
+	 */
+	public final float[][] morphPositions;
+	
+	/**
+	 * The offsets of the vertex normals of each morph target from the base
+	 * mesh, or null if this object is not morphed on the GPU.
+	 */
+	public final float[][] morphNormals;
+	
+	/**
+	 * The current morph state, uploaded with the model matrix: the weights of
+	 * two morph targets, then their indices (see
+	 * {@link MorphVertexModifier}). Written by
+	 * {@link MeshAnimation#getMorphFrame(long, AnimationData, AnimatedMeshObject)}.
+	 */
+	public final float[] morphState;
 
 	public AnimatedMeshObject(float[] verts, short[] indices, float[] uvs,
 			float[] normals, Material mtl, short[][] doubles) {
 		super(verts, indices, normals, uvs, doubles, mtl);
 		data = new AnimationData();
+		morphs = null;
+		baseVerts = null;
+		morphPositions = null;
+		morphNormals = null;
+		morphState = null;
+	}
+	
+	/**
+	 * Creates an AnimatedMeshObject that plays the given MeshAnimation on the
+	 * GPU. The first keyframe is the base mesh, and the others are loaded
+	 * into the VBO once as morph targets, so playing the animation only
+	 * changes a uniform and two attribute pointers. Other MeshAnimations are
+	 * still played on the CPU.
+	 * 
+	 * @param indices
+	 *            The indices of the vertices for the triangles in this object.
+	 * @param uvs
+	 *            The UV texture coordinates (or colors) of the vertices.
+	 * @param mtl
+	 *            The Material to render the object with. Every object using it
+	 *            must be morphed with the same number of targets.
+	 * @param doubles
+	 *            The pairs of coincident vertices, or null.
+	 * @param morphs
+	 *            The MeshAnimation to play on the GPU. It must have at least
+	 *            2 keyframes.
+	 */
+	public AnimatedMeshObject(short[] indices, float[] uvs, Material mtl,
+			short[][] doubles, MeshAnimation morphs) {
+		super(morphs.getKeyframe(0).getVerts(), indices, null, uvs, doubles,
+				mtl);
+		data = new AnimationData();
+		
+		final int targetCount = morphs.getMorphTargetCount();
+		if (targetCount < 1) {
+			throw new IllegalArgumentException("A MeshAnimation played on the "
+					+ "GPU must have at least 2 keyframes.");
+		}
+		this.morphs = morphs;
+		this.baseVerts = verts.clone();
+		this.morphPositions = new float[targetCount][verts.length];
+		this.morphNormals = new float[targetCount][verts.length];
+		this.morphState = new float[MorphVertexModifier.STATE_SIZE];
+		
+		// Store the targets as offsets from the base mesh, and bound the
+		// object over every keyframe
+		final float[] allVerts = new float[verts.length * (targetCount + 1)];
+		System.arraycopy(baseVerts, 0, allVerts, 0, verts.length);
+		for (int i = 0; i < targetCount; i++) {
+			final float[] target = morphs.getKeyframe(i + 1).getVerts();
+			final float[] positions = morphPositions[i];
+			final float[] targetNormals = morphNormals[i];
+			Normals.calculate(target, indices, doubles, targetNormals);
+			for (int j = 0; j < verts.length; j++) {
+				positions[j] = target[j] - baseVerts[j];
+				targetNormals[j] -= normals[j];
+			}
+			System.arraycopy(target, 0, allVerts, verts.length * (i + 1),
+					verts.length);
+		}
+		updateBoundingSphere(allVerts);
+		
+		mtl.setVertexModifier(new MorphVertexModifier(targetCount));
 	}
 
 	@Override
 	public void drawVerts(long time) {
 		Log.d(TAG, "AnimatedMeshObject.drawVerts(" + time + ") was called.");
 		if (anim != null) {
-			anim.getFrame(time, data, this);
-			Normals.calculate(this);
+			if (anim == morphs) {
+				if (vertsModified) {
+					// Undo the last CPU animation
+					System.arraycopy(baseVerts, 0, verts, 0, verts.length);
+					Normals.calculate(this);
+					invalidateVerts();
+					vertsModified = false;
+				}
+				anim.getMorphFrame(time, data, this);
+			} else {
+				if (morphState != null) {
+					Arrays.fill(morphState, 0.0f);
+					vertsModified = true;
+				}
+				anim.getFrame(time, data, this);
+				Normals.calculate(this);
+				invalidateVerts();
+			}
 		}
 		super.drawVerts(time);
 
@@ -65,12 +172,34 @@ public class AnimatedMeshObject extends GameObject {
 		this.data.setLoop(loop);
 
 		this.data.setInitialState(verts);
+		if (anim == morphs && morphState != null) {
+			this.data.setInitialMorphState(morphState);
+		}
 		this.data.setCallTime(System.currentTimeMillis());
 	}
 
 	public void clearAnimation() {
 		this.anim = null;
 	}
+	
+	@Override
+	public boolean isAnimating(long time) {
+		return anim != null || super.isAnimating(time);
+	}
+	
+	@Override
+	public int getExtraFloatCount() {
+		return morphState != null ? morphState.length : 0;
+	}
+	
+	@Override
+	public void writeMatrices(float[] matrixArray) {
+		super.writeMatrices(matrixArray);
+		if (morphState != null) {
+			System.arraycopy(morphState, 0, matrixArray, 16,
+					morphState.length);
+		}
+	}
 
 	/**
 	 * Attaches the given {@link MeshAnimation}s to this AnimatedMeshObject.
@@ -16,42 +16,89 @@
 
 package com.supermercerbros.gameengine.objects;
 
+import java.util.Arrays;
+
 import android.util.Log;
 
+import com.supermercerbros.gameengine.Schooner3D;
 import com.supermercerbros.gameengine.armature.Action;
-import com.supermercerbros.gameengine.armature.ActionData;
+import com.supermercerbros.gameengine.armature.ActionBlender;
+import com.supermercerbros.gameengine.armature.AnimationLod;
 import com.supermercerbros.gameengine.armature.BinarySkeletalVertexModifier;
+import com.supermercerbros.gameengine.armature.BoneFormat;
+import com.supermercerbros.gameengine.armature.CpuSkinner;
 import com.supermercerbros.gameengine.armature.SkeletalVertexModifier;
 import com.supermercerbros.gameengine.armature.Skeleton;
+import com.supermercerbros.gameengine.armature.SkeletonEvaluator;
+import com.supermercerbros.gameengine.armature.SkinningMode;
 import com.supermercerbros.gameengine.engine.shaders.Material;
 import com.supermercerbros.gameengine.parsers.PreObjectData;
 
 public class BonedObject extends GameObject {
 	public static final int BONES_PER_VERTEX = 4;
 	
+	/**
+	 * The number of layers in each BonedObject's {@link ActionBlender}.
+	 */
+	public static final int ACTION_LAYERS = 4;
+	
 	public final float[] boneWeights;
 	public final byte[] boneIndices;
 	private final Skeleton skeleton;
+	private final int[] bonePalette;
+	private final BoneFormat boneFormat;
+	
+	private final ActionBlender actions;
 	
-	private Action currentAction;
-	private final ActionData actionData;
+	// Animation LOD
+	private AnimationLod lod = Schooner3D.animationLod;
+	private int lodFrame = System.identityHashCode(this) & 0xFF;
 	private final int boneCount;
 	
+	// CPU skinning
+	private final SkinningMode skinningMode;
+	private final int bonesPerVertex;
+	private float[] bindVerts, bindNormals;
+	private float[] skinnedVerts;
+	private float[] skinBones, lastSkinBones;
+	
 	public BonedObject(PreObjectData data, Material material, Skeleton skeleton) {
+		this(data, material, skeleton, SkinningMode.GPU);
+	}
+	
+	/**
+	 * @param data
+	 *            The mesh data, including bone indices and weights.
+	 * @param material
+	 *            The Material to render the object with. If
+	 *            <code>skinningMode</code> is {@link SkinningMode#CPU}, the
+	 *            Material must not be shared with GPU-skinned objects.
+	 * @param skeleton
+	 *            The Skeleton that deforms the mesh.
+	 * @param skinningMode
+	 *            Where to skin the mesh's vertices.
+	 */
+	public BonedObject(PreObjectData data, Material material,
+			Skeleton skeleton, SkinningMode skinningMode) {
 		super(data, material);
 		this.skeleton = skeleton;
+		this.skinningMode = skinningMode;
 		
 		final int vertCount = info.count;
-		boneCount = skeleton.boneCount();
-		actionData = new ActionData(boneCount);
+		bonePalette = data.bonePalette;
+		boneFormat = Schooner3D.boneFormat;
+		boneCount = bonePalette != null ? bonePalette.length : skeleton
+				.boneCount();
+		actions = new ActionBlender(skeleton, ACTION_LAYERS);
 		
 		// Localize arrays
 		final byte[][] localIndices = data.boneIndices;
 		final float[][] localWeights = data.boneWeights;
 		
-		// Get largest number of bone weights per vertex
-		int vertexWeightCount = 0;
-		for (int i = 0; i < vertCount; i++) {
+		// Get largest number of bone weights per vertex, unless the data
+		// specifies it (e.g. all sub-meshes of a split mesh)
+		int vertexWeightCount = data.weightCount;
+		for (int i = 0; data.weightCount == 0 && i < vertCount; i++) {
 			int weightCount = localWeights[i].length;
 			if (weightCount > vertexWeightCount) {
 				vertexWeightCount = weightCount;
@@ -70,8 +117,12 @@ public class BonedObject extends GameObject {
 				this.boneIndices[i] = localIndices[i][0];
 			}
 			
-			// Init VertexModifier and ActionData
-						material.setVertexModifier(new BinarySkeletalVertexModifier(boneCount));
+			// Init VertexModifier (the bone matrices come from the ActionBlender)
+			bonesPerVertex = 1;
+			if (skinningMode != SkinningMode.CPU) {
+				material.setVertexModifier(new BinarySkeletalVertexModifier(
+						boneCount, boneFormat));
+			}
 			
 		} else { // Multiple weights.
 			if (vertexWeightCount > BONES_PER_VERTEX) {
@@ -99,9 +150,24 @@ public class BonedObject extends GameObject {
 				}
 			}
 			
-			// Init VertexModifier and ActionData
-			material.setVertexModifier(new SkeletalVertexModifier(BONES_PER_VERTEX,
-					boneCount));
+			// Init VertexModifier (the bone matrices come from the ActionBlender)
+			bonesPerVertex = BONES_PER_VERTEX;
+			if (skinningMode != SkinningMode.CPU) {
+				material.setVertexModifier(new SkeletalVertexModifier(
+						BONES_PER_VERTEX, boneCount, boneFormat));
+			}
+		}
+		
+		// Init CPU skinning
+		if (skinningMode == SkinningMode.CPU) {
+			bindVerts = verts.clone();
+			bindNormals = normals.clone();
+		} else if (skinningMode == SkinningMode.CPU_BOUNDS) {
+			skinnedVerts = new float[verts.length];
+		}
+		if (skinningMode != SkinningMode.GPU) {
+			skinBones = new float[boneCount * 16];
+			lastSkinBones = new float[boneCount * 16];
 		}
 	}
 	
@@ -114,23 +180,143 @@ public class BonedObject extends GameObject {
 	 *            The duration of the Action, in milliseconds.
 	 */
 	public void setAction(Action action, long duration) {
+		crossfadeAction(action, duration, 0);
+	}
+	
+	/**
+	 * Crossfades from the current Action of this BonedObject to the given
+	 * Action.
+	 * 
+	 * @param action
+	 *            The Action to start.
+	 * @param duration
+	 *            The duration of the Action, in milliseconds.
+	 * @param fadeTime
+	 *            The duration of the crossfade, in milliseconds.
+	 */
+	public void crossfadeAction(Action action, long duration, long fadeTime) {
 		if (action != null) {
 			final long time = System.currentTimeMillis();
-			currentAction = action;
-			actionData.writeState(time, time, duration, skeleton);
-			// TODO: time, time? (add delay support to this method and to
-			// movements)
+			actions.play(0, action, time, duration, fadeTime);
+			// TODO: add delay support to this method and to movements
 			super.startMovement(action.movement, time, duration);
 		} else {
 			throw new IllegalArgumentException("action == null");
 		}
 	}
 	
+	/**
+	 * Returns the ActionBlender that poses this BonedObject's Skeleton.
+	 * {@link #setAction(Action, long)} and
+	 * {@link #crossfadeAction(Action, long, long)} play on layer 0; use the
+	 * other layers for additive or masked Actions.
+	 * 
+	 * @return The ActionBlender of this BonedObject.
+	 */
+	public ActionBlender getActions() {
+		return actions;
+	}
+	
+	/**
+	 * Sets the animation level-of-detail policy of this BonedObject.
+	 * 
+	 * @param lod
+	 *            The AnimationLod to use, or null to update the Skeleton every
+	 *            frame.
+	 */
+	public void setAnimationLod(AnimationLod lod) {
+		this.lod = lod;
+	}
+	
+	@Override
+	public boolean usesScreenSize() {
+		return lod != null;
+	}
+	
 	@Override
 	public void drawVerts(long time) {
-		if (currentAction != null) {
-			currentAction.update(actionData, skeleton, time);
+		final AnimationLod lod = this.lod;
+		if (lod == null) {
+			SkeletonEvaluator.INSTANCE.add(actions, Integer.MAX_VALUE);
+			return;
 		}
+		
+		// Freeze the pose while the object can't be seen
+		final float screenSize = getScreenSize();
+		if (screenSize < 0 || !isVisible()) {
+			return;
+		}
+		
+		// The frame counter starts at a per-object offset so that objects at
+		// the same level don't all update on the same frame
+		final int level = lod.getLevel(screenSize);
+		if (++lodFrame % lod.getUpdateInterval(level) != 0) {
+			return;
+		}
+		SkeletonEvaluator.INSTANCE.add(actions, lod.getMaxDepth(level));
+	}
+	
+	/**
+	 * Skins the vertices on the CPU if the Skeleton has moved. This happens in
+	 * drawMatrix() rather than drawVerts() so that every BonedObject sharing
+	 * the Skeleton has updated it first.
+	 */
+	@Override
+	public void drawMatrix(long time) {
+		super.drawMatrix(time);
+		if (skinningMode == SkinningMode.GPU) {
+			return;
+		}
+		
+		skeleton.writeMatrices(skinBones, 0, bonePalette,
+				BoneFormat.MATRIX_4X4);
+		if (Arrays.equals(skinBones, lastSkinBones)) {
+			return;
+		}
+		System.arraycopy(skinBones, 0, lastSkinBones, 0, skinBones.length);
+		
+		final float[] weights = bonesPerVertex == 1 ? null : boneWeights;
+		if (skinningMode == SkinningMode.CPU) {
+			CpuSkinner.INSTANCE.skin(skinBones, bindVerts, bindNormals,
+					boneIndices, weights, bonesPerVertex, verts, normals);
+			invalidateVerts();
+			updateBoundingSphere();
+		} else {
+			CpuSkinner.INSTANCE.skin(skinBones, verts, null, boneIndices,
+					weights, bonesPerVertex, skinnedVerts, null);
+			updateBoundingSphere(skinnedVerts);
+		}
+	}
+	
+	/**
+	 * Returns the skinned vertex positions as of the last frame, for collision
+	 * or picking. These are only computed if the SkinningMode is not
+	 * {@link SkinningMode#GPU}.
+	 * 
+	 * @return The skinned positions (xyz), or null if the mesh is skinned on
+	 *         the GPU only.
+	 */
+	public float[] getSkinnedVerts() {
+		switch (skinningMode) {
+		case CPU:
+			return verts;
+		case CPU_BOUNDS:
+			return skinnedVerts;
+		default:
+			return null;
+		}
+	}
+	
+	/**
+	 * @return The SkinningMode of this BonedObject.
+	 */
+	public SkinningMode getSkinningMode() {
+		return skinningMode;
+	}
+	
+	@Override
+	public boolean isAnimating(long time) {
+		return actions.isAnimating(time) || super.isAnimating(time);
 	}
 	
 	@Override
@@ -138,9 +324,19 @@ public class BonedObject extends GameObject {
 		return boneCount;
 	}
 	
+	@Override
+	public int getExtraFloatCount() {
+		if (skinningMode == SkinningMode.CPU) {
+			return 0; // Bones are not uploaded
+		}
+		return boneCount * boneFormat.floatsPerBone;
+	}
+	
 	@Override
 	public void writeMatrices(float[] matrixArray) {
 		super.writeMatrices(matrixArray);
-		skeleton.writeMatrices(matrixArray, 16);
+		if (skinningMode != SkinningMode.CPU) {
+			skeleton.writeMatrices(matrixArray, 16, bonePalette, boneFormat);
+		}
 	}
 }
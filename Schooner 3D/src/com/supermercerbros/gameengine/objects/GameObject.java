@@ -20,6 +20,7 @@ import java.util.HashMap;
 import java.util.LinkedList;
 
 import android.opengl.Matrix;
+import android.util.FloatMath;
 
 import com.supermercerbros.gameengine.collision.Bounds;
 import com.supermercerbros.gameengine.collision.Collider;
@@ -92,6 +93,8 @@ public class GameObject implements Collider {
 	 */
 	protected final MovementData motionData;
 	
+	private float screenSize = 1;
+	
 	/**
 	 * 
 	 * @param verts
@@ -144,9 +147,13 @@ public class GameObject implements Collider {
 		this.verts = data.verts;
 		this.indices = data.indices;
 		this.mtl = data.uvs;
-		this.normals = new float[verts.length];
 		this.doubles = data.doubles;
-		Normals.calculate(this);
+		if (data.normals != null) {
+			this.normals = data.normals;
+		} else {
+			this.normals = new float[verts.length];
+			Normals.calculate(this);
+		}
 		
 		// Instance information
 		this.parent = data.parent;
@@ -266,6 +273,39 @@ public class GameObject implements Collider {
 		// Subclasses can do something here.
 	}
 	
+	/**
+	 * Returns true if this GameObject needs to know its size on screen (see
+	 * {@link #getScreenSize()}). The Engine only estimates it for objects
+	 * that do.
+	 * 
+	 * @return false, unless overridden.
+	 */
+	public boolean usesScreenSize() {
+		return false;
+	}
+	
+	/**
+	 * Called by the Engine before {@link #drawVerts(long)} if
+	 * {@link #usesScreenSize()} returns true.
+	 * 
+	 * @param size
+	 *            The estimated height of this GameObject's bounding sphere on
+	 *            screen, as a fraction of the viewport height, or -1 if it is
+	 *            off-screen.
+	 */
+	public void setScreenSize(float size) {
+		this.screenSize = size;
+	}
+	
+	/**
+	 * @return The size of this GameObject on screen as of the current frame,
+	 *         as a fraction of the viewport height, or -1 if it is off-screen.
+	 * @see #usesScreenSize()
+	 */
+	public float getScreenSize() {
+		return screenSize;
+	}
+	
 	/**
 	 * @return <code>{@link #info}.visible</code>
 	 */
@@ -302,9 +342,31 @@ public class GameObject implements Collider {
 		}
 	}
 	
+	/**
+	 * Used by the Engine to decide whether it can stop producing frames (see
+	 * {@link com.supermercerbros.gameengine.Schooner3D#renderOnDemand}).
+	 * Subclasses that animate themselves should override this.
+	 * 
+	 * @param time
+	 *            The time of the frame that was just calculated, in
+	 *            milliseconds.
+	 * @return true if this GameObject will look different in the next frame.
+	 */
+	public boolean isAnimating(long time) {
+		synchronized (motionData) {
+			return motion != null;
+		}
+	}
+	
 	private final HashMap<Collision, Collider> collisions;
 	private Bounds bounds;
 	
+	/**
+	 * The object-space bounding sphere (center and radius), computed from the
+	 * vertices when first needed.
+	 */
+	private float[] localSphere;
+	
 	@Override
 	public Bounds getBounds() {
 		return bounds;
@@ -329,6 +391,18 @@ public class GameObject implements Collider {
 		collisions.put(collision, other);
 	}
 	
+	/**
+	 * Returns the number of floats written by {@link #writeMatrices(float[])}
+	 * after the model matrix. The default implementation returns 16 times
+	 * {@link #getExtraMatrixCount()}; override this if the extra data is not
+	 * stored as 4x4 matrices.
+	 * 
+	 * @return The number of extra floats used by this GameObject.
+	 */
+	public int getExtraFloatCount() {
+		return 16 * getExtraMatrixCount();
+	}
+	
 	/**
 	 * Returns the number of extra matrices used by this GameObject. The default
 	 * implementation returns zero.
@@ -339,6 +413,86 @@ public class GameObject implements Collider {
 		return 0;
 	}
 	
+	/**
+	 * Writes the world-space bounding sphere of this GameObject to the given
+	 * array. The object-space sphere is computed from {@link #verts} the first
+	 * time this is called; subclasses whose vertices move far from their
+	 * original positions should call {@link #updateBoundingSphere()}.
+	 * 
+	 * @param out
+	 *            An array of at least 4 floats that receives the center (x,
+	 *            y, z) and radius of the sphere.
+	 */
+	public void getBoundingSphere(float[] out) {
+		if (localSphere == null) {
+			updateBoundingSphere();
+		}
+		final float[] m = modelMatrix;
+		final float x = localSphere[0], y = localSphere[1], z = localSphere[2];
+		out[0] = m[0] * x + m[4] * y + m[8] * z + m[12];
+		out[1] = m[1] * x + m[5] * y + m[9] * z + m[13];
+		out[2] = m[2] * x + m[6] * y + m[10] * z + m[14];
+		
+		// Scale the radius by the largest axis scale
+		final float scaleSq = Math.max(m[0] * m[0] + m[1] * m[1] + m[2] * m[2],
+				Math.max(m[4] * m[4] + m[5] * m[5] + m[6] * m[6],
+						m[8] * m[8] + m[9] * m[9] + m[10] * m[10]));
+		out[3] = localSphere[3] * FloatMath.sqrt(scaleSq);
+	}
+	
+	/**
+	 * Recomputes the object-space bounding sphere from {@link #verts}.
+	 */
+	protected void updateBoundingSphere() {
+		updateBoundingSphere(verts);
+	}
+	
+	/**
+	 * Recomputes the object-space bounding sphere from the given vertices
+	 * (i.e. skinned or animated positions that are not stored in
+	 * {@link #verts}). Must be called on the Engine thread.
+	 * 
+	 * @param verts
+	 *            The vertex positions (xyz).
+	 */
+	protected void updateBoundingSphere(float[] verts) {
+		float minX = Float.MAX_VALUE, minY = Float.MAX_VALUE, minZ = Float.MAX_VALUE;
+		float maxX = -Float.MAX_VALUE, maxY = -Float.MAX_VALUE, maxZ = -Float.MAX_VALUE;
+		for (int i = 0; i + 2 < verts.length; i += 3) {
+			minX = Math.min(minX, verts[i]);
+			maxX = Math.max(maxX, verts[i]);
+			minY = Math.min(minY, verts[i + 1]);
+			maxY = Math.max(maxY, verts[i + 1]);
+			minZ = Math.min(minZ, verts[i + 2]);
+			maxZ = Math.max(maxZ, verts[i + 2]);
+		}
+		final float[] sphere = localSphere != null ? localSphere : new float[4];
+		if (verts.length >= 3) {
+			sphere[0] = (minX + maxX) / 2;
+			sphere[1] = (minY + maxY) / 2;
+			sphere[2] = (minZ + maxZ) / 2;
+			float radiusSq = 0;
+			for (int i = 0; i + 2 < verts.length; i += 3) {
+				final float dx = verts[i] - sphere[0];
+				final float dy = verts[i + 1] - sphere[1];
+				final float dz = verts[i + 2] - sphere[2];
+				radiusSq = Math.max(radiusSq, dx * dx + dy * dy + dz * dz);
+			}
+			sphere[3] = FloatMath.sqrt(radiusSq);
+		}
+		localSphere = sphere;
+	}
+	
+	/**
+	 * Marks this GameObject's vertices as changed, so that the Engine loads
+	 * them into the VBO again. Must be called on the Engine thread.
+	 */
+	protected void invalidateVerts() {
+		final int[] bufferLocations = info.bufferLocations;
+		bufferLocations[0] = -1;
+		bufferLocations[2] = -1;
+	}
+	
 	public void writeMatrices(float[] matrixArray){
 		System.arraycopy(modelMatrix, 0, matrixArray, 0, 16);
 	}
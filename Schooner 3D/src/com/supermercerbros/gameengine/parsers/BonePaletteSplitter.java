@@ -0,0 +1,238 @@
+/*
+ * Copyright 2013 Dan Mercer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.supermercerbros.gameengine.parsers;
+
+import java.util.Arrays;
+import java.util.LinkedList;
+
+import com.supermercerbros.gameengine.engine.Normals;
+
+/**
+ * Splits skinned mesh data into sub-meshes that each reference no more than a
+ * given number of bones. Each sub-mesh gets a bone palette (see
+ * {@link PreObjectData#bonePalette}) and its bone indices are remapped into
+ * that palette, so its shader only needs a <code>u_matrices</code> array the
+ * size of the palette rather than the whole Skeleton.
+ */
+public class BonePaletteSplitter {
+
+	/**
+	 * Splits the given mesh data. Triangles are packed greedily: each
+	 * sub-mesh takes every remaining triangle (in order) whose bones still
+	 * fit in its palette. Vertices shared by triangles in different sub-meshes
+	 * are duplicated. All palettes are padded to the same length so the
+	 * sub-meshes can share a Material.
+	 *
+	 * @param data
+	 *            The PreObjectData to split. It must have bone indices and
+	 *            weights.
+	 * @param maxBones
+	 *            The maximum number of bones per sub-mesh.
+	 * @return A LinkedList of the sub-meshes' PreObjectData.
+	 * @throws IllegalArgumentException
+	 *             If a single triangle references more than
+	 *             <code>maxBones</code> bones.
+	 */
+	public static LinkedList<PreObjectData> split(PreObjectData data,
+			int maxBones) {
+		if (data.boneIndices == null || data.boneWeights == null) {
+			throw new IllegalArgumentException("data has no bone weights");
+		}
+		final short[] indices = data.indices;
+		final int triCount = indices.length / 3;
+		final int vertCount = data.verts.length / 3;
+
+		// Calculate normals once for the whole mesh so that they are not
+		// split at the seams
+		final float[] normals = new float[data.verts.length];
+		Normals.calculate(data.verts, indices, data.doubles, normals);
+
+		int weightCount = 0;
+		for (float[] weights : data.boneWeights) {
+			weightCount = Math.max(weightCount, weights.length);
+		}
+
+		final boolean[] used = new boolean[triCount];
+		final boolean[] inPalette = new boolean[256];
+		final int[] triBones = new int[12];
+		final LinkedList<int[]> palettes = new LinkedList<int[]>();
+		final LinkedList<int[]> triLists = new LinkedList<int[]>();
+		int remaining = triCount;
+		int paletteLength = 0;
+
+		while (remaining > 0) {
+			Arrays.fill(inPalette, false);
+			final int[] palette = new int[maxBones];
+			final int[] tris = new int[remaining];
+			int paletteSize = 0, subTriCount = 0;
+
+			for (int tri = 0; tri < triCount; tri++) {
+				if (used[tri]) {
+					continue;
+				}
+
+				// Find the bones of this triangle not yet in the palette
+				int newBones = 0;
+				for (int corner = 0; corner < 3; corner++) {
+					final int vert = indices[tri * 3 + corner];
+					final byte[] vertIndices = data.boneIndices[vert];
+					final float[] vertWeights = data.boneWeights[vert];
+					for (int j = 0; j < vertIndices.length && j < 4; j++) {
+						final int bone = vertIndices[j] & 0xFF;
+						if ((weightCount == 1 || vertWeights[j] != 0)
+								&& !inPalette[bone]
+								&& !contains(triBones, newBones, bone)) {
+							triBones[newBones++] = bone;
+						}
+					}
+				}
+
+				if (paletteSize + newBones > maxBones) {
+					if (paletteSize == 0) {
+						throw new IllegalArgumentException("A triangle uses "
+								+ newBones + " bones, more than maxBones ("
+								+ maxBones + ")");
+					}
+					continue;
+				}
+				for (int i = 0; i < newBones; i++) {
+					inPalette[triBones[i]] = true;
+					palette[paletteSize++] = triBones[i];
+				}
+				tris[subTriCount++] = tri;
+				used[tri] = true;
+				remaining--;
+			}
+
+			palettes.add(Arrays.copyOf(palette, Math.max(1, paletteSize)));
+			triLists.add(Arrays.copyOf(tris, subTriCount));
+			paletteLength = Math.max(paletteLength, paletteSize);
+		}
+
+		final LinkedList<PreObjectData> subMeshes = new LinkedList<PreObjectData>();
+		final int[] vertMap = new int[vertCount];
+		while (!palettes.isEmpty()) {
+			final int[] palette = palettes.removeFirst();
+			final int[] paddedPalette = Arrays.copyOf(palette,
+					Math.max(1, paletteLength));
+			for (int i = palette.length; i < paddedPalette.length; i++) {
+				paddedPalette[i] = palette[0];
+			}
+			subMeshes.add(subMesh(data, normals, triLists.removeFirst(),
+					paddedPalette, weightCount, vertMap));
+		}
+		return subMeshes;
+	}
+
+	private static PreObjectData subMesh(PreObjectData data, float[] normals,
+			int[] tris, int[] palette, int weightCount, int[] vertMap) {
+		final short[] indices = data.indices;
+
+		// Map the original vertices to the sub-mesh's vertices
+		Arrays.fill(vertMap, -1);
+		int count = 0;
+		final short[] subIndices = new short[tris.length * 3];
+		for (int i = 0; i < tris.length; i++) {
+			for (int corner = 0; corner < 3; corner++) {
+				final int vert = indices[tris[i] * 3 + corner];
+				if (vertMap[vert] == -1) {
+					vertMap[vert] = count++;
+				}
+				subIndices[i * 3 + corner] = (short) vertMap[vert];
+			}
+		}
+
+		final float[] verts = new float[count * 3];
+		final float[] subNormals = new float[count * 3];
+		final float[] uvs = data.uvs != null ? new float[count * 2] : null;
+		final byte[][] boneIndices = new byte[count][];
+		final float[][] boneWeights = new float[count][];
+		for (int vert = 0; vert < vertMap.length; vert++) {
+			final int newVert = vertMap[vert];
+			if (newVert == -1) {
+				continue;
+			}
+			System.arraycopy(data.verts, vert * 3, verts, newVert * 3, 3);
+			System.arraycopy(normals, vert * 3, subNormals, newVert * 3, 3);
+			if (uvs != null) {
+				System.arraycopy(data.uvs, vert * 2, uvs, newVert * 2, 2);
+			}
+
+			final byte[] vertIndices = data.boneIndices[vert];
+			final float[] vertWeights = data.boneWeights[vert];
+			boneIndices[newVert] = new byte[vertIndices.length];
+			boneWeights[newVert] = new float[vertIndices.length];
+			for (int j = 0; j < vertIndices.length; j++) {
+				final int bone = vertIndices[j] & 0xFF;
+				final int local = indexOf(palette, bone);
+				if (local != -1) {
+					boneIndices[newVert][j] = (byte) local;
+					boneWeights[newVert][j] = vertWeights[j];
+				}
+			}
+		}
+
+		final short[][] doubles = subDoubles(data.doubles, vertMap);
+		final PreObjectData subMesh = new PreObjectData(verts, subIndices,
+				uvs, doubles, boneIndices, boneWeights);
+		subMesh.normals = subNormals;
+		subMesh.bonePalette = palette;
+		subMesh.weightCount = weightCount;
+		subMesh.matrix = data.matrix;
+		return subMesh;
+	}
+
+	private static short[][] subDoubles(short[][] doubles, int[] vertMap) {
+		if (doubles == null) {
+			return null;
+		}
+		int pairCount = 0;
+		for (int i = 0; i < doubles[0].length; i++) {
+			if (vertMap[doubles[0][i]] != -1 && vertMap[doubles[1][i]] != -1) {
+				pairCount++;
+			}
+		}
+		final short[][] subDoubles = new short[2][pairCount];
+		int pair = 0;
+		for (int i = 0; i < doubles[0].length; i++) {
+			final int a = vertMap[doubles[0][i]], b = vertMap[doubles[1][i]];
+			if (a != -1 && b != -1) {
+				subDoubles[0][pair] = (short) a;
+				subDoubles[1][pair] = (short) b;
+				pair++;
+			}
+		}
+		return subDoubles;
+	}
+
+	private static boolean contains(int[] array, int length, int value) {
+		for (int i = 0; i < length; i++) {
+			if (array[i] == value) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static int indexOf(int[] array, int value) {
+		for (int i = 0; i < array.length; i++) {
+			if (array[i] == value) {
+				return i;
+			}
+		}
+		return -1;
+	}
+}
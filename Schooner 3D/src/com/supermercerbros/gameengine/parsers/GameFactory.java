@@ -18,14 +18,17 @@ package com.supermercerbros.gameengine.parsers;
 
 import java.io.IOException;
 import java.util.HashMap;
+import java.util.LinkedList;
 
 import android.content.Context;
 import android.content.res.AssetManager;
 import android.content.res.Resources;
 import android.util.Log;
 
+import com.supermercerbros.gameengine.Schooner3D;
 import com.supermercerbros.gameengine.armature.Action;
 import com.supermercerbros.gameengine.armature.Skeleton;
+import com.supermercerbros.gameengine.armature.SkinningMode;
 import com.supermercerbros.gameengine.engine.shaders.Material;
 import com.supermercerbros.gameengine.motion.CurveMovement;
 import com.supermercerbros.gameengine.objects.BonedObject;
@@ -36,6 +39,23 @@ import com.supermercerbros.gameengine.objects.GameObject;
  */
 public class GameFactory {
 	private static final String TAG = GameFactory.class.getSimpleName();
+	
+	/**
+	 * The number of vertex uniform vectors GLES 2.0 guarantees.
+	 */
+	private static final int MIN_VERTEX_UNIFORM_VECTORS = 128;
+	
+	/**
+	 * The vertex uniform vectors used by everything but bones and local
+	 * lights: u_viewProj, u_model, u_lightVec and u_lightColor.
+	 */
+	private static final int BASE_UNIFORM_VECTORS = 10;
+	
+	/**
+	 * The vertex uniform vectors used by each local light: u_lightPos,
+	 * u_lightColors and u_lightSpot.
+	 */
+	private static final int LIGHT_UNIFORM_VECTORS = 3;
 	private final AssetManager am;
 	private final Resources res;
 
@@ -43,6 +63,7 @@ public class GameFactory {
 	private PreObjectData data;
 	private Skeleton skeleton;
 	private Material material;
+	private SkinningMode skinningMode = SkinningMode.GPU;
 
 	/**
 	 * Creates a new GameFactory for the given Context.
@@ -101,6 +122,17 @@ public class GameFactory {
 		this.material = material;
 	}
 
+	/**
+	 * Sets where the vertices of baked BonedObjects are skinned. The default
+	 * is {@link SkinningMode#GPU}.
+	 * 
+	 * @param mode
+	 *            The SkinningMode to use.
+	 */
+	public void setSkinningMode(SkinningMode mode) {
+		this.skinningMode = mode;
+	}
+
 	/**
 	 * Bakes the data in the GameFactory into a GameObject.
 	 * 
@@ -111,7 +143,8 @@ public class GameFactory {
 	public GameObject bakeGameObject() {
 		if (skeleton != null && data.boneIndices != null) {
 			Log.i(TAG, "Baking BonedObject");
-			BonedObject object = new BonedObject(data, material, skeleton);
+			BonedObject object = new BonedObject(data, material, skeleton,
+					skinningMode);
 			material.makeProgram();
 			return object;
 		} else {
@@ -128,6 +161,62 @@ public class GameFactory {
 		}
 	}
 
+	/**
+	 * Returns the number of bones one skinned draw may use. This is
+	 * {@link Schooner3D#maxBones}, reduced if needed so that the bones and
+	 * the uniforms of {@link Schooner3D#maxLights} local lights fit in the
+	 * vertex uniform vectors GLES 2.0 guarantees. The lights are counted even
+	 * if the Material turns out not to use them, since its Program is made
+	 * after the mesh is split.
+	 */
+	private static int getMaxBones() {
+		final int free = MIN_VERTEX_UNIFORM_VECTORS - BASE_UNIFORM_VECTORS
+				- LIGHT_UNIFORM_VECTORS * Math.max(Schooner3D.maxLights, 0);
+		final int fit = free / Schooner3D.boneFormat.vectorsPerBone();
+		if (fit < Schooner3D.maxBones) {
+			Log.w(TAG, "Only " + fit + " bones fit with " + Schooner3D.maxLights
+					+ " local lights; using that instead of maxBones ("
+					+ Schooner3D.maxBones + ")");
+			return Math.max(fit, 1);
+		}
+		return Schooner3D.maxBones;
+	}
+
+	/**
+	 * Bakes the data in the GameFactory into one or more GameObjects. If a
+	 * skeleton was provided and it has more bones than fit in one draw (see
+	 * {@link #getMaxBones()}), the mesh is split into several {@link BonedObject}s (see
+	 * {@link BonePaletteSplitter}) that share the skeleton and model matrix,
+	 * so that each one's shader stays within the device's uniform limits.
+	 * Actions should be set on the first BonedObject only.
+	 * 
+	 * @return A LinkedList of the GameObjects created from the data.
+	 */
+	public LinkedList<GameObject> bakeGameObjects() {
+		final LinkedList<GameObject> objects = new LinkedList<GameObject>();
+		final int maxBones = getMaxBones();
+		if (skeleton == null || data.boneIndices == null
+				|| skeleton.boneCount() <= maxBones) {
+			objects.add(bakeGameObject());
+			return objects;
+		}
+		
+		final LinkedList<PreObjectData> subMeshes = BonePaletteSplitter.split(
+				data, maxBones);
+		Log.i(TAG, "Baking BonedObject as " + subMeshes.size()
+				+ " sub-meshes");
+		float[] matrix = data.matrix;
+		for (PreObjectData subMesh : subMeshes) {
+			subMesh.matrix = matrix;
+			final BonedObject object = new BonedObject(subMesh, material,
+					skeleton, skinningMode);
+			matrix = object.modelMatrix;
+			objects.add(object);
+		}
+		material.makeProgram();
+		return objects;
+	}
+
 	public HashMap<String, Action> getActions() {
 		return actions;
 	}
@@ -137,6 +226,7 @@ public class GameFactory {
 		material = null;
 		actions = null;
 		skeleton = null;
+		skinningMode = SkinningMode.GPU;
 	}
 
 	/**
@@ -33,6 +33,27 @@ public class PreObjectData {
 	
 	public float[] matrix;
 	
+	/**
+	 * The vertex normals, or null if they should be calculated from the
+	 * triangles. Set by {@link BonePaletteSplitter} so that normals stay
+	 * smooth across the seams between sub-meshes.
+	 */
+	public float[] normals;
+	
+	/**
+	 * The Skeleton indices of the bones referenced by <code>boneIndices</code>
+	 * , or null if <code>boneIndices</code> refer to the Skeleton directly.
+	 */
+	public int[] bonePalette;
+	
+	/**
+	 * The number of bone weights per vertex to skin with, or 0 if it should be
+	 * the largest number of weights of any vertex. Set by
+	 * {@link BonePaletteSplitter} so that every sub-mesh of a mesh is skinned
+	 * the same way.
+	 */
+	public int weightCount = 0;
+	
 	public PreObjectData(float[] verts, short[] indices, float[] uvs,
 			short[][] doubles, byte[][] boneIndices, float[][] boneWeights) {
 		this.verts = verts;
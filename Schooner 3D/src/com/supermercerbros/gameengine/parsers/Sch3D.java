@@ -26,9 +26,11 @@ import java.util.LinkedList;
 import android.util.Log;
 import android.util.SparseArray;
 
+import com.supermercerbros.gameengine.Schooner3D;
 import com.supermercerbros.gameengine.armature.Action;
 import com.supermercerbros.gameengine.armature.Bone;
 import com.supermercerbros.gameengine.armature.Skeleton;
+import com.supermercerbros.gameengine.math.BakedCurve;
 import com.supermercerbros.gameengine.math.BezierCurve;
 import com.supermercerbros.gameengine.math.Curve;
 import com.supermercerbros.gameengine.motion.CurveMovement;
@@ -248,6 +250,7 @@ public class Sch3D {
 				
 				// Parse Action
 				SparseArray<Curve> curves = new SparseArray<Curve>();
+				float lastFrame = 0;
 				for (byte i = 0; i < boneCount; i++) {
 					// For each bone
 					final int offset = i * 4;
@@ -263,10 +266,17 @@ public class Sch3D {
 								values[index] = data.readFloatDebug();
 							}
 							curves.append(offset + j, new BezierCurve(frames, values));
+							lastFrame = Math.max(lastFrame, frames[pointCount - 1]);
 						}
 					}
 				}
-				actions.put(name, new Action(movement, curves));
+				final Action action = new Action(movement, curves);
+				if (Schooner3D.animationBakeRate > 0) {
+					actions.put(name, action.bake(boneCount,
+							bakeSampleCount(lastFrame)));
+				} else {
+					actions.put(name, action);
+				}
 			}
 			data.close();
 			gf.setActions(actions);
@@ -277,6 +287,35 @@ public class Sch3D {
 		}
 	}
 
+	/**
+	 * Creates a BezierCurve from the given points, baking it if
+	 * {@link Schooner3D#animationBakeRate} is set.
+	 */
+	private static Curve newCurve(float[] frames, float[] values) {
+		return bakeCurve(new BezierCurve(frames, values),
+				frames[frames.length - 1]);
+	}
+	
+	/**
+	 * Bakes the given curve, which lasts <code>lastFrame</code> frames, if
+	 * {@link Schooner3D#animationBakeRate} is set.
+	 */
+	private static Curve bakeCurve(BezierCurve curve, float lastFrame) {
+		if (Schooner3D.animationBakeRate > 0) {
+			return new BakedCurve(curve, bakeSampleCount(lastFrame));
+		}
+		return curve;
+	}
+	
+	/**
+	 * @return The number of samples to bake a curve lasting the given number
+	 *         of frames with.
+	 */
+	private static int bakeSampleCount(float frames) {
+		return Math.max(2,
+				(int) Math.ceil(frames * Schooner3D.animationBakeRate) + 1);
+	}
+
 	/**
 	 * @param data
 	 * @return
@@ -325,7 +364,7 @@ public class Sch3D {
 							frames[pointIndex] = data.readFloatDebug();
 							values[pointIndex] = data.readFloatDebug();
 						}
-						curves[curveIndex + i] = new BezierCurve(frames, values);
+						curves[curveIndex + i] = newCurve(frames, values);
 					}
 				} else {
 					curves[curveIndex] = null;
@@ -340,6 +379,8 @@ public class Sch3D {
 				final int pointCount = (data.readByteDebug() & 0xFFFF)* 3 - 2;
 				if (pointCount > 0) {
 					Log.d(TAG, "Rotation curves have "+ pointCount + " points.");
+					final BezierCurve[] rotation = new BezierCurve[4];
+					float lastFrame = 0;
 					for (int i = 0; i < 4; i++) { 
 						float[] frames = new float[pointCount];
 						float[] values = new float[pointCount];
@@ -350,7 +391,16 @@ public class Sch3D {
 							Log.d(TAG, "(" + frames[pointIndex] + ", " + values[pointIndex] + ")");
 						}
 						
-						curves[curveIndex + i] = new BezierCurve(frames, values);
+						rotation[i] = new BezierCurve(frames, values);
+						lastFrame = frames[pointCount - 1];
+					}
+					
+					// Align the keyframes before baking, since baked curves
+					// can't be aligned
+					BezierCurve.alignQuaternion(rotation[0], rotation[1],
+							rotation[2], rotation[3]);
+					for (int i = 0; i < 4; i++) {
+						curves[curveIndex + i] = bakeCurve(rotation[i], lastFrame);
 					}
 				} else {
 					curves[curveIndex] = null;
@@ -376,7 +426,7 @@ public class Sch3D {
 						Log.d(TAG, "(" + frames[pointIndex] + ", " + values[pointIndex] + ")");
 					}
 
-					curves[curveIndex] = new BezierCurve(frames, values);
+					curves[curveIndex] = newCurve(frames, values);
 				} else {
 					curves[curveIndex] = null;
 					Log.d(TAG, "Scale curve (uniform) has 0 points.");
@@ -397,7 +447,7 @@ public class Sch3D {
 							Log.d(TAG, "(" + frames[pointIndex] + ", " + values[pointIndex] + ")");
 						}
 						
-						curves[curveIndex + i] = new BezierCurve(frames, values);
+						curves[curveIndex + i] = newCurve(frames, values);
 					}
 				} else {
 					curves[curveIndex] = null;
@@ -31,61 +31,129 @@ import com.supermercerbros.gameengine.engine.shaders.Program;
 import com.supermercerbros.gameengine.engine.shaders.ShaderLib;
 
 /**
- * Represents a compositor that can perform post-processing on the scene by
- * rendering it off-screen and then rendering that (with any changes) to a
- * full-screen quad.
+ * Represents a post-processing pass that renders the output of the previous
+ * pass (or the scene) to a full-screen quad, with any changes. Compositors are
+ * chained with {@link GameRenderer#addCompositor(Compositor)}; every pass but
+ * the last renders to a pooled offscreen target, which may be smaller than
+ * the screen (see {@link #setScale(float)}).
+ * <p>
+ * The fragment shader samples the previous pass's output with the
+ * <code>us_image</code> sampler. It can also sample the original scene with
+ * the <code>us_scene</code> sampler.
  */
 public abstract class Compositor {
 	private static final String TAG = "Compositor";
 
 	public static final String SAMPLER_UNIFORM_NAME = "us_image";
+	public static final String SCENE_SAMPLER_UNIFORM_NAME = "us_scene";
 
-	private int texture = -1;
-	private int renderbuffer = -1;
-	private int framebuffer = -1;
 	private int arrayBuffer = -1;
 
 	private Program p;
+	private int imageLocation;
+	private int sceneLocation;
 
-	public void onSurfaceChanged(int width, int height) {
-		int[] handle = new int[1];
+	private float scale = 1.0f;
+	private int format = GL_RGB;
+
+	// A chain containing only this pass, for the deprecated standalone methods
+	private CompositorChain standalone;
 
-		// Init texture
-		if (!glIsTexture(texture)) {
-			// Get texture handle
-			glGenTextures(1, handle, 0);
-			texture = handle[0];
-			glBindTexture(GL_TEXTURE_2D, texture);
-			glTexImage2D(GL_TEXTURE_2D, 0, GL_RGB, width, height, 0, GL_RGB,
-					GL_UNSIGNED_SHORT_5_6_5, null);
-			glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_WRAP_S, GL_CLAMP_TO_EDGE);
-			glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_WRAP_T, GL_CLAMP_TO_EDGE);
-			glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MIN_FILTER, GL_NEAREST);
-			glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MIN_FILTER, GL_NEAREST);
+	/**
+	 * Sets the resolution of this pass's output, relative to the screen. For
+	 * example, a blur pass can run at half or quarter resolution to save
+	 * fill-rate. This is ignored for the last pass in the chain, which always
+	 * renders to the screen.
+	 * 
+	 * @param scale
+	 *            The scale of the output, greater than 0 and at most 1.
+	 */
+	public void setScale(float scale) {
+		if (scale <= 0 || scale > 1) {
+			throw new IllegalArgumentException("scale must be in (0, 1]");
 		}
+		this.scale = scale;
+	}
 
-		// Init renderbuffer
-		if (!glIsRenderbuffer(renderbuffer)) {
-			// Get renderbuffer handle
-			glGenRenderbuffers(1, handle, 0);
-			renderbuffer = handle[0];
+	/**
+	 * @return The resolution of this pass's output, relative to the screen.
+	 */
+	public float getScale() {
+		return scale;
+	}
 
-			glBindRenderbuffer(GL_RENDERBUFFER, renderbuffer);
-			glRenderbufferStorage(GL_RENDERBUFFER, GL_DEPTH_COMPONENT16, width,
-					height);
+	/**
+	 * Sets the pixel format of this pass's output.
+	 * 
+	 * @param format
+	 *            {@link GLES20#GL_RGB} (RGB565, the default) or
+	 *            {@link GLES20#GL_RGBA} (RGBA8888).
+	 */
+	public void setOutputFormat(int format) {
+		if (format != GL_RGB && format != GL_RGBA) {
+			throw new IllegalArgumentException(
+					"format must be GL_RGB or GL_RGBA");
 		}
+		this.format = format;
+	}
 
-		// Init framebuffer
-		if (!glIsFramebuffer(framebuffer)) {
-			// Get framebuffer handle
-			glGenFramebuffers(1, handle, 0);
-			framebuffer = handle[0];
+	/**
+	 * @return The pixel format of this pass's output.
+	 */
+	public int getOutputFormat() {
+		return format;
+	}
+
+	/**
+	 * Sets the size of the screen this Compositor renders to when it is used
+	 * on its own. Called on the GL thread.
+	 * 
+	 * @deprecated Compositors are run by a {@link CompositorChain}; add them
+	 *             with {@link GameRenderer#addCompositor(Compositor)}.
+	 */
+	@Deprecated
+	public void onSurfaceChanged(int width, int height) {
+		getStandaloneChain().onSurfaceChanged(width, height);
+	}
+
+	/**
+	 * Binds the offscreen target that the scene should be rendered to when
+	 * this Compositor is used on its own. Called on the GL thread.
+	 * 
+	 * @deprecated Compositors are run by a {@link CompositorChain}; add them
+	 *             with {@link GameRenderer#addCompositor(Compositor)}.
+	 */
+	@Deprecated
+	public void preDraw() {
+		getStandaloneChain().preDraw();
+	}
+
+	/**
+	 * Renders the scene to the screen through this Compositor when it is used
+	 * on its own. Called on the GL thread.
+	 * 
+	 * @deprecated Compositors are run by a {@link CompositorChain}; add them
+	 *             with {@link GameRenderer#addCompositor(Compositor)}.
+	 */
+	@Deprecated
+	public void postDraw() {
+		getStandaloneChain().postDraw();
+	}
+
+	private CompositorChain getStandaloneChain() {
+		if (standalone == null) {
+			standalone = new CompositorChain();
+			standalone.add(this);
 		}
-		glBindFramebuffer(GL_FRAMEBUFFER, framebuffer);
-		glFramebufferTexture2D(GL_FRAMEBUFFER, GL_COLOR_ATTACHMENT0,
-				GL_TEXTURE_2D, texture, 0);
-		glFramebufferRenderbuffer(GL_FRAMEBUFFER, GL_DEPTH_ATTACHMENT,
-				GL_RENDERBUFFER, renderbuffer);
+		return standalone;
+	}
+
+	/**
+	 * Loads this pass's program and quad buffer, if they are not loaded
+	 * already. Called on the GL thread.
+	 */
+	void load() {
+		int[] handle = new int[1];
 
 		// Init vertex buffer
 		if (!glIsBuffer(arrayBuffer)) {
@@ -105,37 +173,41 @@ public abstract class Compositor {
 		}
 		
 		// Init program
-		String vert = getVertexShader();
-		String frag = getFragmentShader();
-		Log.i("Vert shader", vert);
-		Log.i("Frag shader", frag);
-		if (!frag.contains("varying vec2 v_texCoord;")) {
-			Log.e(TAG, "The fragment shader does not contain \"varying vec2 v_texCoord;\"");
+		if (p == null) {
+			String vert = getVertexShader();
+			String frag = getFragmentShader();
+			Log.i("Vert shader", vert);
+			Log.i("Frag shader", frag);
+			if (!frag.contains("varying vec2 v_texCoord;")) {
+				Log.e(TAG, "The fragment shader does not contain \"varying vec2 v_texCoord;\"");
+			}
+			if (!frag.contains("uniform sampler2D " + SAMPLER_UNIFORM_NAME + ";")) {
+				Log.e(TAG, "The fragment shader does not contain \"uniform sampler2D " + SAMPLER_UNIFORM_NAME + ";\"");
+			}
+			p = new Program(vert, frag);
 		}
-		if (!frag.contains("uniform sampler2D " + SAMPLER_UNIFORM_NAME + ";")) {
-			Log.e(TAG, "The fragment shader does not contain \"uniform sampler2D " + SAMPLER_UNIFORM_NAME + ";\"");
-		}
-		p = new Program(vert, frag);
 		if (!p.isLoaded()) {
 			glUseProgram(p.load());
-			int samplerLocation = p.getUniformLocation(SAMPLER_UNIFORM_NAME);
-			glActiveTexture(GLES20.GL_TEXTURE0);
-			glBindTexture(GLES20.GL_TEXTURE_2D, texture);
-			glUniform1i(samplerLocation, 0);
+			imageLocation = p.getUniformLocation(SAMPLER_UNIFORM_NAME);
+			sceneLocation = p.getUniformLocation(SCENE_SAMPLER_UNIFORM_NAME);
+			glUniform1i(imageLocation, 0);
+			if (sceneLocation != -1) {
+				glUniform1i(sceneLocation, 1);
+			}
 			loadUniforms(p); 
 		}
 	}
 
-	public void preDraw() {
-		glBindFramebuffer(GL_FRAMEBUFFER, framebuffer); // Bind texture buffer
-	}
-
-	public void postDraw() {
-		glBindFramebuffer(GL_FRAMEBUFFER, 0); // Bind screen buffer
-		
-		glClearColor(1.0f, 0.0f, 0.0f, 1.0f);
-		glClear(GL_COLOR_BUFFER_BIT | GL_DEPTH_BUFFER_BIT);
-		
+	/**
+	 * Draws this pass to the currently bound framebuffer. Called on the GL
+	 * thread.
+	 * 
+	 * @param image
+	 *            The texture containing the previous pass's output.
+	 * @param scene
+	 *            The texture containing the scene.
+	 */
+	void draw(int image, int scene) {
 		glDisable(GL_DEPTH_TEST);
 		glDisable(GL_CULL_FACE);
 		glDisable(GL_BLEND);
@@ -146,6 +218,14 @@ public abstract class Compositor {
 		// Use Program
 		glUseProgram(p.load());
 
+		// Bind input textures
+		if (sceneLocation != -1) {
+			glActiveTexture(GLES20.GL_TEXTURE1);
+			glBindTexture(GLES20.GL_TEXTURE_2D, scene);
+		}
+		glActiveTexture(GLES20.GL_TEXTURE0);
+		glBindTexture(GLES20.GL_TEXTURE_2D, image);
+
 		// Attach a_pos attribute
 		int a_pos = p.getAttribLocation("a_pos");
 		glEnableVertexAttribArray(a_pos);
@@ -180,7 +260,8 @@ public abstract class Compositor {
 	protected abstract String getFragmentShader();
 
 	/**
-	 * This is called in {@link #postDraw()}, to attach any extra attributes.
+	 * This is called each time the pass is drawn, to attach any extra
+	 * attributes.
 	 * The default implementation does nothing.
 	 */
 	protected void attachExtraAttribs(Program p) {
@@ -188,8 +269,8 @@ public abstract class Compositor {
 	}
 
 	/**
-	 * This is called in {@link #onSurfaceChanged(int, int)}, to load any
-	 * uniforms for the shader. The default implementation does nothing.
+	 * This is called after the program is loaded, to load any uniforms for
+	 * the shader. The default implementation does nothing.
 	 */
 	protected void loadUniforms(Program p) {
 		// Nothing by default
@@ -0,0 +1,178 @@
+/*
+ * Copyright 2013 Dan Mercer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.supermercerbros.gameengine.render;
+
+import static android.opengl.GLES20.*;
+
+import java.util.ArrayList;
+
+/**
+ * Runs a chain of {@link Compositor} passes over the rendered scene. The scene
+ * is rendered into an offscreen target; each pass then renders the previous
+ * pass's output into a target at its own resolution, and the last pass
+ * renders to the screen. Intermediate targets come from a
+ * {@link RenderTargetPool} and are released as soon as the next pass has read
+ * them, so a long chain only needs a couple of targets at a time.
+ */
+public class CompositorChain {
+	private final ArrayList<Compositor> passes;
+	private final RenderTargetPool pool;
+
+	private int width, height;
+	private RenderTarget scene;
+
+	// Reduced-resolution scene rendering
+	private float sceneScale = 1.0f;
+	private Compositor upscaler;
+
+	public CompositorChain() {
+		this.passes = new ArrayList<Compositor>();
+		this.pool = new RenderTargetPool();
+	}
+
+	/**
+	 * Adds a pass to the end of the chain.
+	 */
+	public synchronized void add(Compositor compositor) {
+		passes.add(compositor);
+	}
+
+	/**
+	 * Removes a pass from the chain.
+	 */
+	public synchronized void remove(Compositor compositor) {
+		passes.remove(compositor);
+	}
+
+	/**
+	 * Removes all passes from the chain.
+	 */
+	public synchronized void clear() {
+		passes.clear();
+	}
+
+	/**
+	 * @return true if the chain has no passes.
+	 */
+	public synchronized boolean isEmpty() {
+		return passes.isEmpty();
+	}
+
+	/**
+	 * Sets the resolution the scene is rendered at, relative to the screen.
+	 * If this is less than 1 and the chain has no passes, a
+	 * {@link CopyCompositor} upscales the scene to the screen.
+	 * 
+	 * @param scale
+	 *            The scale of the scene, greater than 0 and at most 1.
+	 */
+	public synchronized void setSceneScale(float scale) {
+		if (scale <= 0 || scale > 1) {
+			throw new IllegalArgumentException("scale must be in (0, 1]");
+		}
+		this.sceneScale = scale;
+	}
+
+	/**
+	 * @return The RenderTargetPool used by this chain.
+	 */
+	public RenderTargetPool getPool() {
+		return pool;
+	}
+
+	/**
+	 * Called on the GL thread when the EGL context is (re)created. Any
+	 * existing targets were destroyed with the old context.
+	 */
+	public synchronized void onSurfaceCreated() {
+		pool.discard();
+		scene = null;
+	}
+
+	/**
+	 * Called on the GL thread when the surface changes size.
+	 */
+	public synchronized void onSurfaceChanged(int width, int height) {
+		this.width = width;
+		this.height = height;
+		pool.clear();
+	}
+
+	/**
+	 * Binds the offscreen target that the scene should be rendered to. Called
+	 * on the GL thread at the start of each frame.
+	 * 
+	 * @return false if the chain is empty, in which case the scene should be
+	 *         rendered directly to the screen.
+	 */
+	public synchronized boolean preDraw() {
+		pool.onFrame();
+		if ((passes.isEmpty() && sceneScale == 1.0f) || width == 0
+				|| height == 0) {
+			return false;
+		}
+		scene = pool.acquire(Math.max(1, (int) (width * sceneScale)),
+				Math.max(1, (int) (height * sceneScale)), GL_RGB, true);
+		scene.bind();
+		return true;
+	}
+
+	/**
+	 * Runs each pass and renders the last one to the screen. Called on the GL
+	 * thread after the scene has been rendered.
+	 */
+	public synchronized void postDraw() {
+		if (scene == null) {
+			return;
+		}
+
+		if (passes.isEmpty()) {
+			if (upscaler == null) {
+				upscaler = new CopyCompositor();
+			}
+			passes.add(upscaler);
+		}
+
+		RenderTarget input = scene;
+		final int count = passes.size();
+		for (int i = 0; i < count; i++) {
+			final Compositor pass = passes.get(i);
+			pass.load();
+
+			RenderTarget output = null;
+			if (i == count - 1) {
+				glBindFramebuffer(GL_FRAMEBUFFER, 0);
+				glViewport(0, 0, width, height);
+			} else {
+				final float scale = pass.getScale();
+				output = pool.acquire(Math.max(1, (int) (width * scale)),
+						Math.max(1, (int) (height * scale)),
+						pass.getOutputFormat(), false);
+				output.bind();
+			}
+			pass.draw(input.getTexture(), scene.getTexture());
+
+			if (input != scene) {
+				pool.release(input);
+			}
+			input = output;
+		}
+
+		pool.release(scene);
+		scene = null;
+		passes.remove(upscaler);
+	}
+}
@@ -0,0 +1,36 @@
+/*
+ * Copyright 2013 Dan Mercer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.supermercerbros.gameengine.render;
+
+/**
+ * A Compositor that copies its input to its output unchanged (scaling it if
+ * the two differ in size). It is used to upscale the scene when it is
+ * rendered at a reduced resolution and no other passes are set.
+ */
+public class CopyCompositor extends Compositor {
+	private static final String FRAGMENT_SHADER =
+			"precision mediump float;\n" +
+			"varying vec2 v_texCoord;\n" +
+			"uniform sampler2D " + SAMPLER_UNIFORM_NAME + ";\n" +
+			"void main() {\n" +
+			"	gl_FragColor = texture2D(" + SAMPLER_UNIFORM_NAME + ", v_texCoord);\n" +
+			"}\n";
+
+	@Override
+	protected String getFragmentShader() {
+		return FRAGMENT_SHADER;
+	}
+}
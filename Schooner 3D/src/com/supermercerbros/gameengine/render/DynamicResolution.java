@@ -0,0 +1,187 @@
+/*
+ * Copyright 2013 Dan Mercer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.supermercerbros.gameengine.render;
+
+import android.util.Log;
+
+/**
+ * Adjusts the resolution the scene is rendered at to hold a target frame
+ * rate. If frames take too long for a while, the resolution is lowered one
+ * step; if they stay within the target for a longer while, it is raised one
+ * step. Raising takes much longer than lowering, so the scale does not
+ * oscillate between two steps. Set it with
+ * {@link com.supermercerbros.gameengine.engine.GameRenderer#setDynamicResolution(DynamicResolution)}.
+ */
+public class DynamicResolution {
+	private static final String TAG = DynamicResolution.class.getSimpleName();
+
+	public static final float DEFAULT_MIN_SCALE = 0.5f;
+	public static final float DEFAULT_MAX_SCALE = 1.0f;
+	public static final float DEFAULT_STEP = 0.1f;
+
+	/**
+	 * Frames slower than this fraction of the target count as over budget.
+	 */
+	private static final float SLOW_THRESHOLD = 1.15f;
+	/**
+	 * Frames faster than this fraction of the target count as within budget.
+	 */
+	private static final float FAST_THRESHOLD = 1.05f;
+	/**
+	 * The number of consecutive slow frames before the scale is lowered.
+	 */
+	private static final int SLOW_FRAMES = 10;
+	/**
+	 * The number of consecutive fast frames before the scale is raised. This
+	 * doubles (up to {@link #MAX_BACKOFF} times) each time a raise has to be
+	 * undone soon after, and resets once a raise sticks.
+	 */
+	private static final int FAST_FRAMES = 120;
+	private static final int MAX_BACKOFF = 16;
+	/**
+	 * Frames longer than this many targets (i.e. after a pause) are ignored.
+	 */
+	private static final int MAX_SAMPLE = 4;
+	/**
+	 * The weight of each new frame in the average frame time.
+	 */
+	private static final float SMOOTHING = 0.1f;
+
+	private final long targetNanos;
+	private final float minScale;
+	private final float maxScale;
+	private final float step;
+
+	private float scale;
+	private float averageNanos;
+	private long lastFrame = 0;
+	private int slowCount = 0;
+	private int fastCount = 0;
+	private int fastFramesRequired = FAST_FRAMES;
+	private int framesSinceRaise = Integer.MAX_VALUE / 2;
+
+	/**
+	 * Creates a new DynamicResolution with the default bounds and step.
+	 * 
+	 * @param targetFps
+	 *            The frame rate to hold.
+	 */
+	public DynamicResolution(float targetFps) {
+		this(targetFps, DEFAULT_MIN_SCALE, DEFAULT_MAX_SCALE, DEFAULT_STEP);
+	}
+
+	/**
+	 * Creates a new DynamicResolution.
+	 * 
+	 * @param targetFps
+	 *            The frame rate to hold.
+	 * @param minScale
+	 *            The lowest resolution scale to use, greater than 0.
+	 * @param maxScale
+	 *            The highest resolution scale to use, at most 1.
+	 * @param step
+	 *            The amount the scale changes by at a time.
+	 */
+	public DynamicResolution(float targetFps, float minScale, float maxScale,
+			float step) {
+		if (minScale <= 0 || maxScale > 1 || minScale > maxScale) {
+			throw new IllegalArgumentException(
+					"Scales must satisfy 0 < minScale <= maxScale <= 1");
+		}
+		if (step <= 0) {
+			throw new IllegalArgumentException("step must be positive");
+		}
+		this.targetNanos = (long) (1000000000L / targetFps);
+		this.minScale = minScale;
+		this.maxScale = maxScale;
+		this.step = step;
+		this.scale = maxScale;
+		this.averageNanos = targetNanos;
+	}
+
+	/**
+	 * Called by the renderer at the start of each frame.
+	 * 
+	 * @param now
+	 *            The current time, from {@link System#nanoTime()}.
+	 * @return The scale to render the scene at.
+	 */
+	public float onFrame(long now) {
+		return onFrame(now, 0);
+	}
+
+	/**
+	 * Called by the renderer at the start of each frame. Time the renderer
+	 * spent waiting for the Engine is not the renderer's fault, and lowering
+	 * the resolution would not win it back, so it is left out of the frame
+	 * time.
+	 * 
+	 * @param now
+	 *            The current time, from {@link System#nanoTime()}.
+	 * @param waitNanos
+	 *            The time the last frame spent waiting for the Engine's data,
+	 *            in nanoseconds.
+	 * @return The scale to render the scene at.
+	 */
+	public synchronized float onFrame(long now, long waitNanos) {
+		final long frameNanos = now - lastFrame - waitNanos;
+		lastFrame = now;
+		if (frameNanos <= 0 || frameNanos > targetNanos * MAX_SAMPLE) {
+			return scale;
+		}
+		averageNanos += (frameNanos - averageNanos) * SMOOTHING;
+		if (++framesSinceRaise == FAST_FRAMES) {
+			fastFramesRequired = FAST_FRAMES; // The last raise stuck
+		}
+
+		if (averageNanos > targetNanos * SLOW_THRESHOLD) {
+			fastCount = 0;
+			if (++slowCount >= SLOW_FRAMES && scale > minScale) {
+				if (framesSinceRaise < FAST_FRAMES) {
+					fastFramesRequired = Math.min(fastFramesRequired * 2,
+							FAST_FRAMES * MAX_BACKOFF);
+				}
+				setScale(scale - step);
+				slowCount = 0;
+			}
+		} else if (averageNanos < targetNanos * FAST_THRESHOLD) {
+			slowCount = 0;
+			if (++fastCount >= fastFramesRequired && scale < maxScale) {
+				setScale(scale + step);
+				fastCount = 0;
+				framesSinceRaise = 0;
+			}
+		} else {
+			slowCount = 0;
+			fastCount = 0;
+		}
+		return scale;
+	}
+
+	private void setScale(float newScale) {
+		scale = Math.max(minScale, Math.min(maxScale, newScale));
+		// Give the new resolution time to take effect
+		averageNanos = targetNanos;
+		Log.d(TAG, "Resolution scale: " + scale);
+	}
+
+	/**
+	 * @return The scale the scene is currently rendered at.
+	 */
+	public synchronized float getScale() {
+		return scale;
+	}
+}
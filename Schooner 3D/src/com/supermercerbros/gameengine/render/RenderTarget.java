@@ -0,0 +1,152 @@
+/*
+ * Copyright 2013 Dan Mercer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.supermercerbros.gameengine.render;
+
+import static android.opengl.GLES20.*;
+
+import com.supermercerbros.gameengine.engine.GameRenderer;
+
+/**
+ * An offscreen framebuffer with a color texture and, optionally, a depth
+ * renderbuffer. RenderTargets are obtained from a {@link RenderTargetPool}.
+ */
+public class RenderTarget {
+	private final int width;
+	private final int height;
+	private final int format;
+	private final boolean depth;
+
+	private int texture = -1;
+	private int renderbuffer = -1;
+	private int framebuffer = -1;
+
+	// The frame this target was last released in (see RenderTargetPool)
+	int releasedFrame;
+
+	/**
+	 * @param width
+	 *            The width of the target, in pixels.
+	 * @param height
+	 *            The height of the target, in pixels.
+	 * @param format
+	 *            {@link android.opengl.GLES20#GL_RGB} for an RGB565 texture,
+	 *            or {@link android.opengl.GLES20#GL_RGBA} for an RGBA8888
+	 *            texture.
+	 * @param depth
+	 *            true if the target needs a depth buffer.
+	 */
+	RenderTarget(int width, int height, int format, boolean depth) {
+		this.width = width;
+		this.height = height;
+		this.format = format;
+		this.depth = depth;
+	}
+
+	/**
+	 * Creates the GL objects of this target. Must be called on the GL thread.
+	 */
+	void create() {
+		final int[] handle = new int[1];
+
+		glGenTextures(1, handle, 0);
+		texture = handle[0];
+		glBindTexture(GL_TEXTURE_2D, texture);
+		final int type = format == GL_RGBA ? GL_UNSIGNED_BYTE
+				: GL_UNSIGNED_SHORT_5_6_5;
+		glTexImage2D(GL_TEXTURE_2D, 0, format, width, height, 0, format, type,
+				null);
+		glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_WRAP_S, GL_CLAMP_TO_EDGE);
+		glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_WRAP_T, GL_CLAMP_TO_EDGE);
+		// Linear filtering, since targets are often sampled at another size
+		glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MIN_FILTER, GL_LINEAR);
+		glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MAG_FILTER, GL_LINEAR);
+
+		if (depth) {
+			glGenRenderbuffers(1, handle, 0);
+			renderbuffer = handle[0];
+			glBindRenderbuffer(GL_RENDERBUFFER, renderbuffer);
+			glRenderbufferStorage(GL_RENDERBUFFER, GL_DEPTH_COMPONENT16, width,
+					height);
+		}
+
+		glGenFramebuffers(1, handle, 0);
+		framebuffer = handle[0];
+		glBindFramebuffer(GL_FRAMEBUFFER, framebuffer);
+		glFramebufferTexture2D(GL_FRAMEBUFFER, GL_COLOR_ATTACHMENT0,
+				GL_TEXTURE_2D, texture, 0);
+		if (depth) {
+			glFramebufferRenderbuffer(GL_FRAMEBUFFER, GL_DEPTH_ATTACHMENT,
+					GL_RENDERBUFFER, renderbuffer);
+		}
+		GameRenderer.logError("RenderTarget.create()");
+	}
+
+	/**
+	 * Deletes the GL objects of this target, if they still exist. Must be
+	 * called on the GL thread.
+	 */
+	void delete() {
+		if (framebuffer != -1 && glIsFramebuffer(framebuffer)) {
+			glDeleteFramebuffers(1, new int[] { framebuffer }, 0);
+		}
+		if (renderbuffer != -1 && glIsRenderbuffer(renderbuffer)) {
+			glDeleteRenderbuffers(1, new int[] { renderbuffer }, 0);
+		}
+		if (texture != -1 && glIsTexture(texture)) {
+			glDeleteTextures(1, new int[] { texture }, 0);
+		}
+		framebuffer = renderbuffer = texture = -1;
+	}
+
+	/**
+	 * Binds this target's framebuffer and sets the viewport to cover it.
+	 */
+	public void bind() {
+		glBindFramebuffer(GL_FRAMEBUFFER, framebuffer);
+		glViewport(0, 0, width, height);
+	}
+
+	/**
+	 * @return The handle of this target's color texture.
+	 */
+	public int getTexture() {
+		return texture;
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	public int getHeight() {
+		return height;
+	}
+
+	/**
+	 * @return The approximate GPU memory used by this target, in bytes.
+	 */
+	public int getByteSize() {
+		final int colorSize = format == GL_RGBA ? 4 : 2;
+		return width * height * (colorSize + (depth ? 2 : 0));
+	}
+
+	/**
+	 * @return true if this target matches the given description.
+	 */
+	boolean matches(int width, int height, int format, boolean depth) {
+		return this.width == width && this.height == height
+				&& this.format == format && this.depth == depth;
+	}
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright 2013 Dan Mercer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.supermercerbros.gameengine.render;
+
+import java.util.Iterator;
+import java.util.LinkedList;
+
+import android.util.Log;
+
+/**
+ * Recycles {@link RenderTarget}s between post-processing passes and frames.
+ * Targets are matched by size, format, and whether they have a depth buffer;
+ * targets that have not been used for a while are deleted. All methods must
+ * be called on the GL thread.
+ */
+public class RenderTargetPool {
+	private static final String TAG = RenderTargetPool.class.getSimpleName();
+
+	/**
+	 * The number of frames a free target is kept before it is deleted.
+	 */
+	private static final int MAX_IDLE_FRAMES = 60;
+
+	private final LinkedList<RenderTarget> free;
+	private int inUseCount = 0;
+	private int frame = 0;
+
+	// Stats
+	private int createdCount = 0;
+	private int deletedCount = 0;
+
+	public RenderTargetPool() {
+		this.free = new LinkedList<RenderTarget>();
+	}
+
+	/**
+	 * Returns a free RenderTarget matching the given description, creating
+	 * one if necessary. Release it with {@link #release(RenderTarget)} when
+	 * its contents are no longer needed.
+	 * 
+	 * @param width
+	 *            The width of the target, in pixels.
+	 * @param height
+	 *            The height of the target, in pixels.
+	 * @param format
+	 *            GL_RGB (RGB565) or GL_RGBA (RGBA8888).
+	 * @param depth
+	 *            true if the target needs a depth buffer.
+	 * @return The RenderTarget.
+	 */
+	public RenderTarget acquire(int width, int height, int format,
+			boolean depth) {
+		inUseCount++;
+		final Iterator<RenderTarget> iter = free.iterator();
+		while (iter.hasNext()) {
+			final RenderTarget target = iter.next();
+			if (target.matches(width, height, format, depth)) {
+				iter.remove();
+				return target;
+			}
+		}
+
+		final RenderTarget target = new RenderTarget(width, height, format,
+				depth);
+		target.create();
+		createdCount++;
+		Log.d(TAG, "Created " + width + "x" + height + " render target");
+		return target;
+	}
+
+	/**
+	 * Returns the given RenderTarget to the pool.
+	 */
+	public void release(RenderTarget target) {
+		target.releasedFrame = frame;
+		free.addFirst(target);
+		inUseCount--;
+	}
+
+	/**
+	 * Called once per frame. Deletes targets that have been free for a while.
+	 */
+	public void onFrame() {
+		frame++;
+		final Iterator<RenderTarget> iter = free.iterator();
+		while (iter.hasNext()) {
+			final RenderTarget target = iter.next();
+			if (frame - target.releasedFrame > MAX_IDLE_FRAMES) {
+				target.delete();
+				iter.remove();
+				deletedCount++;
+			}
+		}
+	}
+
+	/**
+	 * Deletes all free targets (i.e. when the surface size changes).
+	 */
+	public void clear() {
+		for (RenderTarget target : free) {
+			target.delete();
+			deletedCount++;
+		}
+		free.clear();
+	}
+
+	/**
+	 * Forgets all targets without deleting them, because the EGL context they
+	 * belonged to has been lost.
+	 */
+	public void discard() {
+		free.clear();
+		inUseCount = 0;
+	}
+
+	/**
+	 * @return The approximate GPU memory used by free targets, in bytes.
+	 */
+	public int getFreeBytes() {
+		int bytes = 0;
+		for (RenderTarget target : free) {
+			bytes += target.getByteSize();
+		}
+		return bytes;
+	}
+
+	/**
+	 * Logs the number of targets in use, free, created, and deleted.
+	 */
+	public void logStats() {
+		Log.i(TAG, "Render targets: " + inUseCount + " in use, "
+				+ free.size() + " free (" + (getFreeBytes() / 1024)
+				+ " KiB), " + createdCount + " created, " + deletedCount
+				+ " deleted");
+	}
+}
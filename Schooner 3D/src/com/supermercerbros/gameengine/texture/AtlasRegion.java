@@ -0,0 +1,88 @@
+/*
+ * Copyright 2013 Dan Mercer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.supermercerbros.gameengine.texture;
+
+/**
+ * A rectangular region of a {@link TextureAtlas} page that holds one packed
+ * image. UV coordinates given to this class are relative to the image, in the
+ * same space as a Texture uploaded from the image on its own: v = 0 is the
+ * image's first (top) row and v = 1 is its last row, so (0, 0) is the
+ * top-left corner as the image is stored.
+ */
+public final class AtlasRegion {
+	private final Texture page;
+	private final float u0, v0;
+	private final float uScale, vScale;
+
+	/**
+	 * @param page
+	 *            The atlas page containing the image.
+	 * @param left
+	 *            The U-coordinate of the left edge of the image on the page.
+	 * @param top
+	 *            The V-coordinate of the top edge (first row) of the image
+	 *            on the page.
+	 * @param right
+	 *            The U-coordinate of the right edge of the image on the page.
+	 * @param bottom
+	 *            The V-coordinate of the bottom edge (last row) of the image
+	 *            on the page.
+	 */
+	AtlasRegion(Texture page, float left, float top, float right, float bottom) {
+		this.page = page;
+		this.u0 = left;
+		this.v0 = top;
+		this.uScale = right - left;
+		this.vScale = bottom - top;
+	}
+
+	/**
+	 * @return The Texture to bind when drawing this region.
+	 */
+	public Texture getPage() {
+		return page;
+	}
+
+	/**
+	 * Converts a U-coordinate of the image to a U-coordinate of the page.
+	 */
+	public float mapU(float u) {
+		return u0 + u * uScale;
+	}
+
+	/**
+	 * Converts a V-coordinate of the image to a V-coordinate of the page.
+	 */
+	public float mapV(float v) {
+		return v0 + v * vScale;
+	}
+
+	/**
+	 * Converts UV coordinates of the image to UV coordinates of the page, in
+	 * place.
+	 * 
+	 * @param uvs
+	 *            An array of (u, v) pairs.
+	 * @return The given array.
+	 */
+	public float[] mapUVs(float[] uvs) {
+		for (int i = 0; i < uvs.length - 1; i += 2) {
+			uvs[i] = u0 + uvs[i] * uScale;
+			uvs[i + 1] = v0 + uvs[i + 1] * vScale;
+		}
+		return uvs;
+	}
+}
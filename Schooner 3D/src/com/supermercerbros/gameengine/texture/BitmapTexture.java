@@ -16,6 +16,8 @@
 
 package com.supermercerbros.gameengine.texture;
 
+import java.nio.ByteBuffer;
+
 import android.content.res.Resources;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
@@ -62,17 +64,62 @@ public class BitmapTexture extends Texture {
 		this.useMipmaps = useMipmaps;
 	}
 
+	@Override
+	protected TextureData decode() {
+		Bitmap bmp = decodeBitmap();
+		if (bmp == null) {
+			throw new IllegalStateException("Resource " + resID
+					+ " could not be decoded as a Bitmap");
+		}
+		int width = bmp.getWidth();
+		int height = bmp.getHeight();
+
+		// Mipmaps require power-of-two dimensions in GLES2
+		if (useMipmaps && (!isPowerOfTwo(width) || !isPowerOfTwo(height))) {
+			final Bitmap scaled = Bitmap.createScaledBitmap(bmp,
+					nextPowerOfTwo(width), nextPowerOfTwo(height), true);
+			bmp.recycle();
+			bmp = scaled;
+			width = bmp.getWidth();
+			height = bmp.getHeight();
+		}
+
+		final int levelCount = useMipmaps ? TextureData.mipLevelCount(width,
+				height) : 1;
+		final TextureData data = new TextureData(levelCount, GLES20.GL_RGBA,
+				GLES20.GL_UNSIGNED_BYTE);
+
+		// ARGB_8888 Bitmaps are stored as RGBA bytes
+		ByteBuffer level = TextureData.allocate(width * height * 4);
+		bmp.copyPixelsToBuffer(level);
+		level.rewind();
+		bmp.recycle();
+		data.setLevel(0, width, height, level);
+
+		// Build the mip chain
+		for (int i = 1; i < levelCount; i++) {
+			level = TextureData.downsampleRGBA(level, width, height);
+			width = Math.max(1, width / 2);
+			height = Math.max(1, height / 2);
+			data.setLevel(i, width, height, level);
+		}
+		return data;
+	}
+
 	@Override
 	protected void load() {
-		final BitmapFactory.Options opts = new BitmapFactory.Options();
-		opts.inScaled = false;
-		opts.inPreferredConfig = Bitmap.Config.ARGB_8888;
-		final Bitmap bmp = BitmapFactory.decodeResource(res, resID, opts);
+		final Bitmap bmp = decodeBitmap();
+		if (bmp == null) {
+			Log.e(TAG, "Resource " + resID + " could not be decoded as a Bitmap");
+			return;
+		}
 		handle = genTextureHandle();
 		Log.d(TAG, "glGenTextures generated handle: " + handle);
 
 		GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, handle);
 		GLUtils.texImage2D(GLES20.GL_TEXTURE_2D, 0, bmp, 0);
+		final int size = bmp.getRowBytes() * bmp.getHeight();
+		setByteSize(useMipmaps ? size * 4 / 3 : size);
 
 		if (useMipmaps) {
 			GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D,
@@ -88,6 +135,26 @@ public class BitmapTexture extends Texture {
 			GLES20.glGenerateMipmap(GLES20.GL_TEXTURE_2D);
 		}
 		GameRenderer.logError("BitmapTexture.load()");
+		bmp.recycle();
+	}
+
+	private Bitmap decodeBitmap() {
+		final BitmapFactory.Options opts = new BitmapFactory.Options();
+		opts.inScaled = false;
+		opts.inPreferredConfig = Bitmap.Config.ARGB_8888;
+		return BitmapFactory.decodeResource(res, resID, opts);
+	}
+
+	private static boolean isPowerOfTwo(int n) {
+		return (n & (n - 1)) == 0;
+	}
+
+	private static int nextPowerOfTwo(int n) {
+		int pot = 1;
+		while (pot < n) {
+			pot <<= 1;
+		}
+		return pot;
 	}
 
 }
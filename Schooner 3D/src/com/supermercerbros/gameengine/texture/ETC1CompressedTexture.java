@@ -16,14 +16,28 @@
 
 package com.supermercerbros.gameengine.texture;
 
+import java.io.IOException;
+import java.io.InputStream;
+
 import android.content.res.Resources;
+import android.opengl.GLES20;
+import android.util.Log;
+
+import com.supermercerbros.gameengine.engine.GameRenderer;
 
+/**
+ * A Texture loaded from a raw resource containing ETC1-compressed image data
+ * in a KTX file (see {@link KTX}). Mipmaps are not generated at runtime; they
+ * must be included in the file, e.g. by using {@link ETC1Encoder} in the asset
+ * pipeline. On devices that do not support ETC1, the data is decoded to RGB565
+ * before it is uploaded.
+ */
 public class ETC1CompressedTexture extends Texture {
-	@SuppressWarnings("unused")
+	private static final String TAG = ETC1CompressedTexture.class
+			.getSimpleName();
+
 	private final Resources res;
-	@SuppressWarnings("unused")
 	private final int resID;
-	@SuppressWarnings("unused")
 	private final boolean mipmaps;
 
 	/**
@@ -47,7 +61,8 @@ public class ETC1CompressedTexture extends Texture {
 	 * @param id
 	 *            The resource identifier of the file.
 	 * @param useMipmaps
-	 *            true if mipmaps should be used, false if not.
+	 *            true if mipmaps should be used, false if not. If the file
+	 *            does not contain a full mip chain, mipmaps are not used.
 	 */
 	public ETC1CompressedTexture(Resources res, int id, boolean useMipmaps) {
 		this.res = res;
@@ -55,9 +70,50 @@ public class ETC1CompressedTexture extends Texture {
 		mipmaps = useMipmaps;
 	}
 
+	@Override
+	protected TextureData decode() {
+		final InputStream in = res.openRawResource(resID);
+		try {
+			TextureData data = KTX.read(in, mipmaps);
+			if (data.getLevelCount() > 1
+					&& data.getLevelCount() < TextureData.mipLevelCount(
+							data.getWidth(0), data.getHeight(0))) {
+				Log.w(TAG, "Incomplete mip chain in resource " + resID
+						+ "; mipmaps will not be used.");
+				data = data.firstLevel();
+			}
+			return data.decodeETC1IfUnsupported();
+		} catch (IOException e) {
+			// Returning null would make the TextureLoader call load()
+			throw new IllegalStateException("Could not read resource "
+					+ resID, e);
+		} finally {
+			try {
+				in.close();
+			} catch (IOException e) {
+				// Ignore
+			}
+		}
+	}
+
 	@Override
 	protected void load() {
-		// TODO write ETC1 loading code and remove @SuppressWarnings
+		final TextureData data;
+		try {
+			data = decode();
+		} catch (IllegalStateException e) {
+			Log.e(TAG, "Could not read resource " + resID, e);
+			return;
+		}
+		handle = genTextureHandle();
+		GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, handle);
+		int size = 0;
+		for (int level = 0; level < data.getLevelCount(); level++) {
+			size += data.upload(level);
+		}
+		setByteSize(size);
+		setFilters(data.getLevelCount() > 1);
+		GameRenderer.logError("ETC1CompressedTexture.load()");
 	}
 
 }
@@ -0,0 +1,386 @@
+/*
+ * Copyright 2013 Dan Mercer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.supermercerbros.gameengine.texture;
+
+/**
+ * A pure-Java ETC1 encoder, for use in asset pipelines (it has no Android
+ * dependencies, so it also runs on a desktop JVM). Each 4x4 block is encoded
+ * in both individual and differential mode and in both sub-block
+ * orientations, keeping whichever has the least error. Use
+ * {@link KTX#writeETC1(java.io.OutputStream, int, int, byte[][])} to write
+ * the result to a file that {@link ETC1CompressedTexture} can load.
+ *
+ * @see <a
+ *      href="http://www.khronos.org/registry/gles/extensions/OES/OES_compressed_ETC1_RGB8_texture.txt">OES_compressed_ETC1_RGB8_texture</a>
+ */
+public class ETC1Encoder {
+	/**
+	 * The size of one encoded block, in bytes.
+	 */
+	public static final int BLOCK_SIZE = 8;
+
+	/**
+	 * The intensity modifier tables. Each row holds the small and large
+	 * modifier; the pixel indices 0, 1, 2 and 3 select +small, +large, -small
+	 * and -large respectively.
+	 */
+	private static final int[][] MODIFIERS = { { 2, 8 }, { 5, 17 }, { 9, 29 },
+			{ 13, 42 }, { 18, 60 }, { 24, 80 }, { 33, 106 }, { 47, 183 } };
+
+	/**
+	 * Returns the size of an encoded image.
+	 *
+	 * @param width
+	 *            The width of the image, in pixels.
+	 * @param height
+	 *            The height of the image, in pixels.
+	 * @return The size of the encoded image, in bytes.
+	 */
+	public static int getEncodedSize(int width, int height) {
+		return ((width + 3) / 4) * ((height + 3) / 4) * BLOCK_SIZE;
+	}
+
+	/**
+	 * Encodes a full mip chain of the given image. Each level is half the
+	 * size of the previous one (made with a 2x2 box filter), down to 1x1.
+	 *
+	 * @param argb
+	 *            The pixels of the image, as ARGB color ints in row-major
+	 *            order. Alpha is ignored.
+	 * @param width
+	 *            The width of the image, in pixels.
+	 * @param height
+	 *            The height of the image, in pixels.
+	 * @return An array of the encoded levels, starting with the full-size
+	 *         image.
+	 */
+	public static byte[][] encodeMipChain(int[] argb, int width, int height) {
+		int levelCount = 1;
+		for (int size = Math.max(width, height); size > 1; size >>= 1) {
+			levelCount++;
+		}
+		final byte[][] levels = new byte[levelCount][];
+		levels[0] = encodeImage(argb, width, height);
+		for (int i = 1; i < levels.length; i++) {
+			argb = downsample(argb, width, height);
+			width = Math.max(1, width / 2);
+			height = Math.max(1, height / 2);
+			levels[i] = encodeImage(argb, width, height);
+		}
+		return levels;
+	}
+
+	/**
+	 * Encodes the given image. Images whose sizes are not multiples of four
+	 * are padded by repeating their edge pixels.
+	 *
+	 * @param argb
+	 *            The pixels of the image, as ARGB color ints in row-major
+	 *            order. Alpha is ignored.
+	 * @param width
+	 *            The width of the image, in pixels.
+	 * @param height
+	 *            The height of the image, in pixels.
+	 * @return The encoded blocks, in row-major order.
+	 */
+	public static byte[] encodeImage(int[] argb, int width, int height) {
+		if (argb.length < width * height) {
+			throw new IllegalArgumentException("argb.length < width * height");
+		}
+		final byte[] out = new byte[getEncodedSize(width, height)];
+		final int[] block = new int[16];
+		final int[] scratch = new int[48];
+
+		int outOffset = 0;
+		for (int blockY = 0; blockY < height; blockY += 4) {
+			for (int blockX = 0; blockX < width; blockX += 4) {
+				// Gather block pixels in column-major order, as ETC1 indexes
+				// them
+				for (int x = 0; x < 4; x++) {
+					final int px = Math.min(blockX + x, width - 1);
+					for (int y = 0; y < 4; y++) {
+						final int py = Math.min(blockY + y, height - 1);
+						block[x * 4 + y] = argb[py * width + px];
+					}
+				}
+				encodeBlock(block, scratch, out, outOffset);
+				outOffset += BLOCK_SIZE;
+			}
+		}
+		return out;
+	}
+
+	/**
+	 * Encodes one 4x4 block.
+	 *
+	 * @param block
+	 *            The 16 pixels of the block as ARGB color ints, in
+	 *            column-major order (pixel (x, y) is at index x * 4 + y).
+	 * @param scratch
+	 *            An array of at least 48 ints used for temporary storage.
+	 * @param out
+	 *            The array to write the 8-byte block to.
+	 * @param outOffset
+	 *            The offset into <code>out</code> where the block starts.
+	 */
+	public static void encodeBlock(int[] block, int[] scratch, byte[] out,
+			int outOffset) {
+		// Unpack colors
+		final int[] r = scratch;
+		for (int p = 0; p < 16; p++) {
+			r[p] = (block[p] >> 16) & 0xFF;
+			r[p + 16] = (block[p] >> 8) & 0xFF;
+			r[p + 32] = block[p] & 0xFF;
+		}
+
+		long bestError = Long.MAX_VALUE;
+		long bestBits = 0;
+		for (int flip = 0; flip < 2; flip++) {
+			for (int diff = 0; diff < 2; diff++) {
+				final long bits = encodeMode(r, flip, diff);
+				final long error = blockError(r, bits);
+				if (error < bestError) {
+					bestError = error;
+					bestBits = bits;
+				}
+			}
+		}
+
+		for (int i = 0; i < 8; i++) {
+			out[outOffset + i] = (byte) (bestBits >>> (56 - i * 8));
+		}
+	}
+
+	/**
+	 * Encodes the block (unpacked as 16 reds, 16 greens and 16 blues) with the
+	 * given flip and diff bits, returning the 64-bit block.
+	 */
+	private static long encodeMode(int[] rgb, int flip, int diff) {
+		// Average color of each sub-block
+		final int[] sum = new int[6];
+		for (int p = 0; p < 16; p++) {
+			final int sub = subBlock(p, flip);
+			sum[sub * 3] += rgb[p];
+			sum[sub * 3 + 1] += rgb[p + 16];
+			sum[sub * 3 + 2] += rgb[p + 32];
+		}
+
+		// Quantize base colors
+		final int[] base = new int[6]; // Quantized
+		final int[] color = new int[6]; // Expanded to 8 bits
+		if (diff == 0) {
+			for (int i = 0; i < 6; i++) {
+				base[i] = clamp((sum[i] * 15 + 1020) / 2040, 0, 15);
+				color[i] = base[i] * 17;
+			}
+		} else {
+			for (int i = 0; i < 6; i++) {
+				base[i] = clamp((sum[i] * 31 + 1020) / 2040, 0, 31);
+			}
+			for (int c = 0; c < 3; c++) {
+				final int delta = clamp(base[c + 3] - base[c], -4, 3);
+				base[c + 3] = base[c] + delta;
+			}
+			for (int i = 0; i < 6; i++) {
+				color[i] = (base[i] << 3) | (base[i] >> 2);
+			}
+		}
+
+		// Choose the best modifier table for each sub-block
+		final int[] table = new int[2];
+		for (int sub = 0; sub < 2; sub++) {
+			long bestError = Long.MAX_VALUE;
+			for (int t = 0; t < 8; t++) {
+				long error = 0;
+				for (int p = 0; p < 16; p++) {
+					if (subBlock(p, flip) == sub) {
+						error += pixelError(rgb, p, color, sub * 3, t, -1);
+					}
+				}
+				if (error < bestError) {
+					bestError = error;
+					table[sub] = t;
+				}
+			}
+		}
+
+		// Pack base colors, tables, and flags
+		long hi;
+		if (diff == 0) {
+			hi = (base[0] << 28) | (base[3] << 24) | (base[1] << 20)
+					| (base[4] << 16) | (base[2] << 12) | (base[5] << 8);
+		} else {
+			hi = (base[0] << 27) | (((base[3] - base[0]) & 7) << 24)
+					| (base[1] << 19) | (((base[4] - base[1]) & 7) << 16)
+					| (base[2] << 11) | (((base[5] - base[2]) & 7) << 8);
+		}
+		hi |= (table[0] << 5) | (table[1] << 2) | (diff << 1) | flip;
+
+		// Pick pixel indices
+		long lo = 0;
+		for (int p = 0; p < 16; p++) {
+			final int sub = subBlock(p, flip);
+			int bestIndex = 0;
+			long bestError = Long.MAX_VALUE;
+			for (int index = 0; index < 4; index++) {
+				final long error = pixelError(rgb, p, color, sub * 3,
+						table[sub], index);
+				if (error < bestError) {
+					bestError = error;
+					bestIndex = index;
+				}
+			}
+			lo |= ((bestIndex >> 1) << (16 + p)) | ((bestIndex & 1) << p);
+		}
+
+		return ((hi & 0xFFFFFFFFL) << 32) | (lo & 0xFFFFFFFFL);
+	}
+
+	/**
+	 * Computes the squared error of one pixel.
+	 *
+	 * @param index
+	 *            The pixel index to use, or -1 to use the best one.
+	 */
+	private static long pixelError(int[] rgb, int p, int[] color,
+			int colorOffset, int table, int index) {
+		if (index == -1) {
+			long best = Long.MAX_VALUE;
+			for (int i = 0; i < 4; i++) {
+				best = Math.min(best,
+						pixelError(rgb, p, color, colorOffset, table, i));
+			}
+			return best;
+		}
+
+		final int modifier = modifier(table, index);
+		final int dr = clamp(color[colorOffset] + modifier, 0, 255) - rgb[p];
+		final int dg = clamp(color[colorOffset + 1] + modifier, 0, 255)
+				- rgb[p + 16];
+		final int db = clamp(color[colorOffset + 2] + modifier, 0, 255)
+				- rgb[p + 32];
+		return dr * dr + dg * dg + db * db;
+	}
+
+	/**
+	 * Computes the total squared error of an encoded block by decoding it.
+	 */
+	private static long blockError(int[] rgb, long bits) {
+		final int[] decoded = new int[16];
+		decodeBlock(bits, decoded);
+		long error = 0;
+		for (int p = 0; p < 16; p++) {
+			final int dr = ((decoded[p] >> 16) & 0xFF) - rgb[p];
+			final int dg = ((decoded[p] >> 8) & 0xFF) - rgb[p + 16];
+			final int db = (decoded[p] & 0xFF) - rgb[p + 32];
+			error += dr * dr + dg * dg + db * db;
+		}
+		return error;
+	}
+
+	/**
+	 * Decodes one 64-bit ETC1 block.
+	 *
+	 * @param bits
+	 *            The block, with the first byte in the most-significant bits.
+	 * @param out
+	 *            Receives the 16 pixels as opaque ARGB color ints, in
+	 *            column-major order.
+	 */
+	public static void decodeBlock(long bits, int[] out) {
+		final int hi = (int) (bits >>> 32);
+		final int lo = (int) bits;
+		final int flip = hi & 1;
+		final int diff = (hi >> 1) & 1;
+		final int[] table = { (hi >> 5) & 7, (hi >> 2) & 7 };
+
+		final int[] color = new int[6];
+		if (diff == 0) {
+			for (int c = 0; c < 3; c++) {
+				final int shift = 28 - c * 8;
+				color[c] = ((hi >> shift) & 0xF) * 17;
+				color[c + 3] = ((hi >> (shift - 4)) & 0xF) * 17;
+			}
+		} else {
+			for (int c = 0; c < 3; c++) {
+				final int shift = 27 - c * 8;
+				final int base = (hi >> shift) & 0x1F;
+				final int delta = ((hi >> (shift - 3)) & 7) << 29 >> 29;
+				final int base2 = base + delta;
+				color[c] = (base << 3) | (base >> 2);
+				color[c + 3] = (base2 << 3) | (base2 >> 2);
+			}
+		}
+
+		for (int p = 0; p < 16; p++) {
+			final int sub = subBlock(p, flip);
+			final int index = (((lo >> (16 + p)) & 1) << 1) | ((lo >> p) & 1);
+			final int modifier = modifier(table[sub], index);
+			final int r = clamp(color[sub * 3] + modifier, 0, 255);
+			final int g = clamp(color[sub * 3 + 1] + modifier, 0, 255);
+			final int b = clamp(color[sub * 3 + 2] + modifier, 0, 255);
+			out[p] = 0xFF000000 | (r << 16) | (g << 8) | b;
+		}
+	}
+
+	/**
+	 * Halves the size of an ARGB image with a 2x2 box filter.
+	 */
+	static int[] downsample(int[] argb, int width, int height) {
+		final int newWidth = Math.max(1, width / 2);
+		final int newHeight = Math.max(1, height / 2);
+		final int[] out = new int[newWidth * newHeight];
+		for (int y = 0; y < newHeight; y++) {
+			final int y0 = Math.min(y * 2, height - 1) * width;
+			final int y1 = Math.min(y * 2 + 1, height - 1) * width;
+			for (int x = 0; x < newWidth; x++) {
+				final int x0 = Math.min(x * 2, width - 1);
+				final int x1 = Math.min(x * 2 + 1, width - 1);
+				final int p00 = argb[y0 + x0], p01 = argb[y0 + x1];
+				final int p10 = argb[y1 + x0], p11 = argb[y1 + x1];
+
+				int pixel = 0;
+				for (int shift = 0; shift < 32; shift += 8) {
+					final int sum = ((p00 >>> shift) & 0xFF)
+							+ ((p01 >>> shift) & 0xFF)
+							+ ((p10 >>> shift) & 0xFF)
+							+ ((p11 >>> shift) & 0xFF);
+					pixel |= ((sum + 2) >> 2) << shift;
+				}
+				out[y * newWidth + x] = pixel;
+			}
+		}
+		return out;
+	}
+
+	private static int subBlock(int p, int flip) {
+		// p = x * 4 + y
+		if (flip == 0) {
+			return p >> 3; // x >= 2
+		} else {
+			return (p >> 1) & 1; // y >= 2
+		}
+	}
+
+	private static int modifier(int table, int index) {
+		final int value = MODIFIERS[table][index & 1];
+		return (index & 2) == 0 ? value : -value;
+	}
+
+	private static int clamp(int value, int min, int max) {
+		return value < min ? min : (value > max ? max : value);
+	}
+}
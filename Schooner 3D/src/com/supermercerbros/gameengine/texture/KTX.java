@@ -0,0 +1,189 @@
+/*
+ * Copyright 2013 Dan Mercer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.supermercerbros.gameengine.texture;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Reads and writes compressed textures in the KTX container format, which
+ * holds a full, pre-built mip chain. Files written by other KTX tools can be
+ * read as long as they contain a single 2D, compressed texture.
+ *
+ * @see <a
+ *      href="http://www.khronos.org/opengles/sdk/tools/KTX/file_format_spec/">KTX
+ *      File Format Specification</a>
+ */
+public class KTX {
+	/**
+	 * The GL_ enum for ETC1-compressed RGB data (GL_ETC1_RGB8_OES).
+	 */
+	public static final int GL_ETC1_RGB8_OES = 0x8D64;
+
+	private static final byte[] IDENTIFIER = { (byte) 0xAB, 'K', 'T', 'X',
+			' ', '1', '1', (byte) 0xBB, '\r', '\n', 0x1A, '\n' };
+	private static final int ENDIANNESS = 0x04030201;
+	private static final int HEADER_SIZE = 64;
+	private static final int GL_RGB = 0x1907;
+
+	/**
+	 * Reads a compressed texture from the given stream. The stream is not
+	 * closed.
+	 *
+	 * @param in
+	 *            The InputStream to read the file from.
+	 * @param mipmaps
+	 *            true if all mipmap levels in the file should be read, false
+	 *            if only the full-size image should be read.
+	 * @return The TextureData, ready to be uploaded.
+	 * @throws IOException
+	 *             If the stream cannot be read or does not contain a valid
+	 *             compressed 2D texture.
+	 */
+	public static TextureData read(InputStream in, boolean mipmaps)
+			throws IOException {
+		final ByteBuffer file = ByteBuffer.wrap(readFully(in));
+		if (file.remaining() < HEADER_SIZE) {
+			throw new IOException("KTX file is truncated");
+		}
+		for (int i = 0; i < IDENTIFIER.length; i++) {
+			if (file.get() != IDENTIFIER[i]) {
+				throw new IOException("Not a KTX file");
+			}
+		}
+
+		file.order(ByteOrder.LITTLE_ENDIAN);
+		final int endianness = file.getInt();
+		if (endianness != ENDIANNESS) {
+			file.order(ByteOrder.BIG_ENDIAN);
+			if (Integer.reverseBytes(endianness) != ENDIANNESS) {
+				throw new IOException("Invalid KTX endianness field");
+			}
+		}
+
+		final int glType = file.getInt();
+		file.getInt(); // glTypeSize
+		file.getInt(); // glFormat
+		final int glInternalFormat = file.getInt();
+		file.getInt(); // glBaseInternalFormat
+		final int width = file.getInt();
+		final int height = file.getInt();
+		final int depth = file.getInt();
+		final int arrayElements = file.getInt();
+		final int faces = file.getInt();
+		final int levels = Math.max(1, file.getInt());
+		final int keyValueBytes = file.getInt();
+
+		if (glType != 0) {
+			throw new IOException("KTX file is not compressed");
+		}
+		if (depth > 1 || arrayElements > 0 || faces != 1) {
+			throw new IOException("KTX file is not a single 2D texture");
+		}
+		if (keyValueBytes < 0 || keyValueBytes > file.remaining()) {
+			throw new IOException("KTX file is truncated");
+		}
+		file.position(file.position() + keyValueBytes);
+
+		final int levelCount = mipmaps ? levels : 1;
+		final TextureData data = new TextureData(levelCount, glInternalFormat);
+		for (int level = 0; level < levelCount; level++) {
+			if (file.remaining() < 4) {
+				throw new IOException("KTX file is truncated");
+			}
+			final int size = file.getInt();
+			if (size < 0 || size > file.remaining()) {
+				throw new IOException("KTX file is truncated");
+			}
+			final ByteBuffer buffer = TextureData.allocate(size);
+			final int limit = file.limit();
+			file.limit(file.position() + size);
+			buffer.put(file);
+			file.limit(limit);
+			buffer.rewind();
+
+			data.setLevel(level, Math.max(1, width >> level),
+					Math.max(1, height >> level), buffer);
+			// The last level's padding may be missing
+			final int padding = 3 - ((size + 3) % 4);
+			file.position(file.position()
+					+ Math.min(padding, file.remaining()));
+		}
+		return data;
+	}
+
+	/**
+	 * Writes an ETC1-compressed texture, such as the output of
+	 * {@link ETC1Encoder#encodeMipChain(int[], int, int)}, to the given
+	 * stream. The stream is not closed.
+	 *
+	 * @param out
+	 *            The OutputStream to write the file to.
+	 * @param width
+	 *            The width of the full-size image, in pixels.
+	 * @param height
+	 *            The height of the full-size image, in pixels.
+	 * @param levels
+	 *            The encoded mipmap levels, starting with the full-size image.
+	 * @throws IOException
+	 *             If the stream cannot be written to.
+	 */
+	public static void writeETC1(OutputStream out, int width, int height,
+			byte[][] levels) throws IOException {
+		final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(
+				ByteOrder.LITTLE_ENDIAN);
+		header.put(IDENTIFIER);
+		header.putInt(ENDIANNESS);
+		header.putInt(0); // glType
+		header.putInt(1); // glTypeSize
+		header.putInt(0); // glFormat
+		header.putInt(GL_ETC1_RGB8_OES);
+		header.putInt(GL_RGB);
+		header.putInt(width);
+		header.putInt(height);
+		header.putInt(0); // pixelDepth
+		header.putInt(0); // numberOfArrayElements
+		header.putInt(1); // numberOfFaces
+		header.putInt(levels.length);
+		header.putInt(0); // bytesOfKeyValueData
+		out.write(header.array());
+
+		final ByteBuffer size = ByteBuffer.allocate(4).order(
+				ByteOrder.LITTLE_ENDIAN);
+		final byte[] padding = new byte[3];
+		for (byte[] level : levels) {
+			size.putInt(0, level.length);
+			out.write(size.array());
+			out.write(level);
+			out.write(padding, 0, 3 - ((level.length + 3) % 4));
+		}
+	}
+
+	private static byte[] readFully(InputStream in) throws IOException {
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream(
+				Math.max(in.available(), 4096));
+		final byte[] buffer = new byte[4096];
+		int count;
+		while ((count = in.read(buffer)) != -1) {
+			bytes.write(buffer, 0, count);
+		}
+		return bytes.toByteArray();
+	}
+}
@@ -0,0 +1,181 @@
+/*
+ * Copyright 2013 Dan Mercer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.supermercerbros.gameengine.texture;
+
+/**
+ * Packs rectangles into a fixed-size area using the skyline heuristic. The
+ * skyline is the contour of the rectangles placed so far, measured from the
+ * top of the area (y increases downwards, as in a Bitmap). Each new rectangle
+ * is placed where its bottom edge stays closest to the top of the area.
+ */
+public class SkylinePacker {
+	private final int width;
+	private final int height;
+
+	// Skyline segments, ordered from left to right
+	private int[] segX;
+	private int[] segY;
+	private int[] segWidth;
+	private int segCount;
+
+	private int usedArea = 0;
+
+	/**
+	 * Creates a new, empty SkylinePacker.
+	 * 
+	 * @param width
+	 *            The width of the area to pack into.
+	 * @param height
+	 *            The height of the area to pack into.
+	 */
+	public SkylinePacker(int width, int height) {
+		this.width = width;
+		this.height = height;
+		this.segX = new int[16];
+		this.segY = new int[16];
+		this.segWidth = new int[16];
+		segX[0] = 0;
+		segY[0] = 0;
+		segWidth[0] = width;
+		segCount = 1;
+	}
+
+	/**
+	 * Finds a place for a rectangle of the given size and marks it as used.
+	 * 
+	 * @param w
+	 *            The width of the rectangle.
+	 * @param h
+	 *            The height of the rectangle.
+	 * @param out
+	 *            An array of at least 2 ints that receives the x and y
+	 *            coordinates of the rectangle's top-left corner.
+	 * @return true if the rectangle was placed, false if it does not fit.
+	 */
+	public boolean insert(int w, int h, int[] out) {
+		int bestIndex = -1;
+		int bestTop = Integer.MAX_VALUE;
+		int bestWidth = Integer.MAX_VALUE;
+		for (int i = 0; i < segCount; i++) {
+			final int y = fit(i, w, h);
+			if (y < 0) {
+				continue;
+			}
+			final int top = y + h;
+			if (top < bestTop || (top == bestTop && segWidth[i] < bestWidth)) {
+				bestIndex = i;
+				bestTop = top;
+				bestWidth = segWidth[i];
+			}
+		}
+		if (bestIndex == -1) {
+			return false;
+		}
+
+		out[0] = segX[bestIndex];
+		out[1] = bestTop - h;
+		addSegment(bestIndex, out[0], bestTop, w);
+		usedArea += w * h;
+		return true;
+	}
+
+	/**
+	 * @return The fraction of the area that is covered by rectangles.
+	 */
+	public float getOccupancy() {
+		return (float) usedArea / (width * height);
+	}
+
+	/**
+	 * Returns the y-coordinate at which a w-by-h rectangle would rest if its
+	 * left edge were at the start of the given segment, or -1 if it would not
+	 * fit there.
+	 */
+	private int fit(int index, int w, int h) {
+		final int x = segX[index];
+		if (x + w > width) {
+			return -1;
+		}
+		int remaining = w;
+		int y = 0;
+		for (int i = index; remaining > 0; i++) {
+			y = Math.max(y, segY[i]);
+			if (y + h > height) {
+				return -1;
+			}
+			remaining -= segWidth[i];
+		}
+		return y;
+	}
+
+	/**
+	 * Inserts a new skyline segment at the given index and trims or removes
+	 * the segments it covers.
+	 */
+	private void addSegment(int index, int x, int y, int w) {
+		if (segCount == segX.length) {
+			segX = grow(segX);
+			segY = grow(segY);
+			segWidth = grow(segWidth);
+		}
+		System.arraycopy(segX, index, segX, index + 1, segCount - index);
+		System.arraycopy(segY, index, segY, index + 1, segCount - index);
+		System.arraycopy(segWidth, index, segWidth, index + 1, segCount
+				- index);
+		segX[index] = x;
+		segY[index] = y;
+		segWidth[index] = w;
+		segCount++;
+
+		// Shrink the segments under the new one
+		final int right = x + w;
+		final int next = index + 1;
+		while (next < segCount && segX[next] < right) {
+			final int overlap = right - segX[next];
+			if (overlap >= segWidth[next]) {
+				remove(next);
+			} else {
+				segX[next] += overlap;
+				segWidth[next] -= overlap;
+				break;
+			}
+		}
+
+		// Merge neighbors of the same height
+		for (int i = 0; i < segCount - 1;) {
+			if (segY[i] == segY[i + 1]) {
+				segWidth[i] += segWidth[i + 1];
+				remove(i + 1);
+			} else {
+				i++;
+			}
+		}
+	}
+
+	private void remove(int index) {
+		final int count = segCount - index - 1;
+		System.arraycopy(segX, index + 1, segX, index, count);
+		System.arraycopy(segY, index + 1, segY, index, count);
+		System.arraycopy(segWidth, index + 1, segWidth, index, count);
+		segCount--;
+	}
+
+	private static int[] grow(int[] array) {
+		final int[] grown = new int[array.length * 2];
+		System.arraycopy(array, 0, grown, 0, array.length);
+		return grown;
+	}
+}
@@ -40,18 +40,47 @@ public abstract class Texture implements EGLContextLostListener {
 	 * Contains the integer handle to this texture used by the OpenGL context.
 	 */
 	protected int handle = -1;
-	protected boolean loaded = false;
+	protected volatile boolean loaded = false;
 
 	private int wrapU = GLES20.GL_CLAMP_TO_EDGE;
 	private int wrapV = GLES20.GL_CLAMP_TO_EDGE;
 
+	// Streaming state (see TextureLoader)
+	private boolean requested = false;
+	private volatile boolean failed = false;
+	private boolean listening = false;
+	private TextureData decoded;
+	private int nextLevel = 0;
+	int requestGeneration; // The TextureLoader's generation when requested
+
+	// Residency state (see TextureCache)
+	private int byteSize = 0;
+	private volatile int lastUsedFrame = 0;
+
 	/**
-	 * This is called to load the Texture into the OpenGL context.
+	 * This is called to load the Texture into the OpenGL context. It is only
+	 * used if {@link #decode()} returns null.
 	 */
 	protected abstract void load();
 
 	/**
-	 * This is called during rendering.
+	 * Called on a background thread to decode this Texture's image data so
+	 * that it can be uploaded without stalling the GL thread. The default
+	 * implementation returns null, in which case {@link #load()} is called on
+	 * the GL thread instead. If the image can't be decoded, this should throw
+	 * an exception; the Texture is then marked as {@link #hasFailed() failed}.
+	 * 
+	 * @return The decoded data, or null if this Texture must be loaded with
+	 *         {@link #load()}.
+	 */
+	protected TextureData decode() {
+		return null;
+	}
+
+	/**
+	 * This is called during rendering. If this Texture has not been uploaded
+	 * yet, it is requested from the {@link TextureLoader} and a placeholder
+	 * texture is bound in its place.
 	 * 
 	 * @param glTexture
 	 *            The index of the GL texture to bind to.
@@ -61,30 +90,190 @@ public abstract class Texture implements EGLContextLostListener {
 	public void use(int glTexture, String samplerName, int programHandle) {
 		GLES20.glActiveTexture(GLES20.GL_TEXTURE0 + glTexture);
 		GameRenderer.logError("ActiveTexture(GL_TEXTURE" + glTexture + ")");
-		if (!loaded) {
-			load();
-			loaded = true;
-			EGLContextLostHandler.addListener(this);
-			// If problems arise, move this back to BitmapTexture.load
-			// (right after texImage2D)
-			synchronized (this) {
-				GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D,
-						GLES20.GL_TEXTURE_WRAP_S, wrapU);
-				GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D,
-						GLES20.GL_TEXTURE_WRAP_T, wrapV);
-			}
+
+		final int frame = TextureCache.INSTANCE.getFrame();
+		if (lastUsedFrame != frame) {
+			lastUsedFrame = frame;
+			TextureCache.INSTANCE.touch(this);
+		}
+		final int boundHandle;
+		if (loaded) {
+			boundHandle = handle;
+		} else {
+			TextureLoader.INSTANCE.request(this);
+			boundHandle = TextureLoader.INSTANCE.getPlaceholder();
 		}
 
 		int samplerLoc = GLES20
 				.glGetUniformLocation(programHandle, samplerName);
 		GameRenderer.logError("Texture.java: GetUniformLocation");
-		GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, handle);
+		GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, boundHandle);
 		GameRenderer.logError("BindTexture");
 
 		GLES20.glUniform1i(samplerLoc, glTexture);
 		GameRenderer.logError("Uniform1i");
 	}
 
+	/**
+	 * @return true if this Texture has been uploaded to the GPU.
+	 */
+	public boolean isLoaded() {
+		return loaded;
+	}
+
+	/**
+	 * @return true if this Texture could not be decoded or loaded. A failed
+	 *         Texture is never requested again; the placeholder texture is
+	 *         bound in its place.
+	 */
+	public boolean hasFailed() {
+		return failed;
+	}
+
+	/**
+	 * @return The estimated GPU memory used by this Texture, in bytes, or the
+	 *         memory it used when it was last loaded.
+	 */
+	public int getByteSize() {
+		return byteSize;
+	}
+
+	/**
+	 * Sets the estimated GPU memory used by this Texture. Subclasses must call
+	 * this from {@link #load()}; Textures loaded from {@link #decode()} are
+	 * measured automatically.
+	 * 
+	 * @param bytes
+	 *            The size of this Texture, including all mipmap levels.
+	 */
+	protected void setByteSize(int bytes) {
+		byteSize = bytes;
+	}
+
+	/**
+	 * @return The number of the last frame in which this Texture was used.
+	 */
+	int getLastUsedFrame() {
+		return lastUsedFrame;
+	}
+
+	/**
+	 * Marks this Texture as requested from the TextureLoader.
+	 * 
+	 * @return false if this Texture is already loaded or requested.
+	 */
+	synchronized boolean markRequested() {
+		if (loaded || requested || failed) {
+			return false;
+		}
+		requested = true;
+		return true;
+	}
+
+	synchronized void cancelRequest() {
+		requested = false;
+		decoded = null;
+		nextLevel = 0;
+	}
+
+	synchronized void markFailed() {
+		failed = true;
+		requested = false;
+		decoded = null;
+		nextLevel = 0;
+	}
+
+	synchronized void setDecodedData(TextureData data) {
+		decoded = data;
+		nextLevel = 0;
+	}
+
+	synchronized boolean hasDecodedData() {
+		return decoded != null;
+	}
+
+	/**
+	 * Loads this Texture with {@link #load()}. Called on the GL thread. If
+	 * {@link #load()} doesn't create a texture, this Texture is marked as
+	 * failed.
+	 */
+	synchronized void loadNow() {
+		load();
+		if (handle == -1) {
+			markFailed();
+			return;
+		}
+		onUploaded();
+	}
+
+	/**
+	 * Uploads the next mipmap level of the decoded data. Called on the GL
+	 * thread.
+	 * 
+	 * @return The number of bytes uploaded.
+	 */
+	synchronized int uploadNextLevel() {
+		if (handle == -1) {
+			handle = genTextureHandle();
+			listen();
+		}
+		if (nextLevel == 0) {
+			byteSize = 0;
+		}
+		GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, handle);
+		final int bytes = decoded.upload(nextLevel++);
+		byteSize += bytes;
+		GameRenderer.logError("Texture upload (level " + (nextLevel - 1) + ")");
+
+		if (nextLevel == decoded.getLevelCount()) {
+			setFilters(nextLevel > 1);
+			decoded = null;
+			onUploaded();
+		}
+		return bytes;
+	}
+
+	/**
+	 * Sets the min and mag filters of the currently bound texture.
+	 * 
+	 * @param mipmapped
+	 *            true if the texture has a full mip chain.
+	 */
+	protected static void setFilters(boolean mipmapped) {
+		if (mipmapped) {
+			GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D,
+					GLES20.GL_TEXTURE_MIN_FILTER,
+					GLES20.GL_LINEAR_MIPMAP_NEAREST);
+		} else {
+			GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D,
+					GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_LINEAR);
+		}
+		GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D,
+				GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_LINEAR);
+	}
+
+	/**
+	 * Called (with this Texture bound) when it has finished uploading.
+	 */
+	private void onUploaded() {
+		GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D,
+				GLES20.GL_TEXTURE_WRAP_S, wrapU);
+		GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D,
+				GLES20.GL_TEXTURE_WRAP_T, wrapV);
+		requested = false;
+		loaded = true;
+		listen();
+		lastUsedFrame = TextureCache.INSTANCE.getFrame();
+		TextureCache.INSTANCE.add(this);
+	}
+
+	private void listen() {
+		if (!listening) {
+			EGLContextLostHandler.addListener(this);
+			listening = true;
+		}
+	}
+
 	/**
 	 * Sets the wrapping modes for the Texture. At least one parameter must be
 	 * one of {@link GLES20#GL_CLAMP_TO_EDGE}, {@link GLES20#GL_REPEAT}, or
@@ -121,20 +310,27 @@ public abstract class Texture implements EGLContextLostListener {
 	}
 
 	/**
-	 * Unloads this texture from the GPU
+	 * Unloads this texture from the GPU. It is reloaded the next time it is
+	 * used.
 	 */
-	public void unload() {
-		int[] tex = { handle };
-		GLES20.glDeleteTextures(1, tex, 0);
+	public synchronized void unload() {
+		TextureCache.INSTANCE.remove(this);
+		if (handle != -1) {
+			int[] tex = { handle };
+			GLES20.glDeleteTextures(1, tex, 0);
+		}
 		loaded = false;
 		handle = -1;
+		nextLevel = 0;
 	}
 
 	@Override
-	public final void onContextLost() {
-		if (loaded && !GLES20.glIsTexture(handle)) {
+	public final synchronized void onContextLost() {
+		if (handle != -1 && !GLES20.glIsTexture(handle)) {
+			TextureCache.INSTANCE.remove(this);
 			loaded = false;
 			handle = -1;
+			nextLevel = 0; // Partially uploaded data must start over
 		}
 	}
 }
@@ -0,0 +1,205 @@
+/*
+ * Copyright 2013 Dan Mercer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.supermercerbros.gameengine.texture;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.opengl.GLES20;
+import android.opengl.GLUtils;
+
+import com.supermercerbros.gameengine.engine.GameRenderer;
+
+/**
+ * Packs many small images into a few large textures ("pages"), so that
+ * elements using different images can share one texture bind. Each image
+ * added returns an {@link AtlasRegion}, which maps the image's UVs onto its
+ * page. A new page is started whenever an image does not fit in the existing
+ * ones.
+ * <p>
+ * Images are surrounded by a border of repeated edge pixels, so that linear
+ * filtering does not bleed neighboring images into each other. Pages keep
+ * their Bitmaps in memory so they can be reloaded after they are evicted or
+ * the EGL context is lost.
+ */
+public class TextureAtlas {
+	/**
+	 * The default width and height of a page, in pixels.
+	 */
+	public static final int DEFAULT_PAGE_SIZE = 1024;
+	/**
+	 * The default border around each image, in pixels.
+	 */
+	public static final int DEFAULT_PADDING = 2;
+
+	/**
+	 * One page of a TextureAtlas.
+	 */
+	private static class Page extends Texture {
+		private final Bitmap bitmap;
+		private final SkylinePacker packer;
+
+		Page(int size) {
+			this.bitmap = Bitmap.createBitmap(size, size,
+					Bitmap.Config.ARGB_8888);
+			this.packer = new SkylinePacker(size, size);
+		}
+
+		@Override
+		protected synchronized TextureData decode() {
+			final int width = bitmap.getWidth(), height = bitmap.getHeight();
+			final TextureData data = new TextureData(1, GLES20.GL_RGBA,
+					GLES20.GL_UNSIGNED_BYTE);
+			final ByteBuffer pixels = TextureData.allocate(width * height * 4);
+			bitmap.copyPixelsToBuffer(pixels);
+			pixels.rewind();
+			data.setLevel(0, width, height, pixels);
+			return data;
+		}
+
+		@Override
+		protected synchronized void load() {
+			handle = genTextureHandle();
+			GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, handle);
+			GLUtils.texImage2D(GLES20.GL_TEXTURE_2D, 0, bitmap, 0);
+			setFilters(false);
+			setByteSize(bitmap.getRowBytes() * bitmap.getHeight());
+			GameRenderer.logError("TextureAtlas.Page.load()");
+		}
+	}
+
+	private final int pageSize;
+	private final int padding;
+	private final ArrayList<Page> pages;
+	private final int[] position = new int[2];
+
+	/**
+	 * Creates an empty TextureAtlas with the default page size and padding.
+	 */
+	public TextureAtlas() {
+		this(DEFAULT_PAGE_SIZE, DEFAULT_PADDING);
+	}
+
+	/**
+	 * Creates an empty TextureAtlas.
+	 * 
+	 * @param pageSize
+	 *            The width and height of each page, in pixels. This should be
+	 *            a power of two.
+	 * @param padding
+	 *            The width of the border around each image, in pixels.
+	 */
+	public TextureAtlas(int pageSize, int padding) {
+		this.pageSize = pageSize;
+		this.padding = padding;
+		this.pages = new ArrayList<Page>();
+	}
+
+	/**
+	 * Adds the image in the given resource to this TextureAtlas.
+	 * 
+	 * @param res
+	 *            The Resources to load the image from.
+	 * @param id
+	 *            The resource id of the image.
+	 * @return The AtlasRegion containing the image.
+	 */
+	public AtlasRegion add(Resources res, int id) {
+		final BitmapFactory.Options opts = new BitmapFactory.Options();
+		opts.inScaled = false;
+		opts.inPreferredConfig = Bitmap.Config.ARGB_8888;
+		final Bitmap bmp = BitmapFactory.decodeResource(res, id, opts);
+		final AtlasRegion region = add(bmp);
+		bmp.recycle();
+		return region;
+	}
+
+	/**
+	 * Adds the given image to this TextureAtlas. Images must be added before
+	 * their page is first drawn.
+	 * 
+	 * @param bmp
+	 *            The image to add. It is copied, so it may be recycled
+	 *            afterwards.
+	 * @return The AtlasRegion containing the image.
+	 * @throws IllegalArgumentException
+	 *             if the image (plus padding) is larger than a page.
+	 */
+	public synchronized AtlasRegion add(Bitmap bmp) {
+		final int width = bmp.getWidth(), height = bmp.getHeight();
+		final int paddedWidth = width + 2 * padding;
+		final int paddedHeight = height + 2 * padding;
+		if (paddedWidth > pageSize || paddedHeight > pageSize) {
+			throw new IllegalArgumentException("Image is larger than a page");
+		}
+
+		Page page = null;
+		for (Page candidate : pages) {
+			if (candidate.packer.insert(paddedWidth, paddedHeight, position)) {
+				page = candidate;
+				break;
+			}
+		}
+		if (page == null) {
+			page = new Page(pageSize);
+			pages.add(page);
+			page.packer.insert(paddedWidth, paddedHeight, position);
+		}
+
+		// Copy the image, repeating its edge pixels into the padding
+		final int[] src = new int[width * height];
+		bmp.getPixels(src, 0, width, 0, 0, width, height);
+		final int[] dst = new int[paddedWidth * paddedHeight];
+		for (int y = 0; y < paddedHeight; y++) {
+			final int srcY = Math.min(Math.max(y - padding, 0), height - 1);
+			for (int x = 0; x < paddedWidth; x++) {
+				final int srcX = Math.min(Math.max(x - padding, 0), width - 1);
+				dst[y * paddedWidth + x] = src[srcY * width + srcX];
+			}
+		}
+		synchronized (page) {
+			page.bitmap.setPixels(dst, 0, paddedWidth, position[0],
+					position[1], paddedWidth, paddedHeight);
+		}
+
+		// Pages are uploaded without flipping, so V-coordinates follow the
+		// bitmap's rows (row 0 is at v = 0)
+		final float size = pageSize;
+		final int left = position[0] + padding;
+		final int top = position[1] + padding;
+		return new AtlasRegion(page, left / size, top / size,
+				(left + width) / size, (top + height) / size);
+	}
+
+	/**
+	 * @return The number of pages in this TextureAtlas.
+	 */
+	public synchronized int getPageCount() {
+		return pages.size();
+	}
+
+	/**
+	 * @param index
+	 *            The index of the page.
+	 * @return The Texture of the given page.
+	 */
+	public synchronized Texture getPage(int index) {
+		return pages.get(index);
+	}
+}
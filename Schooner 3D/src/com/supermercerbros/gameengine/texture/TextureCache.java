@@ -0,0 +1,164 @@
+/*
+ * Copyright 2013 Dan Mercer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.supermercerbros.gameengine.texture;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import android.util.Log;
+
+import com.supermercerbros.gameengine.Schooner3D;
+
+/**
+ * This singleton class tracks which {@link Texture}s are resident on the GPU
+ * and how much memory they use. When the total exceeds
+ * {@link Schooner3D#textureMemoryBudget}, the least-recently-used Textures are
+ * unloaded. An unloaded Texture is reloaded through the {@link TextureLoader}
+ * the next time it is used.
+ */
+public enum TextureCache {
+	INSTANCE;
+
+	private static final String TAG = TextureCache.class.getSimpleName();
+
+	// Resident Textures and their sizes in bytes, in access order (least
+	// recently used first)
+	private final LinkedHashMap<Texture, Integer> resident;
+	private volatile int frame = 0;
+
+	// Stats
+	private int residentBytes = 0;
+	private int peakBytes = 0;
+	private int evictionCount = 0;
+	private long evictedBytes = 0;
+
+	private TextureCache() {
+		this.resident = new LinkedHashMap<Texture, Integer>(16, 0.75f, true);
+	}
+
+	/**
+	 * Called by the GameRenderer at the start of each frame. Advances the
+	 * frame counter and evicts Textures if the memory budget is exceeded. Must
+	 * be called on the GL thread.
+	 */
+	public void onFrame() {
+		frame++;
+		trim(Schooner3D.textureMemoryBudget);
+	}
+
+	/**
+	 * Unloads least-recently-used Textures until no more than the given
+	 * number of bytes are resident. Textures used during the previous frame
+	 * are never unloaded, so the resident size may remain over budget. Must be
+	 * called on the GL thread.
+	 *
+	 * @param byteBudget
+	 *            The number of bytes that may remain resident. If this is zero
+	 *            or negative, nothing is unloaded.
+	 * @return The number of Textures unloaded.
+	 */
+	public int trim(int byteBudget) {
+		if (byteBudget <= 0) {
+			return 0;
+		}
+		int count = 0;
+		while (true) {
+			final Texture texture;
+			synchronized (this) {
+				if (residentBytes <= byteBudget) {
+					break;
+				}
+				final Iterator<Map.Entry<Texture, Integer>> lru = resident
+						.entrySet().iterator();
+				final Map.Entry<Texture, Integer> entry = lru.next();
+				texture = entry.getKey();
+				if (texture.getLastUsedFrame() >= frame - 1) {
+					// Every other Texture was used more recently
+					break;
+				}
+				evictionCount++;
+				evictedBytes += entry.getValue();
+			}
+			texture.unload(); // Removes the Texture from the cache
+			count++;
+		}
+		return count;
+	}
+
+	/**
+	 * @return The number of the current frame.
+	 */
+	int getFrame() {
+		return frame;
+	}
+
+	synchronized void add(Texture texture) {
+		if (!resident.containsKey(texture)) {
+			final int size = texture.getByteSize();
+			resident.put(texture, size);
+			residentBytes += size;
+			peakBytes = Math.max(peakBytes, residentBytes);
+		}
+	}
+
+	/**
+	 * Moves the given Texture to the most-recently-used end of the cache.
+	 * Called at most once per frame for each Texture that is drawn.
+	 */
+	synchronized void touch(Texture texture) {
+		resident.get(texture);
+	}
+
+	synchronized void remove(Texture texture) {
+		final Integer size = resident.remove(texture);
+		if (size != null) {
+			residentBytes -= size;
+		}
+	}
+
+	/**
+	 * @return The number of Textures resident on the GPU.
+	 */
+	public synchronized int getResidentCount() {
+		return resident.size();
+	}
+
+	/**
+	 * @return The estimated GPU memory used by resident Textures, in bytes.
+	 */
+	public synchronized int getResidentBytes() {
+		return residentBytes;
+	}
+
+	/**
+	 * @return The number of Textures evicted so far.
+	 */
+	public synchronized int getEvictionCount() {
+		return evictionCount;
+	}
+
+	/**
+	 * Logs the resident texture count and size, the peak resident size, and
+	 * the number of evictions.
+	 */
+	public synchronized void logStats() {
+		Log.i(TAG, "Textures: " + resident.size() + " resident, "
+				+ (residentBytes / 1024) + " KiB (peak " + (peakBytes / 1024)
+				+ " KiB), " + evictionCount + " evicted ("
+				+ (evictedBytes / 1024) + " KiB)");
+	}
+}
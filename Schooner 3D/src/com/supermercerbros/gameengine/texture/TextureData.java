@@ -0,0 +1,300 @@
+/*
+ * Copyright 2013 Dan Mercer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.supermercerbros.gameengine.texture;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import android.opengl.ETC1;
+import android.opengl.ETC1Util;
+import android.opengl.GLES20;
+
+/**
+ * Contains the decoded image data of a {@link Texture}, one direct buffer per
+ * mipmap level, ready to be uploaded to the GPU. This is created on a
+ * background thread by {@link Texture#decode()} and uploaded (one level at a
+ * time) on the GL thread by the {@link TextureLoader}.
+ */
+public class TextureData {
+	private final int format;
+	private final int type;
+	private final boolean compressed;
+	private final int[] widths;
+	private final int[] heights;
+	private final ByteBuffer[] levels;
+
+	// Whether the GPU supports ETC1, checked on the GL thread by the
+	// TextureLoader when the surface is created
+	private static volatile boolean etc1Checked = false;
+	private static volatile boolean etc1Supported = true;
+
+	/**
+	 * Creates a new, empty TextureData.
+	 *
+	 * @param levelCount
+	 *            The number of mipmap levels (1 if mipmaps are not used).
+	 * @param format
+	 *            The GL_ enum describing the pixel format (i.e.
+	 *            {@link GLES20#GL_RGBA}).
+	 * @param type
+	 *            The GL_ enum describing the pixel data type (i.e.
+	 *            {@link GLES20#GL_UNSIGNED_BYTE}).
+	 */
+	public TextureData(int levelCount, int format, int type) {
+		if (levelCount < 1) {
+			throw new IllegalArgumentException("levelCount < 1");
+		}
+		this.format = format;
+		this.type = type;
+		this.compressed = false;
+		this.widths = new int[levelCount];
+		this.heights = new int[levelCount];
+		this.levels = new ByteBuffer[levelCount];
+	}
+
+	/**
+	 * Creates a new, empty TextureData for compressed image data.
+	 *
+	 * @param levelCount
+	 *            The number of mipmap levels (1 if mipmaps are not used).
+	 * @param internalFormat
+	 *            The GL_ enum describing the compression format (i.e.
+	 *            {@link ETC1#ETC1_RGB8_OES}).
+	 */
+	public TextureData(int levelCount, int internalFormat) {
+		if (levelCount < 1) {
+			throw new IllegalArgumentException("levelCount < 1");
+		}
+		this.format = internalFormat;
+		this.type = 0;
+		this.compressed = true;
+		this.widths = new int[levelCount];
+		this.heights = new int[levelCount];
+		this.levels = new ByteBuffer[levelCount];
+	}
+
+	/**
+	 * Sets the data of the given mipmap level.
+	 *
+	 * @param level
+	 *            The mipmap level (0 is the full-size image).
+	 * @param width
+	 *            The width of the level, in pixels.
+	 * @param height
+	 *            The height of the level, in pixels.
+	 * @param data
+	 *            A direct ByteBuffer containing the pixels of the level.
+	 */
+	public void setLevel(int level, int width, int height, ByteBuffer data) {
+		widths[level] = width;
+		heights[level] = height;
+		levels[level] = data;
+	}
+
+	/**
+	 * @return The number of mipmap levels.
+	 */
+	public int getLevelCount() {
+		return levels.length;
+	}
+
+	/**
+	 * @param level
+	 *            The mipmap level.
+	 * @return The width of the given level, in pixels.
+	 */
+	public int getWidth(int level) {
+		return widths[level];
+	}
+
+	/**
+	 * @param level
+	 *            The mipmap level.
+	 * @return The height of the given level, in pixels.
+	 */
+	public int getHeight(int level) {
+		return heights[level];
+	}
+
+	/**
+	 * @return A TextureData containing only the full-size level of this one.
+	 */
+	public TextureData firstLevel() {
+		final TextureData first = compressed ? new TextureData(1, format)
+				: new TextureData(1, format, type);
+		first.setLevel(0, widths[0], heights[0], levels[0]);
+		return first;
+	}
+
+	/**
+	 * @return The total size of all levels, in bytes.
+	 */
+	public int getByteSize() {
+		int size = 0;
+		for (ByteBuffer level : levels) {
+			size += level.capacity();
+		}
+		return size;
+	}
+
+	/**
+	 * Returns this TextureData, or a copy of it decoded to RGB565 if it is
+	 * ETC1-compressed and the device does not support ETC1. This is called on
+	 * the decoder thread, so that the GL thread only has to upload the
+	 * pixels.
+	 */
+	public TextureData decodeETC1IfUnsupported() {
+		if (!compressed || format != ETC1.ETC1_RGB8_OES || !etc1Checked
+				|| etc1Supported) {
+			return this;
+		}
+		final TextureData rgb = new TextureData(levels.length, GLES20.GL_RGB,
+				GLES20.GL_UNSIGNED_SHORT_5_6_5);
+		for (int level = 0; level < levels.length; level++) {
+			rgb.setLevel(level, widths[level], heights[level],
+					decodeETC1(levels[level], widths[level], heights[level]));
+		}
+		return rgb;
+	}
+
+	/**
+	 * Checks whether the device supports ETC1. Must be called on the GL
+	 * thread.
+	 */
+	static void checkETC1Support() {
+		etc1Supported = ETC1Util.isETC1Supported();
+		etc1Checked = true;
+	}
+
+	/**
+	 * Uploads the given level to the texture currently bound to
+	 * GL_TEXTURE_2D. Must be called on the GL thread. ETC1 data should
+	 * already have been decoded by {@link #decodeETC1IfUnsupported()} if the
+	 * device does not support ETC1; if it wasn't (i.e. it was decoded before
+	 * the first surface was created), it is decoded here.
+	 *
+	 * @param level
+	 *            The mipmap level to upload.
+	 * @return The number of bytes uploaded.
+	 */
+	int upload(int level) {
+		final ByteBuffer data = levels[level];
+		data.position(0);
+		if (!compressed) {
+			uploadPixels(level, format, type, data);
+			return data.capacity();
+		} else if (format == ETC1.ETC1_RGB8_OES && !etc1Supported) {
+			final ByteBuffer pixels = decodeETC1(data, widths[level],
+					heights[level]);
+			uploadPixels(level, GLES20.GL_RGB, GLES20.GL_UNSIGNED_SHORT_5_6_5,
+					pixels);
+			return pixels.capacity();
+		} else {
+			GLES20.glCompressedTexImage2D(GLES20.GL_TEXTURE_2D, level, format,
+					widths[level], heights[level], 0, data.capacity(), data);
+			return data.capacity();
+		}
+	}
+
+	private void uploadPixels(int level, int format, int type, ByteBuffer data) {
+		// Rows of 16-bit pixels are only 2-byte aligned
+		final boolean shorts = type != GLES20.GL_UNSIGNED_BYTE;
+		if (shorts) {
+			GLES20.glPixelStorei(GLES20.GL_UNPACK_ALIGNMENT, 2);
+		}
+		GLES20.glTexImage2D(GLES20.GL_TEXTURE_2D, level, format,
+				widths[level], heights[level], 0, format, type, data);
+		if (shorts) {
+			GLES20.glPixelStorei(GLES20.GL_UNPACK_ALIGNMENT, 4);
+		}
+	}
+
+	private static ByteBuffer decodeETC1(ByteBuffer data, int width, int height) {
+		final int stride = width * 2;
+		final ByteBuffer pixels = allocate(stride * height);
+		data.position(0);
+		ETC1.decodeImage(data, pixels, width, height, 2, stride);
+		return pixels;
+	}
+
+	/**
+	 * Computes the number of mipmap levels in a full mip chain for an image of
+	 * the given size.
+	 */
+	public static int mipLevelCount(int width, int height) {
+		int count = 1;
+		int size = Math.max(width, height);
+		while (size > 1) {
+			size >>= 1;
+			count++;
+		}
+		return count;
+	}
+
+	/**
+	 * Allocates a direct ByteBuffer in native byte order.
+	 *
+	 * @param size
+	 *            The capacity of the buffer, in bytes.
+	 */
+	public static ByteBuffer allocate(int size) {
+		return ByteBuffer.allocateDirect(size).order(ByteOrder.nativeOrder());
+	}
+
+	/**
+	 * Builds the next mipmap level of an RGBA8888 image using a 2x2 box
+	 * filter.
+	 *
+	 * @param src
+	 *            The pixels of the larger level.
+	 * @param width
+	 *            The width of the larger level.
+	 * @param height
+	 *            The height of the larger level.
+	 * @return The pixels of the next level, which is
+	 *         <code>max(1, width / 2)</code> by
+	 *         <code>max(1, height / 2)</code> pixels.
+	 */
+	public static ByteBuffer downsampleRGBA(ByteBuffer src, int width,
+			int height) {
+		final int newWidth = Math.max(1, width / 2);
+		final int newHeight = Math.max(1, height / 2);
+		final ByteBuffer dst = allocate(newWidth * newHeight * 4);
+
+		for (int y = 0; y < newHeight; y++) {
+			final int y0 = Math.min(y * 2, height - 1) * width;
+			final int y1 = Math.min(y * 2 + 1, height - 1) * width;
+			for (int x = 0; x < newWidth; x++) {
+				final int x0 = Math.min(x * 2, width - 1);
+				final int x1 = Math.min(x * 2 + 1, width - 1);
+
+				final int p00 = (y0 + x0) * 4;
+				final int p01 = (y0 + x1) * 4;
+				final int p10 = (y1 + x0) * 4;
+				final int p11 = (y1 + x1) * 4;
+				for (int c = 0; c < 4; c++) {
+					final int sum = (src.get(p00 + c) & 0xFF)
+							+ (src.get(p01 + c) & 0xFF)
+							+ (src.get(p10 + c) & 0xFF)
+							+ (src.get(p11 + c) & 0xFF);
+					dst.put((byte) ((sum + 2) >> 2));
+				}
+			}
+		}
+		dst.rewind();
+		return dst;
+	}
+}
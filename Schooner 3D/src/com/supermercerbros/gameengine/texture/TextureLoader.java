@@ -0,0 +1,280 @@
+/*
+ * Copyright 2013 Dan Mercer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.supermercerbros.gameengine.texture;
+
+import java.nio.ByteBuffer;
+import java.util.LinkedList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import android.opengl.GLES20;
+import android.util.Log;
+
+import com.supermercerbros.gameengine.Schooner3D;
+import com.supermercerbros.gameengine.engine.DataPipe;
+import com.supermercerbros.gameengine.engine.GameRenderer;
+import com.supermercerbros.gameengine.util.LoopingThread;
+
+/**
+ * This singleton class streams {@link Texture}s to the GPU. Textures are
+ * decoded on background threads, and the decoded data is uploaded on the GL
+ * thread a bounded number of bytes per frame. Until a Texture has been
+ * uploaded, a placeholder texture is bound in its place.
+ */
+public enum TextureLoader {
+	INSTANCE;
+
+	private static final String TAG = TextureLoader.class.getSimpleName();
+
+	/**
+	 * A background thread that decodes requested Textures.
+	 */
+	private class Decoder extends LoopingThread {
+		Decoder(int index) {
+			super("Schooner3D texture decoder " + index);
+			setDaemon(true);
+		}
+
+		@Override
+		protected void loop() {
+			final Texture texture;
+			try {
+				texture = requests.take();
+			} catch (InterruptedException e) {
+				return;
+			}
+
+			try {
+				TextureData data = null;
+				boolean failed = false;
+				try {
+					data = texture.decode();
+				} catch (RuntimeException e) {
+					Log.e(TAG, "Texture could not be decoded.", e);
+					failed = true;
+				} catch (OutOfMemoryError e) {
+					Log.e(TAG, "Out of memory decoding texture.", e);
+					failed = true;
+				}
+
+				synchronized (uploads) {
+					if (texture.requestGeneration != generation) {
+						// clear() was called while decoding; drop the data
+						// (the decoder has already recycled any Bitmap it
+						// used)
+						texture.cancelRequest();
+					} else if (failed) {
+						// Keep the placeholder; don't retry on the GL thread
+						texture.markFailed();
+					} else {
+						texture.setDecodedData(data);
+						uploads.add(texture);
+					}
+				}
+			} finally {
+				decoding.decrementAndGet();
+			}
+
+			// Wake the Engine so the Texture gets uploaded and drawn
+			final DataPipe pipe = TextureLoader.this.pipe;
+			if (pipe != null) {
+				pipe.requestFrame();
+			}
+		}
+	}
+
+	private final LinkedBlockingQueue<Texture> requests;
+	private final LinkedList<Texture> uploads;
+	private Decoder[] decoders;
+
+	// The number of Textures that are queued or being decoded. This is
+	// counted from request() rather than from requests.size() so that a
+	// Texture is never missed between take() and uploads.add().
+	private final AtomicInteger decoding = new AtomicInteger();
+	private volatile DataPipe pipe;
+
+	// Incremented by clear(), so that Decoders can tell when the Texture they
+	// are decoding was discarded. Guarded by uploads.
+	private int generation = 0;
+
+	private int placeholder = -1;
+
+	private TextureLoader() {
+		this.requests = new LinkedBlockingQueue<Texture>();
+		this.uploads = new LinkedList<Texture>();
+	}
+
+	/**
+	 * Requests that the given Texture be decoded and uploaded. This can be
+	 * called ahead of time (i.e. while loading a level) to start decoding
+	 * before the Texture is first drawn. Does nothing if the Texture is
+	 * already loaded or requested.
+	 *
+	 * @param texture
+	 *            The Texture to load.
+	 */
+	public void request(Texture texture) {
+		if (!texture.markRequested()) {
+			return;
+		}
+		synchronized (this) {
+			if (decoders == null) {
+				final int count = Math.max(1, Schooner3D.textureDecodeThreads);
+				decoders = new Decoder[count];
+				for (int i = 0; i < count; i++) {
+					decoders[i] = new Decoder(i);
+					decoders[i].start();
+				}
+			}
+		}
+		synchronized (uploads) {
+			texture.requestGeneration = generation;
+		}
+		decoding.incrementAndGet();
+		requests.add(texture);
+	}
+
+	/**
+	 * Sets the DataPipe that is used to wake the Engine when a Texture has
+	 * been decoded.
+	 */
+	public void setDataPipe(DataPipe pipe) {
+		this.pipe = pipe;
+	}
+
+	/**
+	 * Uploads decoded Textures until the given number of bytes has been
+	 * uploaded. Textures are uploaded one mipmap level at a time, and at least
+	 * one level is uploaded per call if any are waiting. Must be called on the
+	 * GL thread.
+	 *
+	 * @param byteBudget
+	 *            The number of bytes that may be uploaded. If this is zero or
+	 *            negative, every decoded Texture is uploaded.
+	 * @return The number of bytes uploaded.
+	 */
+	public int uploadPending(int byteBudget) {
+		int uploaded = 0;
+		while (byteBudget <= 0 || uploaded < byteBudget) {
+			final Texture texture;
+			synchronized (uploads) {
+				texture = uploads.peek();
+			}
+			if (texture == null) {
+				break;
+			}
+
+			if (!texture.hasDecodedData()) {
+				// Texture can't be streamed; load it all at once and use up
+				// the rest of this frame's budget.
+				texture.loadNow();
+				synchronized (uploads) {
+					uploads.remove(texture);
+				}
+				break;
+			}
+
+			uploaded += texture.uploadNextLevel();
+			if (texture.isLoaded()) {
+				synchronized (uploads) {
+					uploads.remove(texture);
+				}
+			}
+		}
+		GameRenderer.logError("TextureLoader.uploadPending()");
+		return uploaded;
+	}
+
+	/**
+	 * @return The number of Textures that have been requested but are not yet
+	 *         fully uploaded, including the ones being decoded.
+	 */
+	public int getPendingCount() {
+		synchronized (uploads) {
+			return decoding.get() + uploads.size();
+		}
+	}
+
+	/**
+	 * Returns the handle of the placeholder texture (a single white pixel),
+	 * creating it if necessary. Must be called on the GL thread.
+	 */
+	int getPlaceholder() {
+		if (placeholder == -1) {
+			placeholder = Texture.genTextureHandle();
+			final ByteBuffer white = TextureData.allocate(4);
+			white.put(new byte[] { -1, -1, -1, -1 });
+			white.rewind();
+
+			GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, placeholder);
+			GLES20.glTexImage2D(GLES20.GL_TEXTURE_2D, 0, GLES20.GL_RGBA, 1,
+					1, 0, GLES20.GL_RGBA, GLES20.GL_UNSIGNED_BYTE, white);
+			GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D,
+					GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_NEAREST);
+			GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D,
+					GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_NEAREST);
+			GameRenderer.logError("TextureLoader placeholder");
+		}
+		return placeholder;
+	}
+
+	/**
+	 * Called by the GameRenderer when the EGL context is (re)created.
+	 */
+	public void onSurfaceCreated() {
+		TextureData.checkETC1Support();
+		if (placeholder != -1 && !GLES20.glIsTexture(placeholder)) {
+			placeholder = -1;
+		}
+	}
+
+	/**
+	 * Discards all requested and decoded Textures that have not been uploaded
+	 * yet. Textures that are being decoded are discarded when their decoding
+	 * finishes.
+	 */
+	public void clear() {
+		Texture request;
+		while ((request = requests.poll()) != null) {
+			request.cancelRequest();
+			decoding.decrementAndGet();
+		}
+		synchronized (uploads) {
+			generation++;
+			for (Texture texture : uploads) {
+				texture.cancelRequest();
+			}
+			uploads.clear();
+		}
+	}
+
+	/**
+	 * Stops the decoder threads and discards all Textures that have not been
+	 * uploaded yet. Decoder threads are started again by the next
+	 * {@link #request(Texture)}.
+	 */
+	public void close() {
+		synchronized (this) {
+			if (decoders != null) {
+				for (Decoder decoder : decoders) {
+					decoder.end();
+				}
+				decoders = null;
+			}
+		}
+		clear();
+	}
+}
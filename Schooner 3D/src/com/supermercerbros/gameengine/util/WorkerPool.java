@@ -0,0 +1,154 @@
+/*
+ * Copyright 2013 Dan Mercer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.supermercerbros.gameengine.util;
+
+import com.supermercerbros.gameengine.Schooner3D;
+
+/**
+ * This singleton class owns the worker threads that the Engine thread splits
+ * CPU work across (i.e. CPU skinning and Skeleton evaluation), so that the
+ * engine never runs more than {@link Schooner3D#workerThreads} of them. The
+ * workers are started the first time they are needed.
+ */
+public enum WorkerPool {
+	INSTANCE;
+
+	/**
+	 * A piece of work that is run on several threads at once.
+	 */
+	public interface Task {
+		/**
+		 * Runs this Task's share of the work.
+		 *
+		 * @param part
+		 *            The index of the share: 0 for the calling thread, and
+		 *            from 1 to the number of helpers for the workers.
+		 */
+		void run(int part);
+	}
+
+	/**
+	 * A worker thread that runs its part of each batch.
+	 */
+	private class Worker extends LoopingThread {
+		private final int part;
+		private int seenBatch = 0;
+
+		Worker(int part) {
+			super("Schooner3D worker " + part);
+			this.part = part;
+			setDaemon(true);
+		}
+
+		@Override
+		protected void loop() {
+			final Task task;
+			synchronized (lock) {
+				while (batch == seenBatch) {
+					try {
+						lock.wait();
+					} catch (InterruptedException e) {
+						if (isEnding()) {
+							return;
+						}
+					}
+				}
+				seenBatch = batch;
+				if (part > helpers) {
+					return; // Not needed for this batch
+				}
+				task = WorkerPool.this.task;
+			}
+
+			task.run(part);
+
+			synchronized (lock) {
+				if (--remaining == 0) {
+					lock.notifyAll();
+				}
+			}
+		}
+	}
+
+	private final Object lock = new Object();
+	private Worker[] workers;
+
+	// The current batch. Written by run() before the batch counter is
+	// advanced.
+	private int batch = 0;
+	private int helpers = 0;
+	private int remaining = 0;
+	private Task task;
+
+	/**
+	 * @return The number of worker threads, not counting the calling thread.
+	 */
+	public int size() {
+		synchronized (lock) {
+			return workers != null ? workers.length : Math.max(0,
+					Schooner3D.workerThreads);
+		}
+	}
+
+	/**
+	 * Runs the given Task on the calling thread (as part 0) and on up to
+	 * <code>helpers</code> workers at once, and returns when every part is
+	 * done. Must not be called from a Task.
+	 *
+	 * @param task
+	 *            The Task to run.
+	 * @param helpers
+	 *            The number of workers to run the Task on. This is clamped to
+	 *            {@link #size()}.
+	 * @return The number of parts the Task was run as (at least 1).
+	 */
+	public synchronized int run(Task task, int helpers) {
+		helpers = Math.min(helpers, size());
+		if (helpers <= 0) {
+			task.run(0);
+			return 1;
+		}
+
+		synchronized (lock) {
+			if (workers == null) {
+				workers = new Worker[size()];
+				for (int i = 0; i < workers.length; i++) {
+					workers[i] = new Worker(i + 1);
+					workers[i].start();
+				}
+			}
+			this.task = task;
+			this.helpers = helpers;
+			remaining = helpers;
+			batch++;
+			lock.notifyAll();
+		}
+
+		task.run(0);
+
+		synchronized (lock) {
+			while (remaining > 0) {
+				try {
+					lock.wait();
+				} catch (InterruptedException e) {
+					// Keep waiting; the workers are still running the Task
+				}
+			}
+			this.task = null;
+		}
+		return helpers + 1;
+	}
+}